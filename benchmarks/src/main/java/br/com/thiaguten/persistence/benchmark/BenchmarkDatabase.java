@@ -0,0 +1,104 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-memory HSQLDB database shared by the threads of a benchmark, seeded with a fixed number of
+ * entities.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+  /**
+   * Provider under benchmark: <code>core</code> for the Hibernate session provider,
+   * <code>jpa</code> for the JPA entity manager provider.
+   */
+  @Param({"core", "jpa"})
+  public String provider;
+
+  /**
+   * Number of entities the database is seeded with.
+   */
+  @Param({"100"})
+  public int rows;
+
+  private Database database;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    database = new Database(provider, Collections.singletonMap("javax.persistence.jdbc.url",
+        "jdbc:hsqldb:mem:benchmark-" + provider + ";shutdown=true"));
+    database.seed(rows);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    database.close();
+  }
+
+  /**
+   * Create a provider of the benchmarked kind, with its own session or entity manager.
+   *
+   * @return the provider
+   */
+  BenchmarkProvider newProvider() {
+    return database.newProvider();
+  }
+
+  /**
+   * Insert an entity bypassing the providers.
+   *
+   * @param name the name of the entity
+   * @return the identifier of the entity
+   */
+  Long insert(String name) {
+    return database.insert(name);
+  }
+
+  /**
+   * Get the identifier of a random seeded entity.
+   *
+   * @return the identifier
+   */
+  Long randomId() {
+    return 1L + ThreadLocalRandom.current().nextInt(rows);
+  }
+
+  /**
+   * Get the name of a random seeded entity.
+   *
+   * @return the name
+   */
+  String randomName() {
+    return Database.name(ThreadLocalRandom.current().nextInt(rows));
+  }
+}
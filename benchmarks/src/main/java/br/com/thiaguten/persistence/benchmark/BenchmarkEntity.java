@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+/**
+ * Entity of the benchmarks, shaped like the demo user: a generated identifier, a name and a
+ * version. The identifiers come from a named sequence, so the seeded tables can restart it.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@Entity
+@Table(name = "BENCHMARK_ENTITY")
+public class BenchmarkEntity implements Persistable<Long> {
+
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @Column(name = "ID", nullable = false)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "BENCHMARK_SEQUENCE")
+  @SequenceGenerator(name = "BENCHMARK_SEQUENCE", sequenceName = "BENCHMARK_SEQUENCE",
+      allocationSize = 1)
+  private Long id;
+
+  @Column(name = "NAME", nullable = false)
+  private String name;
+
+  @Version
+  @Column(name = "VERSION")
+  private Long version;
+
+  public BenchmarkEntity() {
+    super();
+  }
+
+  public BenchmarkEntity(String name) {
+    this.name = name;
+  }
+
+  @Override
+  public Long getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Long getVersion() {
+    return version;
+  }
+}
@@ -0,0 +1,56 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.HibernatePersistenceProvider;
+
+import java.util.function.Supplier;
+
+/**
+ * Provider under benchmark, bound to the session or entity manager of one benchmark thread, which
+ * demarcates the transactions itself in place of a transaction manager.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+interface BenchmarkProvider extends HibernatePersistenceProvider {
+
+  /**
+   * Run the work in a transaction, then clear the persistence context so the next invocation
+   * does not hit the entities loaded by this one.
+   *
+   * @param work the work
+   * @param <R> the type of the result
+   * @return the result of the work
+   */
+  <R> R inTransaction(Supplier<R> work);
+
+  /**
+   * Get the HQL/JPQL query selecting the entities by name with a positional parameter, in the
+   * syntax of the provider.
+   *
+   * @return the query
+   */
+  String byNameQuery();
+
+  /**
+   * Close the session or entity manager.
+   */
+  void close();
+}
@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stateless versus stateful bulk work: inserting a batch of entities with
+ * <code>saveAll</code> (persistence context, snapshots and flush-time dirty checking) or with
+ * <code>bulkInsert</code> (stateless session), and reading every seeded entity with
+ * <code>findAll</code> or with <code>bulkScroll</code>. The rows inserted during an iteration are
+ * deleted after it.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar BulkBenchmark -p entities=10000 -prof gc
+ * java -jar target/benchmarks.jar BulkBenchmark.scroll -p rows=100000 -prof gc
+ * </pre>
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BulkBenchmark {
+
+  private static final String NAME = "bulk";
+
+  /**
+   * Number of entities inserted per invocation.
+   */
+  @Param({"1000"})
+  public int entities;
+
+  private BenchmarkProvider provider;
+
+  @Setup(Level.Trial)
+  public void setUp(BenchmarkDatabase database) {
+    this.provider = database.newProvider();
+  }
+
+  @TearDown(Level.Iteration)
+  public void deleteInserted() {
+    provider.inTransaction(() -> provider.getSession()
+        .createQuery("delete from BenchmarkEntity e where e.name = :name")
+        .setParameter("name", NAME)
+        .executeUpdate());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    provider.close();
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> saveAll() {
+    List<BenchmarkEntity> batch = newBatch();
+    return provider.inTransaction(() -> provider.saveAll(batch));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> bulkInsert() {
+    List<BenchmarkEntity> batch = newBatch();
+    return provider.inTransaction(() -> {
+      provider.bulkInsert(batch);
+      return batch;
+    });
+  }
+
+  @Benchmark
+  public void findAll(Blackhole blackhole) {
+    provider.inTransaction(() -> provider.findAll(BenchmarkEntity.class))
+        .forEach(blackhole::consume);
+  }
+
+  @Benchmark
+  public long scroll(Blackhole blackhole) {
+    return provider.inTransaction(() -> provider.bulkScroll(BenchmarkEntity.class,
+        Collections.emptyList(), blackhole::consume));
+  }
+
+  private List<BenchmarkEntity> newBatch() {
+    List<BenchmarkEntity> batch = new ArrayList<>(entities);
+    for (int i = 0; i < entities; i++) {
+      batch.add(new BenchmarkEntity(NAME));
+    }
+    return batch;
+  }
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.AbstractHibernatePersistenceProvider;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import java.util.function.Supplier;
+
+/**
+ * {@link AbstractHibernatePersistenceProvider} over a Hibernate session.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class CoreBenchmarkProvider extends AbstractHibernatePersistenceProvider
+    implements BenchmarkProvider {
+
+  private final Session session;
+
+  CoreBenchmarkProvider(Session session) {
+    this.session = session;
+  }
+
+  @Override
+  public Session getSession() {
+    return session;
+  }
+
+  @Override
+  public <R> R inTransaction(Supplier<R> work) {
+    Transaction transaction = session.beginTransaction();
+    try {
+      R result = work.get();
+      transaction.commit();
+      return result;
+    } catch (RuntimeException e) {
+      if (transaction.getStatus().canRollback()) {
+        transaction.rollback();
+      }
+      throw e;
+    } finally {
+      session.clear();
+    }
+  }
+
+  @Override
+  public String byNameQuery() {
+    return "select e from BenchmarkEntity e where e.name = ?"; // HQL positional parameter
+  }
+
+  @Override
+  public void close() {
+    session.close();
+  }
+}
@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * HSQLDB database of the benchmark persistence unit, the factory of the providers under benchmark.
+ *
+ * <p>Both providers run over the same persistence unit; the core provider uses the session factory
+ * behind the entity manager factory, so the two differ only by the provider code and the API it
+ * calls.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class Database implements AutoCloseable {
+
+  private static final int SEED_CHUNK = 100_000;
+
+  private final String provider;
+  private final EntityManagerFactory entityManagerFactory;
+  private final SessionFactory sessionFactory;
+
+  /**
+   * Constructor.
+   *
+   * @param provider the provider under benchmark: <code>core</code> or <code>jpa</code>
+   * @param properties the properties overriding the persistence unit ones, at least the JDBC URL
+   */
+  Database(String provider, Map<String, Object> properties) {
+    this.provider = provider;
+    this.entityManagerFactory = Persistence.createEntityManagerFactory("benchmark", properties);
+    this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+  }
+
+  /**
+   * Create a provider of the benchmarked kind, with its own session or entity manager.
+   *
+   * @return the provider
+   */
+  BenchmarkProvider newProvider() {
+    return "jpa".equals(provider)
+        ? new JpaBenchmarkProvider(entityManagerFactory.createEntityManager())
+        : new CoreBenchmarkProvider(sessionFactory.openSession());
+  }
+
+  /**
+   * Seed the empty database with entities of identifiers 1 to <code>rows</code> named by
+   * {@link #name(long)}, with set-based inserts which bypass Hibernate, so millions of rows are
+   * seeded in a fraction of the time entity inserts take.
+   *
+   * @param rows the number of entities
+   */
+  void seed(long rows) {
+    StatelessSession session = sessionFactory.openStatelessSession();
+    try {
+      for (long first = 1; first <= rows; first += SEED_CHUNK) {
+        long last = Math.min(rows, first + SEED_CHUNK - 1);
+        Transaction transaction = session.beginTransaction();
+        session.createSQLQuery("insert into BENCHMARK_ENTITY (ID, NAME, VERSION)"
+            + " select X, 'entity-' || cast(X - 1 as varchar(20)), 0"
+            + " from unnest(sequence_array(cast(:first as bigint), cast(:last as bigint), 1))"
+            + " as T(X)")
+            .setParameter("first", first)
+            .setParameter("last", last)
+            .executeUpdate();
+        transaction.commit(); // one transaction per chunk keeps the undo log small
+      }
+      Transaction transaction = session.beginTransaction();
+      session.createSQLQuery("alter sequence BENCHMARK_SEQUENCE restart with " + (rows + 1))
+          .executeUpdate();
+      transaction.commit();
+    } finally {
+      session.close();
+    }
+  }
+
+  /**
+   * Insert an entity bypassing the providers.
+   *
+   * @param name the name of the entity
+   * @return the identifier of the entity
+   */
+  Long insert(String name) {
+    StatelessSession session = sessionFactory.openStatelessSession();
+    try {
+      Transaction transaction = session.beginTransaction();
+      Long id = (Long) session.insert(new BenchmarkEntity(name));
+      transaction.commit();
+      return id;
+    } finally {
+      session.close();
+    }
+  }
+
+  /**
+   * Get the name of the seeded entity of the given index, its identifier minus one.
+   *
+   * @param index the index of the entity
+   * @return the name
+   */
+  static String name(long index) {
+    return "entity-" + index;
+  }
+
+  @Override
+  public void close() {
+    entityManagerFactory.close();
+  }
+}
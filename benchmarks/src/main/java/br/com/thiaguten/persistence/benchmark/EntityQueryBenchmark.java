@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+/**
+ * Per-call latency and allocation of the entity queries of the JPA provider (findAll, countAll),
+ * whose JPQL is rendered once per entity class and kept in the entity query cache, against the
+ * same queries built as a <code>CriteriaQuery</code> on every call, which Hibernate renders to
+ * JPQL and looks up again each time.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar EntityQueryBenchmark -prof gc
+ * </pre>
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class EntityQueryBenchmark {
+
+  /**
+   * Number of entities the database is seeded with.
+   */
+  @Param({"100"})
+  public int rows;
+
+  private Database database;
+  private JpaBenchmarkProvider provider;
+  private EntityManager entityManager;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    database = new Database("jpa", Collections.singletonMap("javax.persistence.jdbc.url",
+        "jdbc:hsqldb:mem:benchmark-entity-query;shutdown=true"));
+    database.seed(rows);
+    provider = (JpaBenchmarkProvider) database.newProvider();
+    entityManager = provider.getEntityManager();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    provider.close();
+    database.close();
+  }
+
+  @Benchmark
+  public long countAllCached() {
+    return provider.inTransaction(() -> provider.countAll(BenchmarkEntity.class));
+  }
+
+  @Benchmark
+  public long countAllCriteria() {
+    return provider.inTransaction(() -> {
+      CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+      CriteriaQuery<Long> query = builder.createQuery(Long.class);
+      query.select(builder.count(query.from(BenchmarkEntity.class)));
+      return entityManager.createQuery(query).getSingleResult();
+    });
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAllCached() {
+    return provider.inTransaction(() -> provider.findAll(BenchmarkEntity.class));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAllCriteria() {
+    return provider.inTransaction(() -> {
+      CriteriaQuery<BenchmarkEntity> query = entityManager.getCriteriaBuilder()
+          .createQuery(BenchmarkEntity.class);
+      Root<BenchmarkEntity> root = query.from(BenchmarkEntity.class);
+      return entityManager.createQuery(query.select(root)).getResultList();
+    });
+  }
+}
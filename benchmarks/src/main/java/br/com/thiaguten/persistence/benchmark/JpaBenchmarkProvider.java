@@ -0,0 +1,75 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.AbstractHibernateJpaPersistenceProvider;
+
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+/**
+ * {@link AbstractHibernateJpaPersistenceProvider} over a JPA entity manager.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class JpaBenchmarkProvider extends AbstractHibernateJpaPersistenceProvider
+    implements BenchmarkProvider {
+
+  private final EntityManager entityManager;
+
+  JpaBenchmarkProvider(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  @Override
+  public EntityManager getEntityManager() {
+    return entityManager;
+  }
+
+  @Override
+  public <R> R inTransaction(Supplier<R> work) {
+    EntityTransaction transaction = entityManager.getTransaction();
+    transaction.begin();
+    try {
+      R result = work.get();
+      transaction.commit();
+      return result;
+    } catch (RuntimeException e) {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+      throw e;
+    } finally {
+      entityManager.clear();
+    }
+  }
+
+  @Override
+  public String byNameQuery() {
+    return "select e from BenchmarkEntity e where e.name = ?1"; // JPQL positional parameter
+  }
+
+  @Override
+  public void close() {
+    entityManager.close();
+  }
+}
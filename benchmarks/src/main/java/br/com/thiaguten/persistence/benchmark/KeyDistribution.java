@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import java.util.Random;
+
+/**
+ * Distribution of the keys of a workload over the items <code>0</code> to <code>items - 1</code>.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+abstract class KeyDistribution {
+
+  /**
+   * Get the next key.
+   *
+   * @param random the source of randomness of the calling thread
+   * @return the key
+   */
+  abstract long next(Random random);
+
+  /**
+   * Get the distribution of the given name.
+   *
+   * @param name <code>uniform</code> or <code>zipfian</code>
+   * @param items the number of items
+   * @param theta the skew of the zipfian distribution, between 0 and 1 exclusive
+   * @return the distribution
+   */
+  static KeyDistribution of(String name, long items, double theta) {
+    switch (name) {
+      case "uniform":
+        return uniform(items);
+      case "zipfian":
+        return zipfian(items, theta);
+      default:
+        throw new IllegalArgumentException("Unknown key distribution: " + name);
+    }
+  }
+
+  /**
+   * Get the distribution where every item is as likely.
+   *
+   * @param items the number of items
+   * @return the distribution
+   */
+  static KeyDistribution uniform(long items) {
+    return new KeyDistribution() {
+      @Override
+      long next(Random random) {
+        return (long) (random.nextDouble() * items);
+      }
+    };
+  }
+
+  /**
+   * Get the zipfian distribution where the item of rank <code>i</code> is drawn with a probability
+   * proportional to <code>1 / (i + 1)^theta</code>, the lowest keys being the hottest. It uses the
+   * constant time algorithm of Gray et al., "Quickly Generating Billion-Record Synthetic
+   * Databases", after a linear precomputation; a theta of 0.99 is the usual skew of key-value
+   * workloads.
+   *
+   * @param items the number of items
+   * @param theta the skew, between 0 and 1 exclusive
+   * @return the distribution
+   */
+  static KeyDistribution zipfian(long items, double theta) {
+    if (theta <= 0 || theta >= 1) {
+      throw new IllegalArgumentException("Theta must be between 0 and 1 exclusive.");
+    }
+    double zetan = 0;
+    for (long i = 1; i <= items; i++) {
+      zetan += 1 / Math.pow(i, theta);
+    }
+    double zeta2 = 1 + 1 / Math.pow(2, theta);
+    double alpha = 1 / (1 - theta);
+    double eta = (1 - Math.pow(2d / items, 1 - theta)) / (1 - zeta2 / zetan);
+    double secondThreshold = 1 + Math.pow(0.5, theta);
+    double zeta = zetan;
+    return new KeyDistribution() {
+      @Override
+      long next(Random random) {
+        double u = random.nextDouble();
+        double uz = u * zeta;
+        if (uz < 1) {
+          return 0;
+        }
+        if (uz < secondThreshold) {
+          return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+      }
+    };
+  }
+}
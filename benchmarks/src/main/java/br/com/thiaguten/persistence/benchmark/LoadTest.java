@@ -0,0 +1,308 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.LatencyHistogram;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test driving a mixed CRUD workload from many threads against the core and JPA providers
+ * over a HikariCP pool, sweeping the thread counts and pool sizes to size the pools and find the
+ * lock and contention bottlenecks.
+ *
+ * <p>Every thread has its own provider and runs one operation per transaction: a read
+ * (<code>findById</code>) with the read ratio probability, otherwise a write, half of which are
+ * <code>updateFields</code>, a quarter <code>save</code> and a quarter <code>deleteById</code> of a
+ * row the thread saved. The keys of the reads and updates follow a uniform or zipfian
+ * distribution. For every provider, pool size and thread count it reports the throughput, the
+ * p50/p99/p999 latencies of the operations, the mean and p99 time waiting for a pooled connection
+ * and the timeouts and errors, as a table on the standard output and as CSV.
+ *
+ * <p>The options are given as <code>name=value</code> arguments, the defaults being:
+ *
+ * <pre>
+ * providers=core,jpa threads=1,2,4,8,16,32,64 pools=4,8,16,32 rows=100000
+ * readRatio=0.9 distribution=zipfian theta=0.99 warmup=5 duration=10 output=target/load-test.csv
+ * </pre>
+ *
+ * <p>The database is an in-memory HSQLDB database in MVCC mode, so the contention comes from row
+ * locks and the pool rather than from table locks.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class LoadTest {
+
+  private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+  static {
+    DEFAULTS.put("providers", "core,jpa");
+    DEFAULTS.put("threads", "1,2,4,8,16,32,64");
+    DEFAULTS.put("pools", "4,8,16,32");
+    DEFAULTS.put("rows", "100000");
+    DEFAULTS.put("readRatio", "0.9");
+    DEFAULTS.put("distribution", "zipfian");
+    DEFAULTS.put("theta", "0.99");
+    DEFAULTS.put("warmup", "5");
+    DEFAULTS.put("duration", "10");
+    DEFAULTS.put("output", "target/load-test.csv");
+  }
+
+  private static final String HEADER = "provider,pool,threads,throughput_ops_s,"
+      + "latency_p50_us,latency_p99_us,latency_p999_us,latency_max_us,"
+      + "pool_wait_mean_us,pool_wait_p99_us,pool_timeouts,errors";
+
+  private final Map<String, String> options;
+  private final KeyDistribution keys;
+  private final int rows;
+  private final double readRatio;
+
+  private LoadTest(Map<String, String> options) {
+    this.options = options;
+    this.rows = Integer.parseInt(options.get("rows"));
+    this.readRatio = Double.parseDouble(options.get("readRatio"));
+    this.keys = KeyDistribution.of(options.get("distribution"), rows,
+        Double.parseDouble(options.get("theta")));
+  }
+
+  /**
+   * Run the load test.
+   *
+   * @param args the options as <code>name=value</code> arguments
+   * @throws Exception if the load test fails
+   */
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>(DEFAULTS);
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator < 0 || !DEFAULTS.containsKey(arg.substring(0, separator))) {
+        throw new IllegalArgumentException("Unknown option: " + arg + ", expected one of "
+            + DEFAULTS.keySet());
+      }
+      options.put(arg.substring(0, separator), arg.substring(separator + 1));
+    }
+    new LoadTest(options).run();
+  }
+
+  private void run() throws IOException, InterruptedException {
+    File output = new File(options.get("output"));
+    if (output.getParentFile() != null) {
+      output.getParentFile().mkdirs();
+    }
+    System.out.println(HEADER);
+    try (PrintWriter csv = new PrintWriter(output, StandardCharsets.UTF_8.name())) {
+      csv.println(HEADER);
+      for (String provider : list("providers")) {
+        for (String pool : list("pools")) {
+          for (String result : run(provider, Integer.parseInt(pool))) {
+            System.out.println(result);
+            csv.println(result);
+            csv.flush();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Run the thread counts over a fresh database and pool.
+   */
+  private List<String> run(String provider, int poolSize) throws InterruptedException {
+    PoolMetrics poolMetrics = new PoolMetrics();
+    HikariConfig config = new HikariConfig();
+    config.setPoolName("load-test-" + provider + "-" + poolSize);
+    config.setJdbcUrl("jdbc:hsqldb:mem:load-test-" + provider + ";hsqldb.tx=mvcc");
+    config.setUsername("SA");
+    config.setPassword("SA");
+    config.setMaximumPoolSize(poolSize);
+    config.setMinimumIdle(poolSize);
+    config.setConnectionTimeout(TimeUnit.SECONDS.toMillis(30));
+    config.setMetricsTrackerFactory(poolMetrics);
+    List<String> results = new ArrayList<>();
+    try (HikariDataSource dataSource = new HikariDataSource(config);
+        Database database = new Database(provider,
+            Collections.singletonMap("javax.persistence.nonJtaDataSource", dataSource))) {
+      database.seed(rows);
+      for (String threads : list("threads")) {
+        results.add(run(database, poolMetrics, provider, poolSize, Integer.parseInt(threads)));
+      }
+    }
+    return results;
+  }
+
+  private String run(Database database, PoolMetrics poolMetrics, String provider, int poolSize,
+      int threads) throws InterruptedException {
+    Phase warmup = new Phase();
+    Phase measurement = new Phase();
+    List<Worker> workers = new ArrayList<>(threads);
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      Worker worker = new Worker(database.newProvider(), warmup, done);
+      worker.setName("load-test-" + i);
+      workers.add(worker);
+      worker.start();
+    }
+    TimeUnit.SECONDS.sleep(Long.parseLong(options.get("warmup")));
+    poolMetrics.reset();
+    workers.forEach(worker -> worker.phase = measurement);
+    long start = System.nanoTime();
+    TimeUnit.SECONDS.sleep(Long.parseLong(options.get("duration")));
+    workers.forEach(worker -> worker.running = false);
+    long elapsed = System.nanoTime() - start;
+    done.await();
+    LatencyHistogram latency = measurement.latency;
+    return String.format(Locale.ROOT, "%s,%d,%d,%.1f,%d,%d,%d,%d,%.1f,%d,%d,%d", provider,
+        poolSize, threads, latency.getCount() * 1e9 / elapsed,
+        latency.getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+        latency.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+        latency.getValueAtPercentile(99.9, TimeUnit.MICROSECONDS),
+        latency.getMax(TimeUnit.MICROSECONDS),
+        poolMetrics.wait.getMeanNanos() / 1000,
+        poolMetrics.wait.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+        poolMetrics.timeouts.sum(), measurement.errors.sum());
+  }
+
+  private List<String> list(String option) {
+    return Arrays.asList(options.get(option).split(","));
+  }
+
+  /**
+   * Latencies and errors of the operations of a phase of a run.
+   */
+  private static final class Phase {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+  }
+
+  /**
+   * Thread running operations until stopped, recording them in the current phase.
+   */
+  private final class Worker extends Thread {
+
+    private final BenchmarkProvider provider;
+    private final CountDownLatch done;
+    private final Deque<Long> saved = new ArrayDeque<>();
+    private volatile Phase phase;
+    private volatile boolean running = true;
+
+    private Worker(BenchmarkProvider provider, Phase phase, CountDownLatch done) {
+      this.provider = provider;
+      this.phase = phase;
+      this.done = done;
+    }
+
+    @Override
+    public void run() {
+      Random random = ThreadLocalRandom.current();
+      try {
+        while (running) {
+          Phase current = phase;
+          long start = System.nanoTime();
+          try {
+            operation(random);
+          } catch (RuntimeException e) {
+            current.errors.increment();
+          }
+          current.latency.record(System.nanoTime() - start);
+        }
+      } finally {
+        provider.close();
+        done.countDown();
+      }
+    }
+
+    private void operation(Random random) {
+      double draw = random.nextDouble();
+      if (draw < readRatio) {
+        Long id = 1 + keys.next(random);
+        provider.inTransaction(() -> provider.findById(BenchmarkEntity.class, id));
+        return;
+      }
+      double write = (draw - readRatio) / (1 - readRatio);
+      if (write < 0.5) {
+        Long id = 1 + keys.next(random);
+        provider.inTransaction(() -> provider.updateFields(BenchmarkEntity.class, id,
+            Collections.singletonMap("name", "updated")));
+      } else if (write < 0.75 || saved.isEmpty()) {
+        saved.add(provider.inTransaction(() -> provider.save(new BenchmarkEntity("saved")))
+            .getId());
+      } else {
+        Long id = saved.poll();
+        provider.inTransaction(() -> {
+          provider.deleteById(BenchmarkEntity.class, id);
+          return id;
+        });
+      }
+    }
+  }
+
+  /**
+   * HikariCP metrics tracker recording the time spent waiting for a connection.
+   */
+  private static final class PoolMetrics implements MetricsTrackerFactory, IMetricsTracker {
+
+    private final LatencyHistogram wait = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+      return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+      wait.record(elapsedAcquiredNanos);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+      timeouts.increment();
+    }
+
+    private void reset() {
+      wait.reset();
+      timeouts.reset();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.PreparedQuery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prepared versus ad-hoc execution of the same query: the ad-hoc query goes from its string to
+ * the session on every call, the prepared query from the handle prepared once by
+ * <code>prepareQuery</code>.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar PreparedQueryBenchmark -prof gc
+ * </pre>
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PreparedQueryBenchmark {
+
+  private BenchmarkDatabase database;
+  private BenchmarkProvider provider;
+  private PreparedQuery<BenchmarkEntity> byName;
+
+  @Setup(Level.Trial)
+  public void setUp(BenchmarkDatabase database) {
+    this.database = database;
+    this.provider = database.newProvider();
+    this.byName = provider.inTransaction(() -> provider.prepareQuery(BenchmarkEntity.class, false,
+        provider.byNameQuery()));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    provider.close();
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> adHoc() {
+    String name = database.randomName();
+    return provider.inTransaction(() -> provider.findByQuery(BenchmarkEntity.class,
+        provider.byNameQuery(), name));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> prepared() {
+    String name = database.randomName();
+    return provider.inTransaction(() -> provider.findByPreparedQuery(byName, name));
+  }
+}
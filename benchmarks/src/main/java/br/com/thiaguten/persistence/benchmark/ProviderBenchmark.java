@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and average latency of the provider operations, for the core and the JPA providers
+ * over an in-memory HSQLDB database. Every invocation runs in its own transaction and starts with
+ * an empty persistence context, so reads go to the database.
+ *
+ * <p>Allocation per operation is reported by the GC profiler:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar ProviderBenchmark -prof gc
+ * java -jar target/benchmarks.jar ProviderBenchmark.findById -p provider=jpa -bm avgt
+ * </pre>
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ProviderBenchmark {
+
+  private static final int PAGE_SIZE = 20;
+
+  private BenchmarkDatabase database;
+  private BenchmarkProvider provider;
+
+  @Setup(Level.Trial)
+  public void setUp(BenchmarkDatabase database) {
+    this.database = database;
+    this.provider = database.newProvider();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    provider.close();
+  }
+
+  @Benchmark
+  public BenchmarkEntity save() {
+    return provider.inTransaction(() -> provider.save(new BenchmarkEntity("saved")));
+  }
+
+  @Benchmark
+  public BenchmarkEntity findById() {
+    Long id = database.randomId();
+    return provider.inTransaction(() -> provider.findById(BenchmarkEntity.class, id));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAll() {
+    return provider.inTransaction(() -> provider.findAll(BenchmarkEntity.class));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAllPaged() {
+    int firstResult = ThreadLocalRandom.current().nextInt(Math.max(1, database.rows - PAGE_SIZE));
+    return provider.inTransaction(() -> provider.findAll(BenchmarkEntity.class, firstResult,
+        PAGE_SIZE));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findByCriteria() {
+    List<Criterion> criterions = Collections.singletonList(
+        Restrictions.eq("name", database.randomName()));
+    return provider.inTransaction(() -> provider.findByCriteria(BenchmarkEntity.class,
+        criterions));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findByQuery() {
+    String name = database.randomName();
+    return provider.inTransaction(() -> provider.findByQuery(BenchmarkEntity.class,
+        provider.byNameQuery(), name));
+  }
+
+  @Benchmark
+  public long countAll() {
+    return provider.inTransaction(() -> provider.countAll(BenchmarkEntity.class));
+  }
+
+  /**
+   * The row is inserted before every invocation, outside of the measurement; the per-invocation
+   * setup costs a few timestamps, negligible next to a database round trip.
+   */
+  @Benchmark
+  public Long deleteById(DeletableRow row) {
+    return provider.inTransaction(() -> {
+      provider.deleteById(BenchmarkEntity.class, row.id);
+      return row.id;
+    });
+  }
+
+  /**
+   * Row inserted before each invocation of the delete benchmark.
+   */
+  @State(Scope.Thread)
+  public static class DeletableRow {
+
+    private Long id;
+
+    @Setup(Level.Invocation)
+    public void setUp(BenchmarkDatabase database) {
+      id = database.insert("deleted");
+    }
+  }
+}
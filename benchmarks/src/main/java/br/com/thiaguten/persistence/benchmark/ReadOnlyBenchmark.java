@@ -0,0 +1,101 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.AbstractHibernatePersistenceProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Large reads of a provider loading its entities read-only against the same reads loading them
+ * modifiable. A read-only entity keeps no snapshot of its loaded state and its session is not
+ * flushed, so the allocation rate reported by the gc profiler is the heap the snapshots cost.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar ReadOnlyBenchmark -prof gc
+ * </pre>
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ReadOnlyBenchmark {
+
+  /**
+   * Provider under benchmark: <code>core</code> or <code>jpa</code>.
+   */
+  @Param({"core", "jpa"})
+  public String provider;
+
+  /**
+   * Whether the provider loads its entities read-only.
+   */
+  @Param({"false", "true"})
+  public boolean readOnly;
+
+  /**
+   * Number of entities the database is seeded with.
+   */
+  @Param({"10000"})
+  public int rows;
+
+  private Database database;
+  private BenchmarkProvider benchmarkProvider;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    database = new Database(provider, Collections.singletonMap("javax.persistence.jdbc.url",
+        "jdbc:hsqldb:mem:benchmark-readonly-" + provider + "-" + readOnly + ";shutdown=true"));
+    database.seed(rows);
+    benchmarkProvider = database.newProvider();
+    ((AbstractHibernatePersistenceProvider) benchmarkProvider).setReadOnly(readOnly);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    benchmarkProvider.close();
+    database.close();
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAll() {
+    return benchmarkProvider.inTransaction(() -> benchmarkProvider.findAll(BenchmarkEntity.class));
+  }
+}
@@ -0,0 +1,191 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.MatchMode;
+import org.hibernate.criterion.Restrictions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling suite: how the paging, counting and scanning operations of the core and JPA providers
+ * degrade as the table grows from 10 thousand to 10 million rows.
+ *
+ * <p>The tables are HSQLDB cached tables in a file database under the temporary directory, so
+ * large tables live on disk as in production rather than on the heap; each size is seeded once
+ * per fork with set-based inserts. Loading the full 10 million rows table needs a heap of several
+ * gigabytes; when it fails the run goes on with the next benchmark.
+ *
+ * <p>Run through {@link #main(String[])} to get the results as JSON in
+ * <code>target/scaling.json</code>, or with any JMH options, such as <code>-rf csv</code> or
+ * <code>-p rows=10000,100000</code>:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar br.com.thiaguten.persistence.benchmark.ScalingBenchmark
+ * </pre>
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class ScalingBenchmark {
+
+  private static final int PAGE_SIZE = 20;
+
+  /**
+   * Criterions of the counts: the names starting with "entity-1", about a ninth of the rows.
+   */
+  private static final List<Criterion> COUNT_CRITERIONS = Collections.singletonList(
+      Restrictions.like("name", "entity-1", MatchMode.START));
+
+  private ScalingDatabase database;
+  private BenchmarkProvider provider;
+
+  @Setup(Level.Trial)
+  public void setUp(ScalingDatabase database) {
+    this.database = database;
+    this.provider = database.database.newProvider();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    provider.close();
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAllShallowPage() {
+    return provider.inTransaction(() -> provider.findAll(BenchmarkEntity.class, 0, PAGE_SIZE));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAllDeepPage() {
+    int firstResult = database.rows - PAGE_SIZE;
+    return provider.inTransaction(() -> provider.findAll(BenchmarkEntity.class, firstResult,
+        PAGE_SIZE));
+  }
+
+  @Benchmark
+  public long countAll() {
+    return provider.inTransaction(() -> provider.countAll(BenchmarkEntity.class));
+  }
+
+  @Benchmark
+  public Long countByCriteria() {
+    return provider.inTransaction(() -> provider.countByCriteria(BenchmarkEntity.class,
+        Long.class, Criteria.DISTINCT_ROOT_ENTITY, COUNT_CRITERIONS));
+  }
+
+  @Benchmark
+  public int findAll() {
+    return provider.inTransaction(() -> provider.findAll(BenchmarkEntity.class).size());
+  }
+
+  /**
+   * File database seeded with the number of rows of the run.
+   */
+  @State(Scope.Benchmark)
+  public static class ScalingDatabase {
+
+    /**
+     * Provider under benchmark: <code>core</code> or <code>jpa</code>.
+     */
+    @Param({"core", "jpa"})
+    public String provider;
+
+    /**
+     * Number of rows of the table.
+     */
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private Database database;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      File directory = new File(System.getProperty("java.io.tmpdir"), "simple-dao-scaling");
+      Map<String, Object> properties = new HashMap<>();
+      properties.put("javax.persistence.jdbc.url", "jdbc:hsqldb:file:"
+          + new File(directory, provider + "-" + rows).getAbsolutePath()
+          + ";hsqldb.default_table_type=cached;hsqldb.log_data=false;shutdown=true");
+      database = new Database(provider, properties);
+      database.seed(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      database.close();
+    }
+  }
+
+  /**
+   * Run the scaling suite, writing the results as JSON to <code>target/scaling.json</code> unless
+   * another result format or file is given.
+   *
+   * @param args the JMH command line options
+   * @throws CommandLineOptionException if the options are invalid
+   * @throws RunnerException if the run fails
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    CommandLineOptions options = new CommandLineOptions(args);
+    ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+    if (options.getIncludes().isEmpty()) {
+      builder.include(ScalingBenchmark.class.getName());
+    }
+    if (!options.getResultFormat().hasValue()) {
+      builder.resultFormat(ResultFormatType.JSON);
+    }
+    if (!options.getResult().hasValue()) {
+      ResultFormatType format = options.getResultFormat().orElse(ResultFormatType.JSON);
+      builder.result("target/scaling." + format.toString().toLowerCase());
+    }
+    new Runner(builder.build()).run();
+  }
+}
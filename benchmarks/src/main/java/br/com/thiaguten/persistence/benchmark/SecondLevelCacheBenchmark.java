@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmark;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.cache.LocalRegionFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads served by the local second-level and query caches against the same reads without them.
+ * With the caches, the entity is cached with the nonstrict-read-write access type and the finders
+ * of the provider cache its queries; every invocation starts with an empty persistence context,
+ * so after the warmup the reads are cache hits.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar SecondLevelCacheBenchmark -prof gc
+ * </pre>
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SecondLevelCacheBenchmark {
+
+  /**
+   * Provider under benchmark: <code>core</code> or <code>jpa</code>.
+   */
+  @Param({"core", "jpa"})
+  public String provider;
+
+  /**
+   * Whether the second-level and query caches are enabled.
+   */
+  @Param({"false", "true"})
+  public boolean cache;
+
+  /**
+   * Number of entities the database is seeded with.
+   */
+  @Param({"100"})
+  public int rows;
+
+  private Database database;
+  private BenchmarkProvider benchmarkProvider;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put("javax.persistence.jdbc.url",
+        "jdbc:hsqldb:mem:benchmark-cache-" + provider + "-" + cache + ";shutdown=true");
+    if (cache) {
+      properties.put("hibernate.cache.use_second_level_cache", "true");
+      properties.put("hibernate.cache.use_query_cache", "true");
+      properties.put("hibernate.cache.region.factory_class", LocalRegionFactory.class.getName());
+      properties.put("hibernate.ejb.classcache." + BenchmarkEntity.class.getName(),
+          "nonstrict-read-write");
+    }
+    database = new Database(provider, properties);
+    database.seed(rows);
+    benchmarkProvider = database.newProvider();
+    if (cache) {
+      benchmarkProvider.setCacheableEntityClasses(Collections.singleton(BenchmarkEntity.class));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    benchmarkProvider.close();
+    database.close();
+  }
+
+  @Benchmark
+  public BenchmarkEntity findById() {
+    Long id = 1L + ThreadLocalRandom.current().nextInt(rows);
+    return benchmarkProvider.inTransaction(() -> benchmarkProvider.findById(BenchmarkEntity.class,
+        id));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAll() {
+    return benchmarkProvider.inTransaction(() -> benchmarkProvider.findAll(BenchmarkEntity.class));
+  }
+}
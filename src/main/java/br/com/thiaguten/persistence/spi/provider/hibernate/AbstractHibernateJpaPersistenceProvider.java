@@ -18,19 +18,28 @@
  */
 package br.com.thiaguten.persistence.spi.provider.hibernate;
 
+import org.hibernate.FlushMode;
+import org.hibernate.Query;
 import org.hibernate.Session;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.jpa.QueryHints;
 
 import br.com.thiaguten.persistence.core.Persistable;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import javax.persistence.PersistenceException;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
 
 /**
  * Hibernate EntityManager implementation of the PersistenceProvider.
@@ -41,6 +50,38 @@ public abstract class AbstractHibernateJpaPersistenceProvider
     extends AbstractHibernatePersistenceProvider
     implements HibernateJpaPersistenceProvider {
 
+  /**
+   * Default maximum number of per entity class queries cached by the provider.
+   */
+  public static final int DEFAULT_ENTITY_QUERY_CACHE_SIZE = 256;
+
+  private static final String SELECT_ALL_QUERY = "select e from %s e";
+  private static final String COUNT_ALL_QUERY = "select count(e) from %s e";
+
+  private volatile LruCache<List<Object>, String> entityQueryCache =
+      new LruCache<>(DEFAULT_ENTITY_QUERY_CACHE_SIZE);
+
+  /**
+   * Get the cache of the per entity class queries used by {@link #findAll(Class, int, int)},
+   * {@link #countAll(Class)} and {@link #streamAll(Class)}, which exposes its hit, miss and
+   * eviction statistics and can be cleared.
+   *
+   * @return the entity query cache
+   */
+  public LruCache<List<Object>, String> getEntityQueryCache() {
+    return entityQueryCache;
+  }
+
+  /**
+   * Set the maximum number of per entity class queries cached by the provider. The cached queries
+   * are discarded.
+   *
+   * @param entityQueryCacheSize the entity query cache size
+   */
+  public void setEntityQueryCacheSize(int entityQueryCacheSize) {
+    this.entityQueryCache = new LruCache<>(entityQueryCacheSize);
+  }
+
   /**
    * Get the session.
    *
@@ -70,7 +111,7 @@ public abstract class AbstractHibernateJpaPersistenceProvider
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
       ID id) {
-    return getEntityManager().find(entityClazz, id);
+    return loadReadOnly(() -> getEntityManager().find(entityClazz, id));
   }
 
   /**
@@ -88,8 +129,9 @@ public abstract class AbstractHibernateJpaPersistenceProvider
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(Class<T> entityClazz,
       int firstResult, int maxResults) {
-    CriteriaQuery<T> cq = getEntityManager().getCriteriaBuilder().createQuery(entityClazz);
-    TypedQuery<T> createQuery = getEntityManager().createQuery(cq.select(cq.from(entityClazz)));
+    String query = entityQuery(entityClazz, SELECT_ALL_QUERY);
+    TypedQuery<T> createQuery = applyReadOnly(getEntityManager().createQuery(query, entityClazz));
+    createQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(isCacheable(entityClazz)));
     return queryRange(createQuery, firstResult, maxResults).getResultList();
   }
 
@@ -99,14 +141,16 @@ public abstract class AbstractHibernateJpaPersistenceProvider
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
       Class<T> entityClazz, boolean cacheable, String query, Object... params) {
-    TypedQuery<T> typedQuery = getEntityManager().createQuery(query, entityClazz);
-    typedQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(cacheable));
-    if (params != null) {
-      for (int i = 0; i < params.length; i++) {
-        typedQuery.setParameter(i + 1, params[i]); // JPQL Positional Parameters starts from 1
+    return cachedResult(entityClazz, query, false, params, cacheable, () -> {
+      TypedQuery<T> typedQuery = applyReadOnly(getEntityManager().createQuery(query, entityClazz));
+      typedQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(cacheable));
+      if (params != null) {
+        for (int i = 0; i < params.length; i++) {
+          typedQuery.setParameter(i + 1, params[i]); // JPQL Positional Parameters starts from 1
+        }
       }
-    }
-    return typedQuery.getResultList();
+      return typedQuery.getResultList();
+    });
   }
 
   /**
@@ -115,10 +159,32 @@ public abstract class AbstractHibernateJpaPersistenceProvider
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
       Class<T> entityClazz, boolean cacheable, String query, Map<String, ?> params) {
-    TypedQuery<T> typedQuery = getEntityManager().createQuery(query, entityClazz);
-    typedQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(cacheable));
+    return cachedResult(entityClazz, query, false, params, cacheable, () -> {
+      TypedQuery<T> typedQuery = applyReadOnly(getEntityManager().createQuery(query, entityClazz));
+      typedQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(cacheable));
+      if (params != null) {
+        params.forEach(typedQuery::setParameter);
+      }
+      return typedQuery.getResultList();
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByPreparedQuery(
+      PreparedQuery<T> preparedQuery, Object... params) {
+    preparedQuery.checkParameters(params);
+    Class<T> resultClazz = preparedQuery.getResultClazz();
+    TypedQuery<T> typedQuery = applyReadOnly(preparedQuery.isNamed()
+        ? getEntityManager().createNamedQuery(preparedQuery.getQuery(), resultClazz)
+        : getEntityManager().createQuery(preparedQuery.getQuery(), resultClazz));
+    typedQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(preparedQuery.isCacheable()));
     if (params != null) {
-      params.forEach(typedQuery::setParameter);
+      for (int i = 0; i < params.length; i++) {
+        typedQuery.setParameter(i + 1, params[i]); // JPQL Positional Parameters starts from 1
+      }
     }
     return typedQuery.getResultList();
   }
@@ -129,28 +195,118 @@ public abstract class AbstractHibernateJpaPersistenceProvider
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
       Class<T> entityClazz, boolean cacheable, String queryName, Object... params) {
-    TypedQuery<T> typedQuery = getEntityManager().createNamedQuery(queryName, entityClazz);
-    typedQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(cacheable));
+    return cachedResult(entityClazz, queryName, true, params, cacheable, () -> {
+      TypedQuery<T> typedQuery = applyReadOnly(
+          getEntityManager().createNamedQuery(queryName, entityClazz));
+      typedQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(cacheable));
+      if (params != null) {
+        for (int i = 0; i < params.length; i++) {
+          typedQuery.setParameter(i + 1, params[i]); // JPQL Positional Parameters starts from 1
+        }
+      }
+      return typedQuery.getResultList();
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, boolean cacheable, String queryName, Map<String, ?> params) {
+    return cachedResult(entityClazz, queryName, true, params, cacheable, () -> {
+      TypedQuery<T> typedQuery = applyReadOnly(
+          getEntityManager().createNamedQuery(queryName, entityClazz));
+      typedQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(cacheable));
+      if (params != null) {
+        params.forEach(typedQuery::setParameter);
+      }
+      return typedQuery.getResultList();
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findByKeyset(
+      Class<T> entityClazz, Keyset keyset, int maxResults, List<Criterion> criterions) {
+    if (criterions != null && !criterions.isEmpty()) {
+      return super.findByKeyset(entityClazz, keyset, maxResults, criterions);
+    }
+    if (maxResults <= 0) {
+      throw new IllegalArgumentException("Max results must be greater than zero.");
+    }
+
+    CriteriaBuilder cb = getEntityManager().getCriteriaBuilder();
+    CriteriaQuery<T> cq = cb.createQuery(entityClazz);
+    Root<T> root = cq.from(entityClazz);
+    if (!keyset.isFirst()) {
+      cq.where(keysetPredicate(cb, root, keyset));
+    }
+    List<Order> orders = new ArrayList<>();
+    for (String property : keyset.getProperties()) {
+      orders.add(cb.asc(root.get(property)));
+    }
+    cq.orderBy(orders);
+    TypedQuery<T> typedQuery = applyReadOnly(getEntityManager().createQuery(cq.select(root)));
+    List<T> results = typedQuery.setMaxResults(maxResults + 1).getResultList();
+    return keysetPage(entityClazz, keyset, maxResults, results);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      Class<T> entityClazz) {
+    String query = entityQuery(entityClazz, SELECT_ALL_QUERY);
+    TypedQuery<T> createQuery = applyReadOnly(getEntityManager().createQuery(query, entityClazz));
+    return stream(createQuery.unwrap(Query.class));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    TypedQuery<T> typedQuery = applyReadOnly(getEntityManager().createQuery(query, entityClazz));
     if (params != null) {
       for (int i = 0; i < params.length; i++) {
         typedQuery.setParameter(i + 1, params[i]); // JPQL Positional Parameters starts from 1
       }
     }
-    return typedQuery.getResultList();
+    return stream(typedQuery.unwrap(Query.class));
   }
 
   /**
    * {@inheritDoc}
    */
   @Override
-  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
-      Class<T> entityClazz, boolean cacheable, String queryName, Map<String, ?> params) {
-    TypedQuery<T> typedQuery = getEntityManager().createNamedQuery(queryName, entityClazz);
-    typedQuery.setHint(QueryHints.HINT_CACHEABLE, String.valueOf(cacheable));
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    TypedQuery<T> typedQuery = applyReadOnly(getEntityManager().createQuery(query, entityClazz));
     if (params != null) {
       params.forEach(typedQuery::setParameter);
     }
-    return typedQuery.getResultList();
+    return stream(typedQuery.unwrap(Query.class));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    TypedQuery<T> typedQuery = applyReadOnly(
+        getEntityManager().createNamedQuery(queryName, entityClazz));
+    if (params != null) {
+      for (int i = 0; i < params.length; i++) {
+        typedQuery.setParameter(i + 1, params[i]); // JPQL Positional Parameters starts from 1
+      }
+    }
+    return stream(typedQuery.unwrap(Query.class));
   }
 
   /**
@@ -158,10 +314,9 @@ public abstract class AbstractHibernateJpaPersistenceProvider
    */
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> long countAll(Class<T> entityClazz) {
-    CriteriaBuilder criteriaBuilder = getEntityManager().getCriteriaBuilder();
-    CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
-    criteriaQuery.select(criteriaBuilder.count(criteriaQuery.from(entityClazz)));
-    return getEntityManager().createQuery(criteriaQuery).getSingleResult();
+    String query = entityQuery(entityClazz, COUNT_ALL_QUERY);
+    return cachedResult(Long.class, query, false, null,
+        () -> applyReadOnly(getEntityManager().createQuery(query, Long.class)).getSingleResult());
   }
 
   /**
@@ -170,11 +325,14 @@ public abstract class AbstractHibernateJpaPersistenceProvider
   @Override
   public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
       String queryName, Map<String, ?> params) {
-    TypedQuery<T> typedQuery = getEntityManager().createNamedQuery(queryName, resultClazz);
-    if (params != null) {
-      params.forEach(typedQuery::setParameter);
-    }
-    return typedQuery.getSingleResult();
+    return cachedResult(resultClazz, queryName, true, params, () -> {
+      TypedQuery<T> typedQuery = applyReadOnly(
+          getEntityManager().createNamedQuery(queryName, resultClazz));
+      if (params != null) {
+        params.forEach(typedQuery::setParameter);
+      }
+      return typedQuery.getSingleResult();
+    });
   }
 
   /**
@@ -183,11 +341,42 @@ public abstract class AbstractHibernateJpaPersistenceProvider
   @Override
   public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
       Map<String, ?> params) {
-    TypedQuery<T> typedQuery = getEntityManager().createQuery(query, resultClazz);
+    return cachedResult(resultClazz, query, false, params, () -> {
+      TypedQuery<T> typedQuery = applyReadOnly(getEntityManager().createQuery(query, resultClazz));
+      if (params != null) {
+        params.forEach(typedQuery::setParameter);
+      }
+      return typedQuery.getSingleResult();
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByQuery(
+      Class<T> entityClazz, Class<D> dtoClazz, String query, Map<String, ?> params) {
+    return projection(entityClazz, dtoClazz, getEntityManager().createQuery(query), params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByNamedQuery(
+      Class<T> entityClazz, Class<D> dtoClazz, String queryName, Map<String, ?> params) {
+    return projection(entityClazz, dtoClazz, getEntityManager().createNamedQuery(queryName),
+        params);
+  }
+
+  private <D> List<D> projection(Class<?> entityClazz, Class<D> dtoClazz,
+      javax.persistence.Query query, Map<String, ?> params) {
+    applyReadOnly(query).setHint(QueryHints.HINT_CACHEABLE,
+        String.valueOf(isCacheable(entityClazz)));
     if (params != null) {
-      params.forEach(typedQuery::setParameter);
+      params.forEach(query::setParameter);
     }
-    return typedQuery.getSingleResult();
+    return ProjectionMapper.map(dtoClazz, query.getResultList());
   }
 
   /**
@@ -195,6 +384,7 @@ public abstract class AbstractHibernateJpaPersistenceProvider
    */
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    invalidateResults(entity);
     ID id = entity.getId();
 
     if (id != null) {
@@ -230,8 +420,55 @@ public abstract class AbstractHibernateJpaPersistenceProvider
     }
 
 //    T t = findById(entityClazz, _id); // throws exception: entity must be managed to call remove: try merging the detached and try the remove again.
+    invalidateResults(entityClazz);
     T t = getEntityManager().getReference(entityClazz, _id);
 
     getEntityManager().remove(t);
   }
+
+  /**
+   * Hint the query of a finder to be read-only and not to flush the session if the finders are
+   * read-only.
+   */
+  private <Q extends javax.persistence.Query> Q applyReadOnly(Q query) {
+    if (isReadOnly()) {
+      query.setHint(QueryHints.HINT_READONLY, true);
+      query.setHint(QueryHints.HINT_FLUSH_MODE, FlushMode.MANUAL);
+    }
+    return query;
+  }
+
+  /**
+   * Row value comparison <code>(p1, p2) &gt; (v1, v2)</code> expanded to
+   * <code>p1 &gt; v1 or (p1 = v1 and p2 &gt; v2)</code>.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Predicate keysetPredicate(CriteriaBuilder cb, Root<?> root, Keyset keyset) {
+    String[] properties = keyset.getProperties();
+    Object[] values = keyset.getValues();
+    List<Predicate> disjunction = new ArrayList<>(properties.length);
+    for (int i = 0; i < properties.length; i++) {
+      List<Predicate> conjunction = new ArrayList<>(i + 1);
+      for (int j = 0; j < i; j++) {
+        conjunction.add(cb.equal(root.get(properties[j]), values[j]));
+      }
+      conjunction.add(cb.greaterThan(root.<Comparable>get(properties[i]), (Comparable) values[i]));
+      disjunction.add(cb.and(conjunction.toArray(new Predicate[0])));
+    }
+    return cb.or(disjunction.toArray(new Predicate[0]));
+  }
+
+  /**
+   * Get the query of the entity class rendered from the template. The query is rendered and
+   * compiled once, instead of building and rendering a criteria query on every call; paging is
+   * applied to the query afterwards, so it does not change the query string.
+   */
+  private String entityQuery(Class<?> entityClazz, String template) {
+    return entityQueryCache.get(Arrays.asList(entityClazz, template), k -> {
+      String entityName = getEntityManager().getMetamodel().entity(entityClazz).getName();
+      String query = String.format(template, entityName);
+      compile(query);
+      return query;
+    });
+  }
 }
@@ -21,17 +21,61 @@ package br.com.thiaguten.persistence.spi.provider.hibernate;
 import br.com.thiaguten.persistence.core.Persistable;
 import br.com.thiaguten.persistence.spi.PersistenceProvider;
 
+import org.hibernate.BaseSessionEventListener;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.FlushMode;
 import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.spi.UpdateTimestampsCache;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Projections;
+import org.hibernate.engine.query.spi.ParameterMetadata;
+import org.hibernate.engine.spi.NamedQueryDefinition;
+import org.hibernate.engine.spi.NamedSQLQueryDefinition;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.OuterJoinLoadable;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
 import org.hibernate.transform.ResultTransformer;
+import org.reactivestreams.Publisher;
 
 import java.io.Serializable;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.transaction.Synchronization;
 
 /**
  * Hibernate implementation of the PersistenceProvider.
@@ -41,13 +85,281 @@ import java.util.Map;
 @SuppressWarnings("unchecked")
 public abstract class AbstractHibernatePersistenceProvider implements HibernatePersistenceProvider {
 
+  /**
+   * Default number of entities written between two flushes of the persistence context. It should
+   * match the <code>hibernate.jdbc.batch_size</code> configuration property.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 50;
+
+  /**
+   * Default number of rows fetched from the database per round trip by the streaming operations.
+   */
+  public static final int DEFAULT_FETCH_SIZE = 100;
+
+  /**
+   * Default maximum number of parameters bound to a single <code>IN</code> list.
+   */
+  public static final int DEFAULT_IN_LIST_SIZE = 500;
+
+  /**
+   * Default maximum number of prepared query handles cached by the provider.
+   */
+  public static final int DEFAULT_PREPARED_QUERY_CACHE_SIZE = 256;
+
+  /**
+   * Default maximum number of criteria shapes cached by the provider.
+   */
+  public static final int DEFAULT_CRITERIA_SHAPE_CACHE_SIZE = 256;
+
+  private static final String CRITERIA_SELECT_QUERY = "select e from %s e";
+  private static final String CRITERIA_COUNT_QUERY = "select count(*) from %s e";
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private int fetchSize = DEFAULT_FETCH_SIZE;
+  private int inListSize = DEFAULT_IN_LIST_SIZE;
+  private volatile LruCache<List<Object>, PreparedQuery<?>> preparedQueryCache =
+      new LruCache<>(DEFAULT_PREPARED_QUERY_CACHE_SIZE);
+  private volatile LruCache<List<Object>, String> criteriaShapeCache =
+      new LruCache<>(DEFAULT_CRITERIA_SHAPE_CACHE_SIZE);
+  private volatile Set<Class<?>> cacheableEntityClasses = Collections.emptySet();
+  private volatile boolean readOnly;
+  private volatile LruCache<List<Object>, CachedResult> resultCache;
+  private final ConcurrentMap<Serializable, QuerySpace> querySpaces = new ConcurrentHashMap<>();
+  private final Map<Session, PendingWrites> pendingWrites =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * Get the number of entities written between two flushes of the persistence context by the
+   * collection based write operations.
+   *
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Set the number of entities written between two flushes of the persistence context by the
+   * collection based write operations.
+   *
+   * @param batchSize the batch size
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be greater than zero.");
+    }
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Get the JDBC fetch size used by the streaming operations.
+   *
+   * @return the fetch size
+   */
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * Set the JDBC fetch size used by the streaming operations.
+   *
+   * @param fetchSize the fetch size
+   */
+  public void setFetchSize(int fetchSize) {
+    if (fetchSize <= 0) {
+      throw new IllegalArgumentException("Fetch size must be greater than zero.");
+    }
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * Get the maximum number of parameters bound to a single <code>IN</code> list, capped by the
+   * limit of the dialect if it has one.
+   *
+   * @return the in list size
+   */
+  public int getInListSize() {
+    return HibernateOperations.inListSize(getSession(), inListSize);
+  }
+
+  /**
+   * Set the maximum number of parameters bound to a single <code>IN</code> list.
+   *
+   * @param inListSize the in list size
+   */
+  public void setInListSize(int inListSize) {
+    if (inListSize <= 0) {
+      throw new IllegalArgumentException("In list size must be greater than zero.");
+    }
+    this.inListSize = inListSize;
+  }
+
+  /**
+   * Get the cache of prepared query handles, which exposes its hit, miss and eviction statistics.
+   * A handle only holds the query string and its parameter count; the compiled plans are held by
+   * the query plan cache of the session factory.
+   *
+   * @return the prepared query cache
+   */
+  public LruCache<List<Object>, PreparedQuery<?>> getPreparedQueryCache() {
+    return preparedQueryCache;
+  }
+
+  /**
+   * Set the maximum number of prepared query handles cached by the provider. The cached handles
+   * are discarded.
+   *
+   * @param preparedQueryCacheSize the prepared query cache size
+   */
+  public void setPreparedQueryCacheSize(int preparedQueryCacheSize) {
+    this.preparedQueryCache = new LruCache<>(preparedQueryCacheSize);
+  }
+
+  /**
+   * Get the cache of the queries compiled from criteria shapes by the criteria finders and
+   * counters, which exposes its hit, miss and eviction statistics and can be cleared.
+   *
+   * @return the criteria shape cache
+   */
+  public LruCache<List<Object>, String> getCriteriaShapeCache() {
+    return criteriaShapeCache;
+  }
+
+  /**
+   * Set the maximum number of criteria shapes cached by the provider. The cached queries are
+   * discarded.
+   *
+   * @param criteriaShapeCacheSize the criteria shape cache size
+   */
+  public void setCriteriaShapeCacheSize(int criteriaShapeCacheSize) {
+    this.criteriaShapeCache = new LruCache<>(criteriaShapeCacheSize);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Set<Class<?>> getCacheableEntityClasses() {
+    return cacheableEntityClasses;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setCacheableEntityClasses(Collection<? extends Class<?>> cacheableEntityClasses) {
+    this.cacheableEntityClasses = cacheableEntityClasses == null
+        ? Collections.emptySet()
+        : Collections.unmodifiableSet(new HashSet<>(cacheableEntityClasses));
+  }
+
+  /**
+   * Check if the queries of the entity class are cached by the finders which take no
+   * <code>cacheable</code> flag.
+   *
+   * @param entityClazz the entity class
+   * @return true if the entity class is cacheable
+   */
+  public boolean isCacheable(Class<?> entityClazz) {
+    return cacheableEntityClasses.contains(entityClazz);
+  }
+
+  /**
+   * Check if the finders load read-only entities and do not flush the session before their
+   * queries.
+   *
+   * @return true if the finders are read-only
+   */
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * Set if the finders load read-only entities and do not flush the session before their queries.
+   * The session keeps no snapshot of a read-only entity and does not dirty check it, which halves
+   * the memory held per loaded entity and shortens the flushes, but changes to it are ignored.
+   * Entities the session already manages are returned as they are, with their pending changes.
+   * Changes pending in the session are not seen by the queries of the finders.
+   *
+   * @param readOnly true if the finders are read-only
+   * @see #readOnly(Supplier)
+   */
+  public void setReadOnly(boolean readOnly) {
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Get the cache of the query and count results, which exposes its hit, miss, eviction and
+   * expiration statistics.
+   *
+   * @return the result cache or null if it is disabled
+   */
+  public LruCache<List<Object>, ?> getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * Enable the cache of the results of the <code>findByQuery*</code>,
+   * <code>findByNamedQuery*</code> and <code>countBy*</code> operations and of
+   * {@link #countAll(Class)}, keyed by query and parameters. The finders only use it for the
+   * queries they run as cacheable, see {@link #setCacheableEntityClasses(Collection)}. The cached
+   * results over a table are invalidated by the writes of this provider to the entities mapped on
+   * it, committed or not, and only the results read outside of a write are cached. Entity results
+   * are only cached for the entity classes cached in the second level cache, by identifier, and
+   * loaded again from the session or the second level cache on every hit. The cached results are
+   * discarded.
+   *
+   * <p>Writes which do not go through this provider, such as changes of managed entities flushed
+   * by dirty checking, are only seen once the time to live elapses or after a call to
+   * {@link #invalidateResults(Class)}.
+   *
+   * @param maxSize the maximum number of cached rows and counts, zero disables the cache
+   * @param timeToLive the time to live of the results, zero if they never expire
+   * @param unit the unit of the time to live
+   */
+  public void setResultCache(int maxSize, long timeToLive, TimeUnit unit) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Max size must not be negative.");
+    }
+    this.resultCache = maxSize == 0 ? null : new LruCache<>(LruCache.DEFAULT_CONCURRENCY_LEVEL,
+        maxSize, timeToLive, unit, (key, result) -> result.weight());
+  }
+
+  /**
+   * Invalidate the cached results over the tables of the entity class.
+   *
+   * @param entityClazz the entity class
+   */
+  public void invalidateResults(Class<?> entityClazz) {
+    if (resultCache != null) {
+      invalidateResults(entitySpaces(entityClazz));
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
       ID id) {
-    return getSession().get(entityClazz, id);
+    return loadReadOnly(() -> getSession().get(entityClazz, id));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    if (ids == null || ids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<T> results = new ArrayList<>(loadReadOnly(() -> getSession().byMultipleIds(entityClazz)
+        .withBatchSize(getInListSize())
+        .enableSessionCheck(true)
+        .multiLoad(new ArrayList<>(ids))));
+    results.removeIf(Objects::isNull); // not found identifiers
+    return results;
   }
 
   /**
@@ -74,7 +386,7 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
       Class<T> entityClazz, String queryName, Object... params) {
-    return findByNamedQuery(entityClazz, false, queryName, params);
+    return findByNamedQuery(entityClazz, isCacheable(entityClazz), queryName, params);
   }
 
   /**
@@ -83,14 +395,16 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
       Class<T> entityClazz, boolean cacheable, String queryName, Object... params) {
-    Query hibernateQuery = getSession().getNamedQuery(queryName);
-    hibernateQuery.setCacheable(cacheable);
-    if (params != null) {
-      for (int i = 0; i < params.length; i++) {
-        hibernateQuery.setParameter(i, params[i]); // HQL Positional Parameters starts from 0
+    return cachedResult(entityClazz, queryName, true, params, cacheable, () -> {
+      Query hibernateQuery = applyReadOnly(getSession().getNamedQuery(queryName));
+      hibernateQuery.setCacheable(cacheable);
+      if (params != null) {
+        for (int i = 0; i < params.length; i++) {
+          hibernateQuery.setParameter(i, params[i]); // HQL Positional Parameters starts from 0
+        }
       }
-    }
-    return hibernateQuery.list();
+      return hibernateQuery.list();
+    });
   }
 
   /**
@@ -99,7 +413,8 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
       Class<T> entityClazz, String queryName, Map<String, ?> params) {
-    return findByNamedQueryAndNamedParams(entityClazz, false, queryName, params);
+    return findByNamedQueryAndNamedParams(entityClazz, isCacheable(entityClazz), queryName,
+        params);
   }
 
   /**
@@ -108,12 +423,14 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
       Class<T> entityClazz, boolean cacheable, String queryName, Map<String, ?> params) {
-    Query hibernateQuery = getSession().getNamedQuery(queryName);
-    hibernateQuery.setCacheable(cacheable);
-    if (params != null) {
-      params.forEach(hibernateQuery::setParameter);
-    }
-    return hibernateQuery.list();
+    return cachedResult(entityClazz, queryName, true, params, cacheable, () -> {
+      Query hibernateQuery = applyReadOnly(getSession().getNamedQuery(queryName));
+      hibernateQuery.setCacheable(cacheable);
+      if (params != null) {
+        params.forEach(hibernateQuery::setParameter);
+      }
+      return hibernateQuery.list();
+    });
   }
 
   /**
@@ -122,7 +439,7 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
       Class<T> entityClazz, String query, Object... params) {
-    return findByQuery(entityClazz, false, query, params);
+    return findByQuery(entityClazz, isCacheable(entityClazz), query, params);
   }
 
   /**
@@ -131,8 +448,215 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
       Class<T> entityClazz, boolean cacheable, String query, Object... params) {
-    Query hibernateQuery = getSession().createQuery(query);
-    hibernateQuery.setCacheable(cacheable);
+    return cachedResult(entityClazz, query, false, params, cacheable, () -> {
+      Query hibernateQuery = applyReadOnly(getSession().createQuery(query));
+      hibernateQuery.setCacheable(cacheable);
+      if (params != null) {
+        for (int i = 0; i < params.length; i++) {
+          hibernateQuery.setParameter(i, params[i]); // HQL Positional Parameters starts from 0
+        }
+      }
+      return hibernateQuery.list();
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    return findByQueryAndNamedParams(entityClazz, isCacheable(entityClazz), query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, boolean cacheable, String query, Map<String, ?> params) {
+    return cachedResult(entityClazz, query, false, params, cacheable, () -> {
+      Query hibernateQuery = applyReadOnly(getSession().createQuery(query));
+      hibernateQuery.setCacheable(cacheable);
+      if (params != null) {
+        params.forEach(hibernateQuery::setParameter);
+      }
+      return hibernateQuery.list();
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int updateFields(
+      Class<T> entityClazz, ID id, Object version, Map<String, ?> values) {
+    invalidateResults(entityClazz);
+    return HibernateOperations.updateFields(getSession(), entityClazz, id, version, values);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int updateByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions, Map<String, ?> values) {
+    if (values == null || values.isEmpty()) {
+      return 0;
+    }
+    invalidateResults(entityClazz);
+    return HibernateOperations.updateByCriteria(getSession(), entityClazz, criterions, values);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int deleteByIds(Class<T> entityClazz,
+      Collection<ID> ids) {
+    if (ids == null || ids.isEmpty()) {
+      return 0;
+    }
+
+    invalidateResults(entityClazz);
+    return HibernateOperations.deleteByIds(getSession(), entityClazz, ids, getInListSize());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int deleteAllInBatch(
+      Class<T> entityClazz, Collection<T> entities) {
+    if (entities == null || entities.isEmpty()) {
+      return 0;
+    }
+
+    invalidateResults(entityClazz);
+    return HibernateOperations.deleteAllInBatch(getSession(), entityClazz, entities,
+        getInListSize());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int deleteByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    invalidateResults(entityClazz);
+    return HibernateOperations.deleteByCriteria(getSession(), entityClazz, criterions);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void bulkInsert(
+      Collection<T> entities) {
+    if (entities == null || entities.isEmpty()) {
+      return;
+    }
+    entities.forEach(this::invalidateResults);
+    withStatelessSession(statelessSession -> {
+      entities.forEach(statelessSession::insert);
+      return null;
+    });
+    invalidateCaches(entities, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void bulkUpdate(
+      Collection<T> entities) {
+    if (entities == null || entities.isEmpty()) {
+      return;
+    }
+    entities.forEach(this::invalidateResults);
+    withStatelessSession(statelessSession -> {
+      entities.forEach(statelessSession::update);
+      return null;
+    });
+    invalidateCaches(entities, true);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void bulkDelete(
+      Collection<T> entities) {
+    if (entities == null || entities.isEmpty()) {
+      return;
+    }
+    entities.forEach(this::invalidateResults);
+    withStatelessSession(statelessSession -> {
+      entities.forEach(statelessSession::delete);
+      return null;
+    });
+    invalidateCaches(entities, true);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long bulkScroll(Class<T> entityClazz,
+      List<Criterion> criterions, Consumer<? super T> consumer) {
+    return withStatelessSession(statelessSession -> {
+      Criteria criteria = HibernateOperations.createCriteria(statelessSession, entityClazz,
+          criterions);
+      return HibernateOperations.scroll(
+          criteria.setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY), consumer);
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareQuery(
+      Class<T> entityClazz, boolean cacheable, String query) {
+    List<Object> key = Arrays.asList(entityClazz, query, false, cacheable);
+    return (PreparedQuery<T>) preparedQueryCache.get(key,
+        k -> new PreparedQuery<>(entityClazz, query, false, cacheable, compile(query)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamedQuery(
+      Class<T> entityClazz, boolean cacheable, String queryName) {
+    List<Object> key = Arrays.asList(entityClazz, queryName, true, cacheable);
+    return (PreparedQuery<T>) preparedQueryCache.get(key, k -> {
+      SessionFactoryImplementor factory = (SessionFactoryImplementor) getSession()
+          .getSessionFactory();
+      NamedQueryDefinition definition = factory.getNamedQuery(queryName);
+      if (definition != null) {
+        return new PreparedQuery<>(entityClazz, queryName, true, cacheable,
+            compile(definition.getQueryString()));
+      } else if (factory.getNamedSQLQuery(queryName) != null) {
+        // native queries are not compiled by Hibernate
+        return new PreparedQuery<>(entityClazz, queryName, true, cacheable, -1);
+      } else {
+        throw new MappingException("Named query not known: " + queryName);
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByPreparedQuery(
+      PreparedQuery<T> preparedQuery, Object... params) {
+    preparedQuery.checkParameters(params);
+    Query hibernateQuery = applyReadOnly(preparedQuery.isNamed()
+        ? getSession().getNamedQuery(preparedQuery.getQuery())
+        : getSession().createQuery(preparedQuery.getQuery()));
+    hibernateQuery.setCacheable(preparedQuery.isCacheable());
     if (params != null) {
       for (int i = 0; i < params.length; i++) {
         hibernateQuery.setParameter(i, params[i]); // HQL Positional Parameters starts from 0
@@ -145,23 +669,95 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
    * {@inheritDoc}
    */
   @Override
-  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
-      Class<T> entityClazz, String query, Map<String, ?> params) {
-    return findByQueryAndNamedParams(entityClazz, false, query, params);
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    Criteria criteria = applyReadOnly(createCriteria(entityClazz, criterions));
+    return stream(criteria.setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY));
   }
 
   /**
    * {@inheritDoc}
    */
   @Override
-  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
-      Class<T> entityClazz, boolean cacheable, String query, Map<String, ?> params) {
-    Query hibernateQuery = getSession().createQuery(query);
-    hibernateQuery.setCacheable(cacheable);
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    Query hibernateQuery = applyReadOnly(getSession().getNamedQuery(queryName));
+    if (params != null) {
+      for (int i = 0; i < params.length; i++) {
+        hibernateQuery.setParameter(i, params[i]); // HQL Positional Parameters starts from 0
+      }
+    }
+    return stream(hibernateQuery);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    Query hibernateQuery = applyReadOnly(getSession().createQuery(query));
+    if (params != null) {
+      for (int i = 0; i < params.length; i++) {
+        hibernateQuery.setParameter(i, params[i]); // HQL Positional Parameters starts from 0
+      }
+    }
+    return stream(hibernateQuery);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    Query hibernateQuery = applyReadOnly(getSession().createQuery(query));
     if (params != null) {
       params.forEach(hibernateQuery::setParameter);
     }
-    return hibernateQuery.list();
+    return stream(hibernateQuery);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Publisher<T> publishAll(
+      Class<T> entityClazz) {
+    String entityName = getClassMetadata(entityClazz).getEntityName();
+    return publishByQueryAndNamedParams(entityClazz,
+        String.format(CRITERIA_SELECT_QUERY, entityName), null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Publisher<T>
+      publishByQueryAndNamedParams(Class<T> entityClazz, String query, Map<String, ?> params) {
+    return publisher((statelessSession, fetch) -> {
+      Query hibernateQuery = statelessSession.createQuery(query).setFetchSize(fetch);
+      if (params != null) {
+        params.forEach(hibernateQuery::setParameter);
+      }
+      return hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Publisher<T> publishByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    return publisher((statelessSession, fetch) -> HibernateOperations.createCriteria(
+        statelessSession, entityClazz, criterions).setFetchSize(fetch)
+        .scroll(ScrollMode.FORWARD_ONLY));
+  }
+
+  private <T> Publisher<T> publisher(
+      BiFunction<StatelessSession, Integer, ScrollableResults> query) {
+    return new ScrollableResultsPublisher<>(getSession().getSessionFactory(), query, fetchSize);
   }
 
   /**
@@ -178,11 +774,13 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
       String queryName, Map<String, ?> params) {
-    Query hibernateQuery = getSession().getNamedQuery(queryName);
-    if (params != null) {
-      params.forEach(hibernateQuery::setParameter);
-    }
-    return (T) hibernateQuery.uniqueResult();
+    return cachedResult(resultClazz, queryName, true, params, () -> {
+      Query hibernateQuery = applyReadOnly(getSession().getNamedQuery(queryName));
+      if (params != null) {
+        params.forEach(hibernateQuery::setParameter);
+      }
+      return (T) hibernateQuery.uniqueResult();
+    });
   }
 
   /**
@@ -191,11 +789,13 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
       Map<String, ?> params) {
-    Query hibernateQuery = getSession().createQuery(query);
-    if (params != null) {
-      params.forEach(hibernateQuery::setParameter);
-    }
-    return (T) hibernateQuery.uniqueResult();
+    return cachedResult(resultClazz, query, false, params, () -> {
+      Query hibernateQuery = applyReadOnly(getSession().createQuery(query));
+      if (params != null) {
+        params.forEach(hibernateQuery::setParameter);
+      }
+      return (T) hibernateQuery.uniqueResult();
+    });
   }
 
   /**
@@ -203,6 +803,7 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
    */
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    invalidateResults(entity);
     ID id = entity.getId();
 
     if (id != null) {
@@ -259,11 +860,70 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
       _id = entity.getId();
     }
 
+    invalidateResults(entityClazz);
     T t = getSession().load(entityClazz, _id);
 
     getSession().delete(t);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    if (entities == null || entities.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    List<T> source = new ArrayList<>(entities);
+    Object[] saved = new Object[source.size()];
+    int count = 0;
+    for (int index : orderByEntityClass(source)) {
+      saved[index] = save(source.get(index));
+      if (++count % batchSize == 0) {
+        flushAndClear();
+      }
+    }
+    flushAndClear();
+
+    return (List<T>) Arrays.asList(saved);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    return saveAll(entities);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    if (entities == null || entities.isEmpty()) {
+      return;
+    }
+
+    invalidateResults(entityClazz);
+    int count = 0;
+    for (T entity : entities) {
+      if (entity == null || entity.getId() == null) {
+        throw new HibernateException("Could not delete. ID is null.");
+      }
+      // a detached entity is deleted as is, without the select of load
+      getSession().delete(entity);
+      if (++count % batchSize == 0) {
+        flushAndClear();
+      }
+    }
+    flushAndClear();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -279,7 +939,8 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByCriteria(
       Class<T> entityClazz, int firstResult, int maxResults, List<Criterion> criterions) {
-    return findByCriteria(entityClazz, false, firstResult, maxResults, criterions);
+    return findByCriteria(entityClazz, isCacheable(entityClazz), firstResult, maxResults,
+        criterions);
   }
 
   /**
@@ -289,13 +950,35 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   public <ID extends Serializable, T extends Persistable<ID>> List<T> findByCriteria(
       Class<T> entityClazz, boolean cacheable, int firstResult, int maxResults,
       List<Criterion> criterions) {
-    Criteria criteria = getSession().createCriteria(entityClazz);
-    if (criterions != null) {
-      for (Criterion c : criterions) {
-        criteria.add(c);
+    CriteriaShape shape = criteriaShape(entityClazz, criterions);
+    if (shape != null) {
+      Query query = criteriaQuery(entityClazz, CRITERIA_SELECT_QUERY, shape);
+      if (maxResults >= 0) {
+        query.setMaxResults(maxResults);
       }
+      if (firstResult >= 0) {
+        query.setFirstResult(firstResult);
+      }
+      return query.setCacheable(cacheable).list();
+    }
+    Criteria criteria = applyReadOnly(createCriteria(entityClazz, criterions));
+    return HibernateOperations.criteriaRange(criteria, firstResult, maxResults)
+        .setCacheable(cacheable).list();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findByKeyset(
+      Class<T> entityClazz, Keyset keyset, int maxResults, List<Criterion> criterions) {
+    if (maxResults <= 0) {
+      throw new IllegalArgumentException("Max results must be greater than zero.");
     }
-    return criteriaRange(criteria, firstResult, maxResults).setCacheable(cacheable).list();
+    Criteria criteria = applyReadOnly(createCriteria(entityClazz, criterions));
+    HibernateOperations.keysetCriteria(criteria, keyset);
+    List<T> results = criteria.setMaxResults(maxResults + 1).list();
+    return keysetPage(entityClazz, keyset, maxResults, results);
   }
 
   /**
@@ -304,7 +987,7 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> T findUniqueResultByCriteria(
       Class<T> entityClazz, List<Criterion> criterions) {
-    return findUniqueResultByCriteria(entityClazz, false, criterions);
+    return findUniqueResultByCriteria(entityClazz, isCacheable(entityClazz), criterions);
   }
 
   /**
@@ -313,12 +996,12 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   @Override
   public <ID extends Serializable, T extends Persistable<ID>> T findUniqueResultByCriteria(
       Class<T> entityClazz, boolean cacheable, List<Criterion> criterions) {
-    Criteria criteria = getSession().createCriteria(entityClazz);
-    if (criterions != null) {
-      for (Criterion c : criterions) {
-        criteria.add(c);
-      }
+    CriteriaShape shape = criteriaShape(entityClazz, criterions);
+    if (shape != null) {
+      Query query = criteriaQuery(entityClazz, CRITERIA_SELECT_QUERY, shape);
+      return (T) query.setCacheable(cacheable).uniqueResult();
     }
+    Criteria criteria = applyReadOnly(createCriteria(entityClazz, criterions));
     return (T) criteria.setCacheable(cacheable).uniqueResult();
   }
 
@@ -338,25 +1021,574 @@ public abstract class AbstractHibernatePersistenceProvider implements HibernateP
   public <ID extends Serializable, T extends Persistable<ID>, N extends Number> N countByCriteria(
       Class<T> entityClazz, Class<N> resultClazz, ResultTransformer resultTransformer,
       List<Criterion> criterions) {
-    Criteria criteria = getSession().createCriteria(entityClazz);
+    // a row count has a single row, so only the default transformer leaves it untouched
+    CriteriaShape shape = resultTransformer == Criteria.DISTINCT_ROOT_ENTITY
+        ? CriteriaShape.of((EntityPersister) getClassMetadata(entityClazz), criterions) : null;
+    if (shape != null) {
+      List<Object> key = Arrays.asList(entityClazz, resultClazz, shape.getRestriction(),
+          shape.getValues());
+      return cachedResult(key, () -> entitySpaces(entityClazz), resultClazz,
+          () -> (N) criteriaQuery(entityClazz, CRITERIA_COUNT_QUERY, shape).uniqueResult());
+    }
+    Criteria criteria = applyReadOnly(createCriteria(entityClazz, criterions));
     criteria.setProjection(Projections.rowCount());
-    if (criterions != null) {
-      for (Criterion c : criterions) {
-        criteria.add(c);
+    return (N) criteria.setResultTransformer(resultTransformer).uniqueResult();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByCriteria(
+      Class<T> entityClazz, Class<D> dtoClazz, List<String> properties, int firstResult,
+      int maxResults, List<Criterion> criterions) {
+    Criteria criteria = applyReadOnly(createCriteria(entityClazz, criterions));
+    criteria.setProjection(HibernateOperations.projection(properties))
+        .setCacheable(isCacheable(entityClazz));
+    return ProjectionMapper.map(dtoClazz,
+        HibernateOperations.criteriaRange(criteria, firstResult, maxResults).list());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByQuery(
+      Class<T> entityClazz, Class<D> dtoClazz, String query, Map<String, ?> params) {
+    return projection(entityClazz, dtoClazz, applyReadOnly(getSession().createQuery(query)),
+        params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByNamedQuery(
+      Class<T> entityClazz, Class<D> dtoClazz, String queryName, Map<String, ?> params) {
+    return projection(entityClazz, dtoClazz, applyReadOnly(getSession().getNamedQuery(queryName)),
+        params);
+  }
+
+  private <D> List<D> projection(Class<?> entityClazz, Class<D> dtoClazz, Query query,
+      Map<String, ?> params) {
+    query.setCacheable(isCacheable(entityClazz));
+    if (params != null) {
+      params.forEach(query::setParameter);
+    }
+    return ProjectionMapper.map(dtoClazz, query.list());
+  }
+
+  /**
+   * Get the shape of the criterions of a finder, or null if they have no shape or the entity
+   * fetches associations by outer join, which only the Criteria API does when loading it: a HQL
+   * query would load them with a select per row.
+   */
+  private CriteriaShape criteriaShape(Class<?> entityClazz, List<Criterion> criterions) {
+    EntityPersister persister = (EntityPersister) getClassMetadata(entityClazz);
+    if (!(persister instanceof OuterJoinLoadable)) {
+      return null;
+    }
+    OuterJoinLoadable loadable = (OuterJoinLoadable) persister;
+    for (int i = 0; i < loadable.countSubclassProperties(); i++) {
+      if (loadable.getFetchMode(i) == FetchMode.JOIN
+          && loadable.getSubclassPropertyType(i).isAssociationType()) {
+        return null;
       }
     }
-    return (N) criteria.setResultTransformer(resultTransformer).uniqueResult();
+    return CriteriaShape.of(persister, criterions);
   }
 
-  private Criteria criteriaRange(Criteria criteria, int firstResult, int maxResults) {
-    if (criteria != null) {
-      if (maxResults >= 0) {
-        criteria.setMaxResults(maxResults);
+  private Query criteriaQuery(Class<?> entityClazz, String template, CriteriaShape shape) {
+    List<Object> key = Arrays.asList(entityClazz, template, shape.getRestriction());
+    String query = criteriaShapeCache.get(key, k -> {
+      String entityName = getClassMetadata(entityClazz).getEntityName();
+      return String.format(template, entityName) + shape.getRestriction();
+    });
+    return shape.bind(applyReadOnly(getSession().createQuery(query)));
+  }
+
+  /**
+   * Make the query of a finder read-only and not flush the session if the finders are read-only.
+   *
+   * @param query the query
+   * @return the query
+   */
+  protected Query applyReadOnly(Query query) {
+    if (readOnly) {
+      query.setReadOnly(true).setFlushMode(FlushMode.MANUAL);
+    }
+    return query;
+  }
+
+  private Criteria applyReadOnly(Criteria criteria) {
+    if (readOnly) {
+      criteria.setReadOnly(true).setFlushMode(FlushMode.MANUAL);
+    }
+    return criteria;
+  }
+
+  /**
+   * Load entities read-only if the finders are read-only. The session loads the entities it does
+   * not manage yet as read-only, while the entities it already manages keep their mode and their
+   * pending changes.
+   *
+   * @param loader the loader of the entities
+   * @param <E> the type of the result
+   * @return the result of the loader
+   */
+  protected <E> E loadReadOnly(Supplier<E> loader) {
+    if (!readOnly) {
+      return loader.get();
+    }
+    Session session = getSession();
+    boolean defaultReadOnly = session.isDefaultReadOnly();
+    session.setDefaultReadOnly(true);
+    try {
+      return loader.get();
+    } finally {
+      session.setDefaultReadOnly(defaultReadOnly);
+    }
+  }
+
+  private Criteria createCriteria(Class<?> entityClazz, List<Criterion> criterions) {
+    return HibernateOperations.createCriteria(getSession(), entityClazz, criterions);
+  }
+
+  /**
+   * Compile the query into the query plan cache of the session factory, which is where
+   * <code>createQuery</code> looks it up on every execution, and count its positional parameters.
+   *
+   * @param query the query string
+   * @return the number of positional parameters
+   */
+  protected int compile(String query) {
+    SessionFactoryImplementor factory = (SessionFactoryImplementor) getSession()
+        .getSessionFactory();
+    ParameterMetadata parameterMetadata = factory.getQueryPlanCache()
+        .getHQLQueryPlan(query, false, Collections.emptyMap())
+        .getParameterMetadata();
+    int count = parameterMetadata.getOrdinalParameterCount();
+    for (String name : parameterMetadata.getNamedParameterNames()) {
+      if (!name.isEmpty() && name.chars().allMatch(Character::isDigit)) {
+        count++; // JPQL Positional Parameters (?1, ?2...)
       }
-      if (firstResult >= 0) {
-        criteria.setFirstResult(firstResult);
+    }
+    return count;
+  }
+
+  /**
+   * Build the page of a keyset paginated query read with max results plus one rows.
+   *
+   * @param entityClazz the entity class
+   * @param keyset the keyset of the page read
+   * @param maxResults max result
+   * @param results the rows read
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the page and the keyset of the next page
+   */
+  protected <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> keysetPage(
+      Class<T> entityClazz, Keyset keyset, int maxResults, List<T> results) {
+    return HibernateOperations.keysetPage(getClassMetadata(entityClazz), keyset, maxResults,
+        results);
+  }
+
+  /**
+   * Get the Hibernate mapping metadata of the entity class.
+   *
+   * @param entityClazz the entity class
+   * @return the class metadata
+   */
+  protected ClassMetadata getClassMetadata(Class<?> entityClazz) {
+    return HibernateOperations.classMetadata(getSession(), entityClazz);
+  }
+
+  /**
+   * Stream the rows of the query through a forward-only cursor using the configured fetch size.
+   *
+   * @param query the query
+   * @param <T> the type of the rows
+   * @return the stream of rows
+   */
+  protected <T> Stream<T> stream(Query query) {
+    return stream(query.setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY));
+  }
+
+  private <T> Stream<T> stream(ScrollableResults results) {
+    return ScrollableResultsSpliterator.stream(getSession(), results);
+  }
+
+  /**
+   * Get the result of the query from the result cache, or load and cache it.
+   *
+   * @param resultClazz the class of the results, entities of it are cached by identifier
+   * @param query the query string or name
+   * @param named true if the query is a named query
+   * @param params the query parameters, positional as an array or named as a map
+   * @param loader the loader of the result
+   * @param <R> the type of the result
+   * @return the result
+   */
+  protected <R> R cachedResult(Class<?> resultClazz, String query, boolean named, Object params,
+      Supplier<R> loader) {
+    return cachedResult(resultClazz, query, named, params, true, loader);
+  }
+
+  /**
+   * Get the result of the query from the result cache, or load and cache it, if the caller asked
+   * for a cacheable query.
+   *
+   * @param resultClazz the class of the results, entities of it are cached by identifier
+   * @param query the query string or name
+   * @param named true if the query is a named query
+   * @param params the query parameters, positional as an array or named as a map
+   * @param cacheable false to load the result without looking it up or caching it
+   * @param loader the loader of the result
+   * @param <R> the type of the result
+   * @return the result
+   */
+  protected <R> R cachedResult(Class<?> resultClazz, String query, boolean named, Object params,
+      boolean cacheable, Supplier<R> loader) {
+    if (resultCache == null || !cacheable) {
+      return loader.get();
+    }
+    Object paramsKey = params instanceof Object[] ? Arrays.asList(((Object[]) params).clone())
+        : params instanceof Map ? new HashMap<>((Map<?, ?>) params) : params;
+    return cachedResult(Arrays.asList(resultClazz, query, named, paramsKey),
+        () -> querySpaces(query, named), resultClazz, loader);
+  }
+
+  private <R> R cachedResult(List<Object> key, Supplier<Collection<Serializable>> spaces,
+      Class<?> resultClazz, Supplier<R> loader) {
+    LruCache<List<Object>, CachedResult> cache = resultCache;
+    if (cache == null) {
+      return loader.get();
+    }
+    CachedResult cached = cache.getIfPresent(key);
+    if (cached != null && cached.isValid()) {
+      Object result = cached.value;
+      if (cached.ids) {
+        Collection<Serializable> ids = (Collection<Serializable>) result;
+        List<?> entities = findByIds((Class) resultClazz, ids);
+        result = entities.size() == ids.size() ? entities : null; // deleted meanwhile
+      } else if (result instanceof List) {
+        result = new ArrayList<>((List<?>) result);
+      }
+      if (result != null) {
+        return (R) result;
       }
     }
-    return criteria;
+
+    Collection<Serializable> names = spaces.get();
+    if (names == null || names.isEmpty()) {
+      return loader.get(); // unknown tables
+    }
+    QuerySpace[] states = new QuerySpace[names.size()];
+    long[] generations = new long[states.length];
+    int i = 0;
+    for (Serializable name : names) {
+      states[i] = querySpace(name);
+      generations[i] = states[i].generation.get();
+      i++;
+    }
+    R result = loader.get();
+    for (QuerySpace state : states) {
+      if (state.writers.get() > 0) {
+        return result; // may be uncommitted or about to change
+      }
+    }
+    CachedResult value = CachedResult.of(result, resultClazz, hasSecondLevelCache(resultClazz),
+        states, generations);
+    if (value != null) {
+      cache.put(key, value);
+    }
+    return result;
+  }
+
+  /**
+   * Invalidate the cached results over the tables of the entity, which is about to be written.
+   *
+   * @param entity the entity
+   */
+  protected void invalidateResults(Persistable<?> entity) {
+    if (resultCache != null) {
+      SessionImplementor session = (SessionImplementor) getSession();
+      invalidateResults(Arrays.asList(session.getEntityPersister(null, entity).getQuerySpaces()));
+    }
+  }
+
+  /**
+   * Invalidate the cached results over the tables right away, and once more after the current
+   * transaction completes or its session closes. Until then the results over the tables are not
+   * cached. The pending writes are held by the session, weakly, so a session which is never
+   * completed does not leak them.
+   */
+  private void invalidateResults(Collection<Serializable> spaces) {
+    PendingWrites pending = null;
+    Session session = getSession();
+    Transaction transaction = session.getTransaction();
+    if (transaction != null && transaction.getStatus() == TransactionStatus.ACTIVE) {
+      pending = pendingWrites.computeIfAbsent(session, k -> {
+        PendingWrites writes = new PendingWrites();
+        k.addEventListeners(writes);
+        return writes;
+      });
+    }
+    for (Serializable name : spaces) {
+      QuerySpace state = querySpace(name);
+      if (pending != null) {
+        pending.add(state);
+      }
+      state.generation.incrementAndGet();
+    }
+  }
+
+  /**
+   * Check if the entity class is mapped as cacheable in the second level cache.
+   *
+   * @param clazz the class
+   * @return true if the class is a cached entity class
+   */
+  private boolean hasSecondLevelCache(Class<?> clazz) {
+    SessionFactoryImplementor factory = (SessionFactoryImplementor) getSession()
+        .getSessionFactory();
+    ClassMetadata metadata = factory.getClassMetadata(clazz);
+    return metadata != null && factory.getEntityPersister(metadata.getEntityName()).hasCache();
+  }
+
+  private QuerySpace querySpace(Serializable name) {
+    return querySpaces.computeIfAbsent(name, k -> new QuerySpace());
+  }
+
+  private Collection<Serializable> entitySpaces(Class<?> entityClazz) {
+    SessionFactoryImplementor factory = (SessionFactoryImplementor) getSession()
+        .getSessionFactory();
+    String entityName = getClassMetadata(entityClazz).getEntityName();
+    return Arrays.asList(factory.getEntityPersister(entityName).getQuerySpaces());
+  }
+
+  private Collection<Serializable> querySpaces(String query, boolean named) {
+    SessionFactoryImplementor factory = (SessionFactoryImplementor) getSession()
+        .getSessionFactory();
+    String hql = query;
+    if (named) {
+      NamedQueryDefinition definition = factory.getNamedQuery(query);
+      if (definition == null) {
+        NamedSQLQueryDefinition sqlDefinition = factory.getNamedSQLQuery(query);
+        return sqlDefinition == null || sqlDefinition.getQuerySpaces() == null
+            ? Collections.emptySet() : new ArrayList<>(sqlDefinition.getQuerySpaces());
+      }
+      hql = definition.getQueryString();
+    }
+    return factory.getQueryPlanCache().getHQLQueryPlan(hql, false, Collections.emptyMap())
+        .getQuerySpaces();
+  }
+
+  /**
+   * Evict the entities from the second level cache and invalidate the cached query results over
+   * their tables, for the writes which bypass the session. It is done right away and once more
+   * after the transaction completes, since a concurrent load may cache the old state in between.
+   *
+   * @param entities the written entities
+   * @param evictEntities true to evict the entities, false to invalidate the queries only
+   */
+  protected void invalidateCaches(Collection<?> entities, boolean evictEntities) {
+    SessionImplementor session = (SessionImplementor) getSession();
+    SessionFactoryImplementor factory = session.getFactory();
+    SessionFactoryOptions options = factory.getSessionFactoryOptions();
+    if (!options.isSecondLevelCacheEnabled() && !options.isQueryCacheEnabled()) {
+      return;
+    }
+    Map<String, Set<Serializable>> ids = new LinkedHashMap<>();
+    Set<Serializable> spaces = new LinkedHashSet<>();
+    for (Object entity : entities) {
+      EntityPersister persister = session.getEntityPersister(null, entity);
+      Collections.addAll(spaces, persister.getQuerySpaces());
+      Serializable id = ((Persistable<?>) entity).getId();
+      if (evictEntities && persister.hasCache() && id != null) {
+        ids.computeIfAbsent(persister.getEntityName(), k -> new HashSet<>()).add(id);
+      }
+    }
+    Runnable invalidation = () -> {
+      ids.forEach((entityName, entityIds) -> entityIds
+          .forEach(id -> factory.getCache().evictEntity(entityName, id)));
+      UpdateTimestampsCache updateTimestampsCache = factory.getUpdateTimestampsCache();
+      if (updateTimestampsCache != null && !spaces.isEmpty()) {
+        updateTimestampsCache.invalidate(spaces.toArray(new Serializable[0]), session);
+      }
+    };
+    invalidation.run();
+    afterTransactionCompletion(invalidation);
+  }
+
+  /**
+   * Run the action after the current transaction completes, or right away if there is no active
+   * transaction.
+   *
+   * @param action the action
+   */
+  protected void afterTransactionCompletion(Runnable action) {
+    Transaction transaction = getSession().getTransaction();
+    if (transaction == null || transaction.getStatus() != TransactionStatus.ACTIVE) {
+      action.run();
+      return;
+    }
+    transaction.registerSynchronization(new Synchronization() {
+      @Override
+      public void beforeCompletion() {
+      }
+
+      @Override
+      public void afterCompletion(int status) {
+        action.run();
+      }
+    });
+  }
+
+  /**
+   * Flush the pending statements as a JDBC batch and clear the persistence context, so memory stays
+   * bounded while writing large collections.
+   */
+  protected void flushAndClear() {
+    Session session = getSession();
+    session.flush();
+    session.clear();
+  }
+
+  /**
+   * Evict the instances of the entity class with the given identifiers from the session, after they
+   * were changed by a set-based statement which bypassed the persistence context.
+   *
+   * @param entityClazz the entity class
+   * @param ids the entity identifiers, or null for all the instances of the entity class
+   */
+  protected void evict(Class<?> entityClazz, Collection<? extends Serializable> ids) {
+    HibernateOperations.evict(getSession(), entityClazz, ids);
+  }
+
+  /**
+   * Group the entities by their class so Hibernate does not break a JDBC batch every time the
+   * entity type changes.
+   *
+   * @param entities the entities
+   * @return the indexes of the entities grouped by entity class
+   */
+  private static List<Integer> orderByEntityClass(List<?> entities) {
+    Map<Class<?>, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < entities.size(); i++) {
+      groups.computeIfAbsent(entities.get(i).getClass(), k -> new ArrayList<>()).add(i);
+    }
+    List<Integer> order = new ArrayList<>(entities.size());
+    groups.values().forEach(order::addAll);
+    return order;
+  }
+
+  /**
+   * Write state of a table: its generation, incremented by every write, and the number of
+   * transactions writing to it.
+   */
+  private static final class QuerySpace {
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger writers = new AtomicInteger();
+  }
+
+  /**
+   * Tables written by the current transaction of a session, released when the transaction
+   * completes or the session closes.
+   */
+  private static final class PendingWrites extends BaseSessionEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Set<QuerySpace> spaces = new HashSet<>();
+
+    private synchronized void add(QuerySpace state) {
+      if (spaces.add(state)) {
+        state.writers.incrementAndGet();
+      }
+    }
+
+    @Override
+    public void transactionCompletion(boolean successful) {
+      release();
+    }
+
+    @Override
+    public void end() {
+      release();
+    }
+
+    private synchronized void release() {
+      for (QuerySpace state : spaces) {
+        state.generation.incrementAndGet();
+        state.writers.decrementAndGet();
+      }
+      spaces.clear();
+    }
+  }
+
+  /**
+   * Result of the result cache, valid while the generations of its tables are unchanged.
+   */
+  private static final class CachedResult {
+
+    private final Object value;
+    private final boolean ids;
+    private final QuerySpace[] spaces;
+    private final long[] generations;
+
+    private CachedResult(Object value, boolean ids, QuerySpace[] spaces, long[] generations) {
+      this.value = value;
+      this.ids = ids;
+      this.spaces = spaces;
+      this.generations = generations;
+    }
+
+    /**
+     * Get the cacheable form of the result: the identifiers of a list of entities of a class
+     * cached in the second level cache, which loads them back without a query, a copy of a list
+     * of values, or a value.
+     *
+     * @return the cached result or null if the result can not be cached
+     */
+    private static CachedResult of(Object result, Class<?> resultClazz, boolean secondLevelCached,
+        QuerySpace[] spaces, long[] generations) {
+      if (result instanceof List) {
+        List<?> list = (List<?>) result;
+        if (!list.isEmpty() && secondLevelCached && Persistable.class.isAssignableFrom(resultClazz)
+            && list.stream().allMatch(resultClazz::isInstance)) {
+          List<Serializable> ids = new ArrayList<>(list.size());
+          for (Object entity : list) {
+            ids.add(((Persistable<?>) entity).getId());
+          }
+          return new CachedResult(ids, true, spaces, generations);
+        }
+        if (list.stream().allMatch(CachedResult::isValue)) {
+          return new CachedResult(new ArrayList<>(list), false, spaces, generations);
+        }
+        return null;
+      }
+      return isValue(result) ? new CachedResult(result, false, spaces, generations) : null;
+    }
+
+    private static boolean isValue(Object value) {
+      return value instanceof Number || value instanceof String || value instanceof Boolean
+          || value instanceof Character || value instanceof Enum || value instanceof UUID
+          || value instanceof TemporalAccessor;
+    }
+
+    private boolean isValid() {
+      for (int i = 0; i < spaces.length; i++) {
+        if (spaces[i].generation.get() != generations[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int weight() {
+      return value instanceof Collection ? Math.max(1, ((Collection<?>) value).size()) : 1;
+    }
   }
 }
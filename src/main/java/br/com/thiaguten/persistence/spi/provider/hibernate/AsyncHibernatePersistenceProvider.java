@@ -0,0 +1,456 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Asynchronous facade of a {@link HibernatePersistenceProvider}: every operation runs on an
+ * executor and returns a {@link CompletableFuture}, so independent lookups can run in parallel and
+ * be composed.
+ *
+ * <p>A task runs on a thread of the executor, so it never shares the session or the transaction of
+ * the caller. Built from a session factory, the facade runs every task in a session and a
+ * transaction of its own, opened for the task and closed once it completes, so the entities of
+ * its result are detached. Built from a provider, the facade expects the provider to demarcate its
+ * own transactions, as a provider behind declarative transactions does. Either way
+ * {@link #execute(Function)} can be overridden to demarcate them otherwise. Since every running
+ * task holds a connection, the executor should not run more tasks at once than the connection
+ * pool has connections, see {@link #newExecutor(int, int, boolean)}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class AsyncHibernatePersistenceProvider {
+
+  private final HibernatePersistenceProvider provider;
+  private final SessionFactory sessionFactory;
+  private final Function<? super Session, ? extends HibernatePersistenceProvider> providerFactory;
+  private final Executor executor;
+
+  /**
+   * Constructor of a facade running every task in a session and a transaction of its own. The
+   * session is opened from the session factory and the provider of the task is created over it;
+   * the transaction is committed when the task returns and rolled back when it fails.
+   *
+   * @param sessionFactory the session factory opening the session of each task
+   * @param providerFactory the factory of the provider of a task over its session
+   * @param executor the executor of the tasks
+   */
+  public AsyncHibernatePersistenceProvider(SessionFactory sessionFactory,
+      Function<? super Session, ? extends HibernatePersistenceProvider> providerFactory,
+      Executor executor) {
+    this.provider = null;
+    this.sessionFactory = Objects.requireNonNull(sessionFactory, "sessionFactory");
+    this.providerFactory = Objects.requireNonNull(providerFactory, "providerFactory");
+    this.executor = Objects.requireNonNull(executor, "executor");
+  }
+
+  /**
+   * Constructor of a facade running every task against a provider which demarcates its own
+   * sessions and transactions, such as a provider behind declarative transactions.
+   *
+   * @param provider the provider the tasks run against
+   * @param executor the executor of the tasks
+   */
+  public AsyncHibernatePersistenceProvider(HibernatePersistenceProvider provider,
+      Executor executor) {
+    this.provider = Objects.requireNonNull(provider, "provider");
+    this.sessionFactory = null;
+    this.providerFactory = null;
+    this.executor = Objects.requireNonNull(executor, "executor");
+  }
+
+  /**
+   * Create an executor running at most <code>poolSize</code> tasks at once, which should be the
+   * maximum size of the connection pool. Up to <code>queueCapacity</code> tasks wait in its queue;
+   * beyond that the executor rejects the task, whose future then completes exceptionally with a
+   * {@link RejectedExecutionException}, so an overload is shed at once instead of running the task
+   * on the submitting thread, which may hold a transaction or be an event loop thread.
+   *
+   * <p>The executor does not read the size of the pool. With HikariCP, pass the
+   * <code>maximumPoolSize</code> of the pool, for instance
+   * <code>dataSource.getHikariConfigMXBean().getMaximumPoolSize()</code>, or the
+   * <code>hibernate.hikari.maximumPoolSize</code> property when Hibernate configures the pool, and
+   * create a new executor whenever the pool is resized. A larger pool size leaves tasks waiting for
+   * a connection up to the <code>connectionTimeout</code> of the pool, holding their threads.
+   *
+   * @param poolSize the number of threads, usually the maximum size of the connection pool
+   * @param queueCapacity the number of tasks waiting for a thread, zero to hand every task over
+   *     to a thread directly
+   * @param virtualThreads true to run the tasks on virtual threads if the JDK supports them
+   * @return the executor, which the caller must shut down
+   */
+  public static ExecutorService newExecutor(int poolSize, int queueCapacity,
+      boolean virtualThreads) {
+    if (poolSize <= 0) {
+      throw new IllegalArgumentException("Pool size must be greater than zero.");
+    }
+    if (queueCapacity < 0) {
+      throw new IllegalArgumentException("Queue capacity must not be negative.");
+    }
+    ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory() : null;
+    if (threadFactory == null) {
+      threadFactory = daemonThreadFactory();
+    }
+    BlockingQueue<Runnable> queue = queueCapacity == 0
+        ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+    return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, queue,
+        threadFactory, new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Get the virtual thread factory of the JDK, available since Java 21.
+   *
+   * @return the virtual thread factory or null if the JDK does not support virtual threads
+   */
+  private static ThreadFactory virtualThreadFactory() {
+    try {
+      // the methods are looked up on the public Thread.Builder interface, its implementations
+      // are not accessible
+      Class<?> builderClazz = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Method name = builderClazz.getMethod("name", String.class, long.class);
+      builder = name.invoke(builder, "async-persistence-", 1L);
+      return (ThreadFactory) builderClazz.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static ThreadFactory daemonThreadFactory() {
+    AtomicInteger count = new AtomicInteger();
+    ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+    return runnable -> {
+      Thread thread = defaultFactory.newThread(runnable);
+      thread.setName("async-persistence-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Get the provider the tasks run against.
+   *
+   * @return the provider or null if every task runs against a provider over its own session
+   */
+  public HibernatePersistenceProvider getProvider() {
+    return provider;
+  }
+
+  /**
+   * Get the executor of the tasks.
+   *
+   * @return the executor
+   */
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Run a unit of work against the provider on the executor.
+   *
+   * @param work the work
+   * @param <R> the type of the work result
+   * @return the future of the work result, completed exceptionally with a
+   *     {@link RejectedExecutionException} if the executor rejected the work
+   */
+  public <R> CompletableFuture<R> supply(Function<HibernatePersistenceProvider, R> work) {
+    try {
+      return CompletableFuture.supplyAsync(() -> execute(work), executor);
+    } catch (RejectedExecutionException e) {
+      CompletableFuture<R> rejected = new CompletableFuture<>();
+      rejected.completeExceptionally(e);
+      return rejected;
+    }
+  }
+
+  /**
+   * Run a unit of work on a thread of the executor. Unless the facade was built from a provider,
+   * the work runs against a provider over a session opened for it, in a transaction committed when
+   * the work returns and rolled back when it fails, and the session is closed afterwards.
+   *
+   * @param work the work
+   * @param <R> the type of the work result
+   * @return the work result
+   */
+  protected <R> R execute(Function<HibernatePersistenceProvider, R> work) {
+    if (sessionFactory == null) {
+      return work.apply(provider);
+    }
+    Session session = sessionFactory.openSession();
+    try {
+      Transaction transaction = session.beginTransaction();
+      try {
+        R result = work.apply(providerFactory.apply(session));
+        transaction.commit();
+        return result;
+      } catch (RuntimeException | Error e) {
+        TransactionStatus status = transaction.getStatus();
+        if (status == TransactionStatus.ACTIVE || status == TransactionStatus.MARKED_ROLLBACK) {
+          transaction.rollback();
+        }
+        throw e;
+      }
+    } finally {
+      session.close();
+    }
+  }
+
+  /**
+   * Find by identifier.
+   *
+   * @param entityClazz the entity class
+   * @param id the identifier
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the entity
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<T> findById(
+      Class<T> entityClazz, ID id) {
+    return supply(p -> p.findById(entityClazz, id));
+  }
+
+  /**
+   * Find by identifiers.
+   *
+   * @param entityClazz the entity class
+   * @param ids the identifiers
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the list of entities
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>> findByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    return supply(p -> p.findByIds(entityClazz, ids));
+  }
+
+  /**
+   * Find all.
+   *
+   * @param entityClazz the entity class
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the list of entities
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>> findAll(
+      Class<T> entityClazz) {
+    return supply(p -> p.findAll(entityClazz));
+  }
+
+  /**
+   * Find by query and named parameters.
+   *
+   * @param entityClazz the entity class
+   * @param query the query string
+   * @param params the query named parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the list of entities
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>>
+      findByQueryAndNamedParams(Class<T> entityClazz, String query, Map<String, ?> params) {
+    return supply(p -> p.findByQueryAndNamedParams(entityClazz, query, params));
+  }
+
+  /**
+   * Find by named query and named parameters.
+   *
+   * @param entityClazz the entity class
+   * @param queryName the query name
+   * @param params the query named parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the list of entities
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>>
+      findByNamedQueryAndNamedParams(Class<T> entityClazz, String queryName,
+      Map<String, ?> params) {
+    return supply(p -> p.findByNamedQueryAndNamedParams(entityClazz, queryName, params));
+  }
+
+  /**
+   * Find by criteria.
+   *
+   * @param entityClazz the entity class
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the list of entities
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>>
+      findByCriteria(Class<T> entityClazz, List<Criterion> criterions) {
+    return supply(p -> p.findByCriteria(entityClazz, criterions));
+  }
+
+  /**
+   * Find unique result by criteria.
+   *
+   * @param entityClazz the entity class
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the entity
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<T>
+      findUniqueResultByCriteria(Class<T> entityClazz, List<Criterion> criterions) {
+    return supply(p -> p.findUniqueResultByCriteria(entityClazz, criterions));
+  }
+
+  /**
+   * Count all.
+   *
+   * @param entityClazz the entity class
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the count
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<Long> countAll(
+      Class<T> entityClazz) {
+    return supply(p -> p.countAll(entityClazz));
+  }
+
+  /**
+   * Count by query and named parameters.
+   *
+   * @param resultClazz the result class
+   * @param query the query string
+   * @param params the query named parameters
+   * @param <N> the type of the count return
+   * @return the future of the count
+   */
+  public <N extends Number> CompletableFuture<N> countByQueryAndNamedParams(Class<N> resultClazz,
+      String query, Map<String, ?> params) {
+    return supply(p -> p.countByQueryAndNamedParams(resultClazz, query, params));
+  }
+
+  /**
+   * Count by criteria.
+   *
+   * @param entityClazz the entity class
+   * @param resultClazz the result class
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @param <N> the type of the count return
+   * @return the future of the count
+   */
+  public <ID extends Serializable, T extends Persistable<ID>, N extends Number> CompletableFuture<N>
+      countByCriteria(Class<T> entityClazz, Class<N> resultClazz, List<Criterion> criterions) {
+    return supply(p -> p.countByCriteria(entityClazz, resultClazz, criterions));
+  }
+
+  /**
+   * Save.
+   *
+   * @param entity the entity
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the saved entity
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<T> save(T entity) {
+    return supply(p -> p.save(entity));
+  }
+
+  /**
+   * Save all.
+   *
+   * @param entities the entities
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the saved entities
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>> saveAll(
+      Collection<T> entities) {
+    return supply(p -> p.saveAll(entities));
+  }
+
+  /**
+   * Update.
+   *
+   * @param entity the entity
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the updated entity
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<T> update(
+      T entity) {
+    return supply(p -> p.update(entity));
+  }
+
+  /**
+   * Delete.
+   *
+   * @param entityClazz the entity class
+   * @param entity the entity
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the completion
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<Void> delete(
+      Class<T> entityClazz, T entity) {
+    return supply(p -> {
+      p.delete(entityClazz, entity);
+      return null;
+    });
+  }
+
+  /**
+   * Delete by identifier.
+   *
+   * @param entityClazz the entity class
+   * @param id the identifier
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the future of the completion
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<Void> deleteById(
+      Class<T> entityClazz, ID id) {
+    return supply(p -> {
+      p.deleteById(entityClazz, id);
+      return null;
+    });
+  }
+}
@@ -0,0 +1,338 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.criterion.BetweenExpression;
+import org.hibernate.criterion.CriteriaQuery;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.InExpression;
+import org.hibernate.criterion.Junction;
+import org.hibernate.criterion.LikeExpression;
+import org.hibernate.criterion.NotNullExpression;
+import org.hibernate.criterion.NullExpression;
+import org.hibernate.criterion.SimpleExpression;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.TypedValue;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Structural shape of a list of criterions (property names, operators, match modes) separated from
+ * its bound values.
+ *
+ * <p>The shape is rendered as a HQL restriction, so the query it belongs to is translated to SQL
+ * once by the query plan cache and later calls only bind the values. Each criterion renders
+ * itself, through the public {@link CriteriaQuery} contract, over the entity alias
+ * <code>e</code>, exactly as it renders for the Criteria API but with property paths in place of
+ * columns. Only the restrictions built by {@link org.hibernate.criterion.Restrictions}
+ * comparisons, <code>like</code>, <code>ilike</code>, <code>in</code>, <code>between</code>,
+ * <code>isNull</code> and <code>isNotNull</code> on single column properties, and conjunctions
+ * and disjunctions of them, have a shape; any other criterion must go through the Criteria API.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class CriteriaShape {
+
+  private static final Pattern PROPERTY_NAME = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+  private static final List<Class<?>> SHAPED_CRITERIONS = Arrays.asList(SimpleExpression.class,
+      LikeExpression.class, InExpression.class, BetweenExpression.class, NullExpression.class,
+      NotNullExpression.class);
+
+  private static final CriteriaShape EMPTY = new CriteriaShape("", Collections.emptyList(),
+      Collections.emptyList());
+
+  private final String restriction;
+  private final List<Object> values;
+  private final List<Type> types;
+
+  private CriteriaShape(String restriction, List<Object> values, List<Type> types) {
+    this.restriction = restriction;
+    this.values = values;
+    this.types = types;
+  }
+
+  /**
+   * Get the shape of the criterions.
+   *
+   * @param persister the persister of the entity the criterions restrict
+   * @param criterions the criterions
+   * @return the shape or null if any of the criterions has no shape
+   */
+  static CriteriaShape of(EntityPersister persister, List<Criterion> criterions) {
+    if (criterions == null || criterions.isEmpty()) {
+      return EMPTY;
+    }
+    for (Criterion criterion : criterions) {
+      if (!isShaped(criterion)) {
+        return null;
+      }
+    }
+    HqlCriteriaQuery criteriaQuery = new HqlCriteriaQuery(persister);
+    Dialect dialect = persister.getFactory().getDialect();
+    String caseInsensitiveLike = dialect.supportsCaseInsensitiveLike()
+        ? " " + dialect.getCaseInsensitiveLike() + " " : " ilike ";
+    try {
+      StringBuilder restriction = new StringBuilder();
+      List<Object> values = new ArrayList<>();
+      List<Type> types = new ArrayList<>();
+      for (Criterion criterion : criterions) {
+        String fragment = criterion.toSqlString(null, criteriaQuery);
+        TypedValue[] typedValues = criterion.getTypedValues(null, criteriaQuery);
+        if (fragment.isEmpty() || count(fragment, '?') != typedValues.length
+            || fragment.contains("'''") || fragment.contains(caseInsensitiveLike)) {
+          return null; // e.g. an empty in list, a like escaped by a quote or an ilike operator
+        }
+        restriction.append(restriction.length() == 0 ? " where " : " and ").append(fragment);
+        for (TypedValue typedValue : typedValues) {
+          values.add(typedValue.getValue());
+          types.add(typedValue.getType());
+        }
+      }
+      return new CriteriaShape(restriction.toString(), values, types);
+    } catch (NoShapeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Get the HQL restriction of the shape over the entity alias <code>e</code>, starting with
+   * <code>where</code>, or an empty string if there are no criterions. Its values are bound to
+   * positional parameters.
+   *
+   * @return the restriction
+   */
+  String getRestriction() {
+    return restriction;
+  }
+
+  /**
+   * Get the restriction of the shape with its values bound to the named parameters
+   * <code>:c0</code>, <code>:c1</code>... instead of positional ones, for the statements binding
+   * other values by name.
+   *
+   * @return the restriction
+   */
+  String getNamedRestriction() {
+    StringBuilder namedRestriction = new StringBuilder(restriction.length());
+    int index = 0;
+    for (int i = 0; i < restriction.length(); i++) {
+      char c = restriction.charAt(i);
+      if (c == '?') {
+        namedRestriction.append(":c").append(index++);
+      } else {
+        namedRestriction.append(c);
+      }
+    }
+    return namedRestriction.toString();
+  }
+
+  /**
+   * Get the values of the criterions, in the order of the restriction parameters.
+   *
+   * @return the values
+   */
+  List<Object> getValues() {
+    return Collections.unmodifiableList(values);
+  }
+
+  /**
+   * Bind the values of the criterions to the query of the shape.
+   *
+   * @param query the query
+   * @return the query
+   */
+  Query bind(Query query) {
+    for (int i = 0; i < values.size(); i++) {
+      query.setParameter(i, values.get(i), types.get(i));
+    }
+    return query;
+  }
+
+  /**
+   * Bind the values of the criterions to the named parameters of the query of the
+   * {@link #getNamedRestriction() named restriction}.
+   *
+   * @param query the query
+   * @return the query
+   */
+  Query bindNamed(Query query) {
+    for (int i = 0; i < values.size(); i++) {
+      query.setParameter("c" + i, values.get(i), types.get(i));
+    }
+    return query;
+  }
+
+  private static boolean isShaped(Criterion criterion) {
+    if (criterion instanceof Junction) {
+      for (Criterion condition : ((Junction) criterion).conditions()) {
+        if (!isShaped(condition)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return criterion != null && SHAPED_CRITERIONS.contains(criterion.getClass());
+  }
+
+  private static int count(String fragment, char c) {
+    int count = 0;
+    for (int i = 0; i < fragment.length(); i++) {
+      if (fragment.charAt(i) == c) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Thrown while rendering a criterion which has no shape.
+   */
+  private static final class NoShapeException extends RuntimeException {
+
+    private static final long serialVersionUID = -6398043447935167419L;
+
+    NoShapeException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Criteria query mapping the properties of the root entity to HQL paths over the alias
+   * <code>e</code> instead of SQL columns.
+   */
+  private static final class HqlCriteriaQuery implements CriteriaQuery {
+
+    private static final String ALIAS = "e";
+
+    private final EntityPersister persister;
+
+    HqlCriteriaQuery(EntityPersister persister) {
+      this.persister = persister;
+    }
+
+    private String path(String propertyPath) {
+      if (propertyPath == null || !PROPERTY_NAME.matcher(propertyPath).matches()
+          || !(propertyPath.equals(persister.getIdentifierPropertyName())
+          || Arrays.asList(persister.getPropertyNames()).contains(propertyPath))) {
+        throw new NoShapeException();
+      }
+      Type type = persister.getPropertyType(propertyPath);
+      if (type.isCollectionType() || type.getColumnSpan(persister.getFactory()) != 1) {
+        throw new NoShapeException();
+      }
+      return ALIAS + "." + propertyPath;
+    }
+
+    @Override
+    public SessionFactoryImplementor getFactory() {
+      return persister.getFactory();
+    }
+
+    @Override
+    public String getColumn(Criteria criteria, String propertyPath) {
+      return path(propertyPath);
+    }
+
+    @Override
+    public String[] getColumns(String propertyPath, Criteria criteria) {
+      return new String[] {path(propertyPath)};
+    }
+
+    @Override
+    public String[] findColumns(String propertyPath, Criteria criteria) {
+      return getColumns(propertyPath, criteria);
+    }
+
+    @Override
+    public Type getType(Criteria criteria, String propertyPath) {
+      path(propertyPath);
+      return persister.getPropertyType(propertyPath);
+    }
+
+    @Override
+    public String[] getColumnsUsingProjection(Criteria criteria, String propertyPath) {
+      return getColumns(propertyPath, criteria);
+    }
+
+    @Override
+    public Type getTypeUsingProjection(Criteria criteria, String propertyPath) {
+      return getType(criteria, propertyPath);
+    }
+
+    @Override
+    public TypedValue getTypedValue(Criteria criteria, String propertyPath, Object value) {
+      return new TypedValue(getType(criteria, propertyPath), value);
+    }
+
+    @Override
+    public String getEntityName(Criteria criteria) {
+      return persister.getEntityName();
+    }
+
+    @Override
+    public String getEntityName(Criteria criteria, String propertyPath) {
+      return persister.getEntityName();
+    }
+
+    @Override
+    public String getSQLAlias(Criteria criteria) {
+      return ALIAS;
+    }
+
+    @Override
+    public String getSQLAlias(Criteria criteria, String propertyPath) {
+      return ALIAS;
+    }
+
+    @Override
+    public String getPropertyName(String propertyName) {
+      return propertyName;
+    }
+
+    @Override
+    public String[] getIdentifierColumns(Criteria criteria) {
+      return new String[] {ALIAS + "." + persister.getIdentifierPropertyName()};
+    }
+
+    @Override
+    public Type getIdentifierType(Criteria criteria) {
+      return persister.getIdentifierType();
+    }
+
+    @Override
+    public TypedValue getTypedIdentifierValue(Criteria criteria, Object value) {
+      return new TypedValue(persister.getIdentifierType(), value);
+    }
+
+    @Override
+    public String generateSQLAlias() {
+      throw new NoShapeException(); // subqueries have no shape
+    }
+  }
+}
@@ -0,0 +1,854 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.transform.ResultTransformer;
+import org.reactivestreams.Publisher;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * {@link HibernatePersistenceProvider} decorator forwarding every operation to another provider.
+ *
+ * <p>Every operation but {@link #getSession()} goes through {@link #execute(Operation, Function)}
+ * with the description of the call, which subclasses override to instrument, guard or route the
+ * operations without redeclaring each of them.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class ForwardingHibernatePersistenceProvider implements HibernatePersistenceProvider {
+
+  private final HibernatePersistenceProvider delegate;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate the provider the operations are forwarded to
+   */
+  public ForwardingHibernatePersistenceProvider(HibernatePersistenceProvider delegate) {
+    this.delegate = Objects.requireNonNull(delegate, "delegate");
+  }
+
+  /**
+   * Get the provider the operations are forwarded to.
+   *
+   * @return the delegate provider
+   */
+  public HibernatePersistenceProvider getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Execute an operation against the delegate provider.
+   *
+   * @param operation the description of the operation
+   * @param call the call of the operation on a provider
+   * @param <R> the type of the operation result
+   * @return the operation result
+   */
+  protected <R> R execute(Operation operation,
+      Function<? super HibernatePersistenceProvider, R> call) {
+    return call.apply(delegate);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Session getSession() {
+    return delegate.getSession();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Set<Class<?>> getCacheableEntityClasses() {
+    return delegate.getCacheableEntityClasses();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setCacheableEntityClasses(Collection<? extends Class<?>> cacheableEntityClasses) {
+    delegate.setCacheableEntityClasses(cacheableEntityClasses);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(
+      Class<T> entityClazz, ID id) {
+    return execute(read("findById", entityClazz, id), p -> p.findById(entityClazz, id));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    return execute(read("findByIds", entityClazz, ids), p -> p.findByIds(entityClazz, ids));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findMapByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    return execute(read("findMapByIds", entityClazz, ids), p -> p.findMapByIds(entityClazz, ids));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz) {
+    return execute(read("findAll", entityClazz), p -> p.findAll(entityClazz));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    return execute(read("findAll", entityClazz, firstResult, maxResults),
+        p -> p.findAll(entityClazz, firstResult, maxResults));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    return execute(read("findByNamedQuery", entityClazz, queryName, params),
+        p -> p.findByNamedQuery(entityClazz, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, boolean cacheable, String queryName, Object... params) {
+    return execute(read("findByNamedQuery", entityClazz, cacheable, queryName, params),
+        p -> p.findByNamedQuery(entityClazz, cacheable, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T>
+      findByNamedQueryAndNamedParams(Class<T> entityClazz, String queryName,
+      Map<String, ?> params) {
+    return execute(read("findByNamedQueryAndNamedParams", entityClazz, queryName, params),
+        p -> p.findByNamedQueryAndNamedParams(entityClazz, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T>
+      findByNamedQueryAndNamedParams(Class<T> entityClazz, boolean cacheable, String queryName,
+      Map<String, ?> params) {
+    return execute(read("findByNamedQueryAndNamedParams", entityClazz, cacheable, queryName,
+        params),
+        p -> p.findByNamedQueryAndNamedParams(entityClazz, cacheable, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    return execute(read("findByQuery", entityClazz, query, params),
+        p -> p.findByQuery(entityClazz, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, boolean cacheable, String query, Object... params) {
+    return execute(read("findByQuery", entityClazz, cacheable, query, params),
+        p -> p.findByQuery(entityClazz, cacheable, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    return execute(read("findByQueryAndNamedParams", entityClazz, query, params),
+        p -> p.findByQueryAndNamedParams(entityClazz, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, boolean cacheable, String query, Map<String, ?> params) {
+    return execute(read("findByQueryAndNamedParams", entityClazz, cacheable, query, params),
+        p -> p.findByQueryAndNamedParams(entityClazz, cacheable, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int updateFields(
+      Class<T> entityClazz, ID id, Map<String, ?> values) {
+    return execute(write("updateFields", entityClazz, id, values),
+        p -> p.updateFields(entityClazz, id, values));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int updateFields(
+      Class<T> entityClazz, ID id, Object version, Map<String, ?> values) {
+    return execute(write("updateFields", entityClazz, id, version, values),
+        p -> p.updateFields(entityClazz, id, version, values));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int updateByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions, Map<String, ?> values) {
+    return execute(write("updateByCriteria", entityClazz, criterions, values),
+        p -> p.updateByCriteria(entityClazz, criterions, values));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int deleteByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    return execute(write("deleteByIds", entityClazz, ids), p -> p.deleteByIds(entityClazz, ids));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int deleteAllInBatch(
+      Class<T> entityClazz, Collection<T> entities) {
+    return execute(write("deleteAllInBatch", entityClazz, entities),
+        p -> p.deleteAllInBatch(entityClazz, entities));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int deleteByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    return execute(write("deleteByCriteria", entityClazz, criterions),
+        p -> p.deleteByCriteria(entityClazz, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> R withStatelessSession(Function<StatelessSession, R> work) {
+    return execute(write("withStatelessSession", work), p -> p.withStatelessSession(work));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> R readOnly(Supplier<R> work) {
+    // the work may write through the session despite its read-only mode, so it is not a read
+    return execute(write("readOnly", work), p -> p.readOnly(work));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void bulkInsert(
+      Collection<T> entities) {
+    execute(write("bulkInsert", entities), p -> {
+      p.bulkInsert(entities);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void bulkUpdate(
+      Collection<T> entities) {
+    execute(write("bulkUpdate", entities), p -> {
+      p.bulkUpdate(entities);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void bulkDelete(
+      Collection<T> entities) {
+    execute(write("bulkDelete", entities), p -> {
+      p.bulkDelete(entities);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long bulkScroll(
+      Class<T> entityClazz, List<Criterion> criterions, Consumer<? super T> consumer) {
+    return execute(write("bulkScroll", entityClazz, criterions, consumer),
+        p -> p.bulkScroll(entityClazz, criterions, consumer));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareQuery(
+      Class<T> entityClazz, boolean cacheable, String query) {
+    return execute(read("prepareQuery", entityClazz, cacheable, query),
+        p -> p.prepareQuery(entityClazz, cacheable, query));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamedQuery(
+      Class<T> entityClazz, boolean cacheable, String queryName) {
+    return execute(read("prepareNamedQuery", entityClazz, cacheable, queryName),
+        p -> p.prepareNamedQuery(entityClazz, cacheable, queryName));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByPreparedQuery(
+      PreparedQuery<T> preparedQuery, Object... params) {
+    return execute(read("findByPreparedQuery", preparedQuery, params),
+        p -> p.findByPreparedQuery(preparedQuery, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      Class<T> entityClazz) {
+    return execute(read("streamAll", entityClazz), p -> p.streamAll(entityClazz));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    return execute(read("streamByCriteria", entityClazz, criterions),
+        p -> p.streamByCriteria(entityClazz, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    return execute(read("streamByNamedQuery", entityClazz, queryName, params),
+        p -> p.streamByNamedQuery(entityClazz, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    return execute(read("streamByQuery", entityClazz, query, params),
+        p -> p.streamByQuery(entityClazz, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    return execute(read("streamByQueryAndNamedParams", entityClazz, query, params),
+        p -> p.streamByQueryAndNamedParams(entityClazz, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Publisher<T> publishAll(
+      Class<T> entityClazz) {
+    return execute(read("publishAll", entityClazz), p -> p.publishAll(entityClazz));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Publisher<T>
+      publishByQueryAndNamedParams(Class<T> entityClazz, String query, Map<String, ?> params) {
+    return execute(read("publishByQueryAndNamedParams", entityClazz, query, params),
+        p -> p.publishByQueryAndNamedParams(entityClazz, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Publisher<T> publishByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    return execute(read("publishByCriteria", entityClazz, criterions),
+        p -> p.publishByCriteria(entityClazz, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(Class<T> entityClazz) {
+    return execute(read("countAll", entityClazz), p -> p.countAll(entityClazz));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(
+      Class<T> resultClazz, String queryName, Map<String, ?> params) {
+    return execute(read("countByNamedQueryAndNamedParams", resultClazz, queryName, params),
+        p -> p.countByNamedQueryAndNamedParams(resultClazz, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(
+      Class<T> resultClazz, String query, Map<String, ?> params) {
+    return execute(read("countByQueryAndNamedParams", resultClazz, query, params),
+        p -> p.countByQueryAndNamedParams(resultClazz, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    return execute(write("save", entity), p -> p.save(entity));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    return execute(write("update", entity), p -> p.update(entity));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(
+      Class<T> entityClazz, T entity) {
+    execute(write("delete", entityClazz, entity), p -> {
+      p.delete(entityClazz, entity);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    execute(write("deleteById", entityClazz, id), p -> {
+      p.deleteById(entityClazz, id);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteByEntityOrId(
+      Class<T> entityClazz, T entity, ID id) {
+    execute(write("deleteByEntityOrId", entityClazz, entity, id), p -> {
+      p.deleteByEntityOrId(entityClazz, entity, id);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    return execute(write("saveAll", entities), p -> p.saveAll(entities));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    return execute(write("updateAll", entities), p -> p.updateAll(entities));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(
+      Class<T> entityClazz, Collection<T> entities) {
+    execute(write("deleteAll", entityClazz, entities), p -> {
+      p.deleteAll(entityClazz, entities);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    return execute(read("findByCriteria", entityClazz, criterions),
+        p -> p.findByCriteria(entityClazz, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByCriteria(
+      Class<T> entityClazz, int firstResult, int maxResults, List<Criterion> criterions) {
+    return execute(read("findByCriteria", entityClazz, firstResult, maxResults, criterions),
+        p -> p.findByCriteria(entityClazz, firstResult, maxResults, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByCriteria(
+      Class<T> entityClazz, boolean cacheable, int firstResult, int maxResults,
+      List<Criterion> criterions) {
+    return execute(read("findByCriteria", entityClazz, cacheable, firstResult, maxResults,
+        criterions),
+        p -> p.findByCriteria(entityClazz, cacheable, firstResult, maxResults, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findByKeyset(
+      Class<T> entityClazz, Keyset keyset, int maxResults, List<Criterion> criterions) {
+    return execute(read("findByKeyset", entityClazz, keyset, maxResults, criterions),
+        p -> p.findByKeyset(entityClazz, keyset, maxResults, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findAfterId(
+      Class<T> entityClazz, ID lastId, int maxResults, List<Criterion> criterions) {
+    return execute(read("findAfterId", entityClazz, lastId, maxResults, criterions),
+        p -> p.findAfterId(entityClazz, lastId, maxResults, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findUniqueResultByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    return execute(read("findUniqueResultByCriteria", entityClazz, criterions),
+        p -> p.findUniqueResultByCriteria(entityClazz, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findUniqueResultByCriteria(
+      Class<T> entityClazz, boolean cacheable, List<Criterion> criterions) {
+    return execute(read("findUniqueResultByCriteria", entityClazz, cacheable, criterions),
+        p -> p.findUniqueResultByCriteria(entityClazz, cacheable, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, N extends Number> N countByCriteria(
+      Class<T> entityClazz, Class<N> resultClazz, List<Criterion> criterions) {
+    return execute(read("countByCriteria", entityClazz, resultClazz, criterions),
+        p -> p.countByCriteria(entityClazz, resultClazz, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, N extends Number> N countByCriteria(
+      Class<T> entityClazz, Class<N> resultClazz, ResultTransformer resultTransformer,
+      List<Criterion> criterions) {
+    return execute(read("countByCriteria", entityClazz, resultClazz, resultTransformer, criterions),
+        p -> p.countByCriteria(entityClazz, resultClazz, resultTransformer, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByCriteria(
+      Class<T> entityClazz, Class<D> dtoClazz, List<String> properties,
+      List<Criterion> criterions) {
+    return execute(read("findProjectionByCriteria", entityClazz, dtoClazz, properties, criterions),
+        p -> p.findProjectionByCriteria(entityClazz, dtoClazz, properties, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByCriteria(
+      Class<T> entityClazz, Class<D> dtoClazz, List<String> properties, int firstResult,
+      int maxResults, List<Criterion> criterions) {
+    return execute(
+        read("findProjectionByCriteria", entityClazz, dtoClazz, properties, firstResult,
+            maxResults, criterions),
+        p -> p.findProjectionByCriteria(entityClazz, dtoClazz, properties, firstResult,
+            maxResults, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByQuery(
+      Class<T> entityClazz, Class<D> dtoClazz, String query, Map<String, ?> params) {
+    return execute(read("findProjectionByQuery", entityClazz, dtoClazz, query, params),
+        p -> p.findProjectionByQuery(entityClazz, dtoClazz, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByNamedQuery(
+      Class<T> entityClazz, Class<D> dtoClazz, String queryName, Map<String, ?> params) {
+    return execute(read("findProjectionByNamedQuery", entityClazz, dtoClazz, queryName, params),
+        p -> p.findProjectionByNamedQuery(entityClazz, dtoClazz, queryName, params));
+  }
+
+  /**
+   * Describe an operation which only reads.
+   *
+   * @param name the name of the operation, the name of the provider method
+   * @param arguments the arguments of the call
+   * @return the description of the operation
+   */
+  protected static Operation read(String name, Object... arguments) {
+    return new Operation(name, false, arguments);
+  }
+
+  /**
+   * Describe an operation which may write.
+   *
+   * @param name the name of the operation, the name of the provider method
+   * @param arguments the arguments of the call
+   * @return the description of the operation
+   */
+  protected static Operation write(String name, Object... arguments) {
+    return new Operation(name, true, arguments);
+  }
+
+  /**
+   * Get the number of rows of an operation result: the size of a collection, a map or a page, the
+   * number of rows written by a write returning a count and one for a single entity or value.
+   *
+   * @param operation the operation
+   * @param result the result of the operation
+   * @return the number of rows
+   */
+  protected static long rows(Operation operation, Object result) {
+    if (result == null) {
+      return 0;
+    }
+    if (result instanceof Collection) {
+      return ((Collection<?>) result).size();
+    }
+    if (result instanceof Map) {
+      return ((Map<?, ?>) result).size();
+    }
+    if (result instanceof KeysetPage) {
+      return ((KeysetPage<?>) result).getContent().size();
+    }
+    if (operation.isWrite() && result instanceof Number) {
+      return ((Number) result).longValue();
+    }
+    return 1;
+  }
+
+  /**
+   * Description of a call of a provider operation.
+   */
+  public static final class Operation {
+
+    private final String name;
+    private final boolean write;
+    private final Object[] arguments;
+    private final Class<?> entityClazz;
+
+    private Operation(String name, boolean write, Object[] arguments) {
+      this.name = name;
+      this.write = write;
+      this.arguments = arguments;
+      this.entityClazz = entityClass(arguments);
+    }
+
+    /**
+     * Get the entity class of the call: the first argument which is an entity class, an entity,
+     * a collection of entities or a prepared query.
+     */
+    private static Class<?> entityClass(Object[] arguments) {
+      for (Object argument : arguments) {
+        if (argument instanceof Class && Persistable.class.isAssignableFrom((Class<?>) argument)) {
+          return (Class<?>) argument;
+        }
+        if (argument instanceof Persistable) {
+          return argument.getClass();
+        }
+        if (argument instanceof PreparedQuery) {
+          return ((PreparedQuery<?>) argument).getResultClazz();
+        }
+        if (argument instanceof Collection) {
+          for (Object element : (Collection<?>) argument) {
+            if (element instanceof Persistable) {
+              return element.getClass();
+            }
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Get the name of the operation, the name of the provider method.
+     *
+     * @return the name of the operation
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Check if the operation may write.
+     *
+     * @return true if the operation may write, false if it only reads
+     */
+    public boolean isWrite() {
+      return write;
+    }
+
+    /**
+     * Get the arguments of the call, in the order of the provider method parameters. The array is
+     * not copied and must not be modified.
+     *
+     * @return the arguments of the call
+     */
+    public Object[] getArguments() {
+      return arguments;
+    }
+
+    /**
+     * Get the entity class the operation works on.
+     *
+     * @return the entity class or null if unknown
+     */
+    public Class<?> getEntityClazz() {
+      return entityClazz;
+    }
+
+    @Override
+    public String toString() {
+      return "Operation{name=" + name
+          + ", write=" + write
+          + ", entityClazz=" + (entityClazz == null ? null : entityClazz.getName())
+          + ", arguments=" + Arrays.deepToString(arguments) + "}";
+    }
+  }
+}
@@ -0,0 +1,436 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.jboss.logging.Logger;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * {@link HibernatePersistenceProvider} decorator hedging the reads to cut their tail latency: when
+ * a <code>count*</code> or <code>findProjection*</code> operation of the primary provider it
+ * decorates has not returned within the hedging delay, the same operation is sent to the hedge
+ * provider, over the session factory of a second data source such as a replica, and the first
+ * response wins. The statement of the losing attempt is cancelled with
+ * {@link Session#cancelQuery()}, which cancels the JDBC statement being executed by its session.
+ *
+ * <p>Only the reads of counts and projections are hedged: the entities read by the hedge attempt
+ * would belong to its session, whose transaction is rolled back once the read is done, so they
+ * would come back detached from the session of the caller and fail on their first lazy access. A
+ * projection whose values are entities of the hedge session, such as an association, does not win
+ * either: the primary attempt goes on.
+ *
+ * <p>The delay is the given percentile, the 95th by default, of the latencies of the recent
+ * primary reads, bounded by the minimum and maximum delays; it is the maximum delay until enough
+ * reads were measured. A primary read which lost to its hedge is measured too, until it was
+ * cancelled, so the delay does not only learn from the reads fast enough to win. The hedge budget
+ * caps the extra load: no more than the given ratio of the last 1024 reads, 5% by default, are
+ * hedged.
+ *
+ * <p>The primary attempt runs on the calling thread and the hedge attempt on the executor, which
+ * the scheduler, only timing the delay, submits it to. Only the reads inside an active read-only
+ * transaction of the primary are hedged: its session is the one the read runs in, so its statement
+ * can be cancelled, and the hedge cannot miss writes of the transaction. The hedge attempt runs in
+ * a read-only transaction of its own, begun on the session of the hedge provider unless the
+ * provider already is in a transaction; the hedge provider must therefore give its session outside
+ * of a transaction, such as the current session bound to the executor thread, otherwise the read is
+ * not hedged. The cancelled statement of a losing primary attempt fails in its session: with JPA,
+ * this marks the read-only transaction for rollback.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class HedgingHibernatePersistenceProvider extends ForwardingHibernatePersistenceProvider {
+
+  private static final Logger LOG = Logger.getLogger(HedgingHibernatePersistenceProvider.class);
+
+  private static final int WINDOW = 1024;
+  private static final int MIN_SAMPLES = 100;
+  private static final int BUDGET_BUCKETS = 8;
+
+  private final HibernatePersistenceProvider hedge;
+  private final ScheduledExecutorService scheduler;
+  private final Executor executor;
+  private final AtomicLongArray latencies = new AtomicLongArray(WINDOW);
+  private final AtomicLong samples = new AtomicLong();
+  private final LongAdder reads = new LongAdder();
+  private final AtomicLong hedges = new AtomicLong();
+  private final LongAdder wins = new LongAdder();
+  private final long[] bucketReads = new long[BUDGET_BUCKETS];
+  private final long[] bucketHedges = new long[BUDGET_BUCKETS];
+  private int bucket;
+  private long windowReads;
+  private long windowHedges;
+  private volatile double percentile = 0.95;
+  private volatile double budget = 0.05;
+  private volatile long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+  private volatile long maxDelayNanos = TimeUnit.SECONDS.toNanos(1);
+  private volatile long delayNanos = maxDelayNanos;
+
+  /**
+   * Constructor.
+   *
+   * @param primary the provider of the primary data source, which every operation goes to
+   * @param hedge the provider of the second data source, which the hedged reads go to
+   * @param scheduler the scheduler timing the hedging delay
+   * @param executor the executor of the hedge attempts, whose threads block on the hedge reads
+   */
+  public HedgingHibernatePersistenceProvider(HibernatePersistenceProvider primary,
+      HibernatePersistenceProvider hedge, ScheduledExecutorService scheduler, Executor executor) {
+    super(primary);
+    this.hedge = hedge;
+    this.scheduler = scheduler;
+    this.executor = executor;
+  }
+
+  /**
+   * Set the percentile of the recent primary read latencies taken as the hedging delay, 0.95 by
+   * default.
+   *
+   * @param percentile the percentile, between 0 and 1
+   */
+  public void setPercentile(double percentile) {
+    if (!(percentile > 0 && percentile <= 1)) {
+      throw new IllegalArgumentException("Percentile must be greater than 0 and at most 1.");
+    }
+    this.percentile = percentile;
+  }
+
+  /**
+   * Set the hedge budget, the maximum ratio of the last 1024 reads which are hedged, 0.05 by
+   * default.
+   *
+   * @param budget the hedge budget, between 0 and 1
+   */
+  public void setBudget(double budget) {
+    if (!(budget >= 0 && budget <= 1)) {
+      throw new IllegalArgumentException("Budget must be between 0 and 1.");
+    }
+    this.budget = budget;
+  }
+
+  /**
+   * Set the bounds of the hedging delay, one millisecond and one second by default.
+   *
+   * @param minDelay the minimum delay
+   * @param maxDelay the maximum delay, also the delay until enough reads were measured
+   * @param unit the unit of the delays
+   */
+  public void setDelayBounds(long minDelay, long maxDelay, TimeUnit unit) {
+    if (minDelay < 0 || maxDelay < minDelay) {
+      throw new IllegalArgumentException(
+          "Delays must be non-negative and the minimum at most the maximum.");
+    }
+    this.minDelayNanos = unit.toNanos(minDelay);
+    this.maxDelayNanos = unit.toNanos(maxDelay);
+    this.delayNanos = samples.get() < MIN_SAMPLES ? maxDelayNanos
+        : Math.max(minDelayNanos, Math.min(delayNanos, maxDelayNanos));
+  }
+
+  /**
+   * Get the current hedging delay.
+   *
+   * @param unit the unit of the delay
+   * @return the hedging delay
+   */
+  public long getDelay(TimeUnit unit) {
+    return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Set the cacheable entity classes of the primary and of the hedge provider.
+   *
+   * @param cacheableEntityClasses the cacheable entity classes
+   */
+  @Override
+  public void setCacheableEntityClasses(Collection<? extends Class<?>> cacheableEntityClasses) {
+    super.setCacheableEntityClasses(cacheableEntityClasses);
+    hedge.setCacheableEntityClasses(cacheableEntityClasses);
+  }
+
+  /**
+   * Get the number of hedgeable reads.
+   *
+   * @return the number of reads
+   */
+  public long getReads() {
+    return reads.sum();
+  }
+
+  /**
+   * Get the number of reads sent to the hedge provider.
+   *
+   * @return the number of hedges
+   */
+  public long getHedges() {
+    return hedges.get();
+  }
+
+  /**
+   * Get the number of reads served by the hedge provider, whose response came first.
+   *
+   * @return the number of hedge wins
+   */
+  public long getHedgeWins() {
+    return wins.sum();
+  }
+
+  @Override
+  protected <R> R execute(Operation operation,
+      Function<? super HibernatePersistenceProvider, R> call) {
+    String name = operation.getName();
+    if (operation.isWrite() || !(name.startsWith("count") || name.startsWith("findProjection"))) {
+      return super.execute(operation, call);
+    }
+    Session session = hedgeableSession();
+    if (session == null) {
+      return super.execute(operation, call);
+    }
+    reads.increment();
+    read();
+    Hedge<R> attempt = new Hedge<>(call, session);
+    ScheduledFuture<?> timer = scheduler.schedule(attempt::submit, delayNanos,
+        TimeUnit.NANOSECONDS);
+    long start = System.nanoTime();
+    R result;
+    try {
+      result = super.execute(operation, call);
+    } catch (RuntimeException e) {
+      if (timer.cancel(false)) {
+        throw e;
+      }
+      latency(System.nanoTime() - start); // at least as slow, if cancelled by the winning hedge
+      try {
+        return attempt.result.join(); // cancelled by the winning hedge, or else rescued by it
+      } catch (CancellationException | CompletionException hedgeFailure) {
+        throw e;
+      }
+    }
+    latency(System.nanoTime() - start);
+    if (attempt.primaryReturned()) {
+      timer.cancel(false);
+      return result;
+    }
+    return attempt.result.join(); // the hedge won while the primary result was being read
+  }
+
+  /**
+   * Get the session of the primary on the current thread, if it is in an active read-only
+   * transaction, whose reads can be hedged.
+   */
+  private Session hedgeableSession() {
+    try {
+      Session session = getDelegate().getSession();
+      Transaction transaction = session.getTransaction();
+      if (transaction == null || transaction.getStatus() != TransactionStatus.ACTIVE) {
+        return null; // the session got outside of a transaction may not be the one of the read
+      }
+      return session.isDefaultReadOnly() ? session : null; // the hedge would miss the writes
+    } catch (HibernateException | IllegalStateException e) {
+      return null; // no session, or a closed one, outside of a transaction
+    }
+  }
+
+  /**
+   * Count a hedgeable read in the sliding window of the budget, made of buckets of reads, the
+   * oldest of which is dropped when a new one starts.
+   */
+  private synchronized void read() {
+    if (bucketReads[bucket] == WINDOW / BUDGET_BUCKETS) {
+      bucket = (bucket + 1) % BUDGET_BUCKETS;
+      windowReads -= bucketReads[bucket];
+      windowHedges -= bucketHedges[bucket];
+      bucketReads[bucket] = 0;
+      bucketHedges[bucket] = 0;
+    }
+    bucketReads[bucket]++;
+    windowReads++;
+  }
+
+  /**
+   * Take a hedge from the budget, if it allows one more within the sliding window.
+   */
+  private synchronized boolean takeHedge() {
+    if (windowHedges + 1 > budget * windowReads) {
+      return false;
+    }
+    bucketHedges[bucket]++;
+    windowHedges++;
+    hedges.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Record the latency of a primary read and recompute the hedging delay once enough reads were
+   * measured, then once every eighth of the window.
+   */
+  private void latency(long nanos) {
+    long sample = samples.getAndIncrement();
+    latencies.set((int) (sample % WINDOW), nanos);
+    if (sample + 1 == MIN_SAMPLES
+        || sample + 1 > MIN_SAMPLES && sample % (WINDOW / BUDGET_BUCKETS) == 0) {
+      int size = (int) Math.min(sample + 1, WINDOW);
+      long[] sorted = new long[size];
+      for (int i = 0; i < size; i++) {
+        sorted[i] = latencies.get(i);
+      }
+      Arrays.sort(sorted);
+      long delay = sorted[(int) Math.min(size - 1, Math.ceil(percentile * size) - 1)];
+      delayNanos = Math.max(minDelayNanos, Math.min(delay, maxDelayNanos));
+    }
+  }
+
+  private static void cancel(Session session) {
+    try {
+      session.cancelQuery();
+    } catch (HibernateException e) {
+      LOG.debugf(e, "Could not cancel the statement of the losing attempt");
+    }
+  }
+
+  /**
+   * Check if a value read by the hedge attempt holds entities of its session, alone or as the
+   * elements of a collection, which would be detached once its transaction ends.
+   */
+  private static boolean holdsEntities(Session session, Object value) {
+    Iterable<?> values = value instanceof Collection ? (Collection<?>) value
+        : value instanceof Object[] ? Arrays.asList((Object[]) value)
+        : Collections.singleton(value);
+    for (Object element : values) {
+      if (element instanceof HibernateProxy || element != null && session.contains(element)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Hedge attempt of a read, submitted to the executor by the scheduler once the delay has
+   * elapsed, racing the primary attempt still running on the calling thread.
+   */
+  private final class Hedge<R> implements Runnable {
+
+    private final Function<? super HibernatePersistenceProvider, R> call;
+    private final Session primarySession;
+    private final CompletableFuture<R> result = new CompletableFuture<>();
+    private final AtomicBoolean decided = new AtomicBoolean();
+    private volatile Session session;
+
+    private Hedge(Function<? super HibernatePersistenceProvider, R> call, Session primarySession) {
+      this.call = call;
+      this.primarySession = primarySession;
+    }
+
+    private void submit() {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        result.cancel(false);
+      }
+    }
+
+    @Override
+    public void run() {
+      if (decided.get() || !takeHedge()) {
+        result.cancel(false);
+        return;
+      }
+      Transaction transaction = null;
+      try {
+        Session hedgeSession = hedge.getSession();
+        if (hedgeSession.getTransaction().getStatus() != TransactionStatus.ACTIVE) {
+          transaction = hedgeSession.beginTransaction();
+          hedgeSession.setDefaultReadOnly(true);
+        }
+        session = hedgeSession; // the session the read runs in, so it can be cancelled
+        R value = call.apply(hedge);
+        if (holdsEntities(hedgeSession, value)) {
+          result.cancel(false); // detached once the transaction ends, so the primary goes on
+        } else if (decided.compareAndSet(false, true)) {
+          wins.increment();
+          cancel(primarySession); // before the caller, released by the result, reuses the session
+          result.complete(value);
+        } else {
+          result.cancel(false);
+        }
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      } finally {
+        finished();
+        if (transaction != null) {
+          rollback(transaction); // read-only, there is nothing to commit
+        }
+      }
+    }
+
+    private void rollback(Transaction transaction) {
+      try {
+        TransactionStatus status = transaction.getStatus();
+        if (status == TransactionStatus.ACTIVE || status == TransactionStatus.MARKED_ROLLBACK) {
+          transaction.rollback();
+        }
+      } catch (HibernateException e) {
+        LOG.debugf(e, "Could not end the transaction of the hedge attempt");
+      }
+    }
+
+    /**
+     * Forget the session of the finished hedge attempt, so a late cancellation by the primary
+     * attempt cannot reach the next statements of the session.
+     */
+    private synchronized void finished() {
+      session = null;
+    }
+
+    /**
+     * Decide for the primary attempt, which returned, cancelling the hedge attempt if it runs.
+     *
+     * @return true if the primary attempt won
+     */
+    private synchronized boolean primaryReturned() {
+      if (!decided.compareAndSet(false, true)) {
+        return false;
+      }
+      if (session != null) {
+        cancel(session);
+      }
+      return true;
+    }
+  }
+}
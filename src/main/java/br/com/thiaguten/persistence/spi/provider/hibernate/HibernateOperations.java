@@ -0,0 +1,629 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.core.Versionable;
+
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.StaleStateException;
+import org.hibernate.StatelessSession;
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+import org.reactivestreams.Publisher;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Default implementations of the {@link HibernatePersistenceProvider} operations, built on the
+ * session of the provider and on its finders, and the statement helpers they share with
+ * {@link AbstractHibernatePersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@SuppressWarnings("unchecked")
+final class HibernateOperations {
+
+  private HibernateOperations() {
+  }
+
+  /**
+   * Get the Hibernate mapping metadata of the entity class.
+   *
+   * @param session the session
+   * @param entityClazz the entity class
+   * @return the class metadata
+   */
+  static ClassMetadata classMetadata(Session session, Class<?> entityClazz) {
+    ClassMetadata metadata = session.getSessionFactory().getClassMetadata(entityClazz);
+    if (metadata == null) {
+      throw new HibernateException("Unknown entity: " + entityClazz.getName());
+    }
+    return metadata;
+  }
+
+  /**
+   * Get the default maximum number of parameters bound to a single <code>IN</code> list, capped by
+   * the limit of the dialect if it has one.
+   *
+   * @param session the session
+   * @return the in list size
+   */
+  static int inListSize(Session session) {
+    return inListSize(session, AbstractHibernatePersistenceProvider.DEFAULT_IN_LIST_SIZE);
+  }
+
+  /**
+   * Get the maximum number of parameters bound to a single <code>IN</code> list, capped by the
+   * limit of the dialect if it has one.
+   *
+   * @param session the session
+   * @param inListSize the maximum wanted by the provider
+   * @return the in list size
+   */
+  static int inListSize(Session session, int inListSize) {
+    int limit = ((SessionFactoryImplementor) session.getSessionFactory()).getDialect()
+        .getInExpressionCountLimit();
+    return limit > 0 ? Math.min(inListSize, limit) : inListSize;
+  }
+
+  static <ID extends Serializable, T extends Persistable<ID>> List<T> findByIds(
+      HibernatePersistenceProvider provider, Class<T> entityClazz, Collection<ID> ids) {
+    if (ids == null || ids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<T> results = new ArrayList<>(ids.size());
+    for (ID id : ids) {
+      T entity = provider.findById(entityClazz, id);
+      if (entity != null) {
+        results.add(entity);
+      }
+    }
+    return results;
+  }
+
+  static <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> byId(List<T> entities) {
+    Map<ID, T> results = new LinkedHashMap<>();
+    for (T entity : entities) {
+      results.put(entity.getId(), entity);
+    }
+    return results;
+  }
+
+  static <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      HibernatePersistenceProvider provider, Collection<T> entities) {
+    if (entities == null || entities.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<T> results = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      results.add(provider.save(entity));
+    }
+    return results;
+  }
+
+  static <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      HibernatePersistenceProvider provider, Collection<T> entities) {
+    if (entities == null || entities.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<T> results = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      results.add(provider.update(entity));
+    }
+    return results;
+  }
+
+  static <ID extends Serializable, T extends Persistable<ID>> void deleteAll(
+      HibernatePersistenceProvider provider, Class<T> entityClazz, Collection<T> entities) {
+    if (entities != null) {
+      for (T entity : entities) {
+        provider.delete(entityClazz, entity);
+      }
+    }
+  }
+
+  /**
+   * Apply the work to each entity in a stateless session, which bypasses the persistence context
+   * and the second-level cache.
+   */
+  static <ID extends Serializable, T extends Persistable<ID>> void bulk(
+      HibernatePersistenceProvider provider, Collection<T> entities,
+      BiConsumer<StatelessSession, T> work) {
+    if (entities == null || entities.isEmpty()) {
+      return;
+    }
+    provider.withStatelessSession(statelessSession -> {
+      entities.forEach(entity -> work.accept(statelessSession, entity));
+      return null;
+    });
+  }
+
+  static <ID extends Serializable, T extends Persistable<ID>> int updateFields(Session session,
+      Class<T> entityClazz, ID id, Object version, Map<String, ?> values) {
+    if (id == null) {
+      throw new HibernateException("Could not update. ID is null.");
+    }
+    if (values == null || values.isEmpty()) {
+      return 0;
+    }
+    ClassMetadata metadata = classMetadata(session, entityClazz);
+    if (version != null && !metadata.isVersioned()) {
+      throw new IllegalArgumentException(
+          "Could not update. Entity " + metadata.getEntityName() + " is not versioned.");
+    }
+
+    StringBuilder query = updateQuery(metadata, values)
+        .append(" where e.").append(metadata.getIdentifierPropertyName()).append(" = :id");
+    if (version != null) {
+      query.append(" and e.").append(metadata.getPropertyNames()[metadata.getVersionProperty()])
+          .append(" = :version");
+    }
+
+    Query hibernateQuery = session.createQuery(query.toString()).setParameter("id", id);
+    if (version != null) {
+      hibernateQuery.setParameter("version", version);
+    }
+    int count = setParameters(hibernateQuery, metadata, values).executeUpdate();
+    evict(session, entityClazz, Collections.singleton(id));
+
+    if (count == 0 && version != null) {
+      throw new StaleStateException("Could not update. Entity " + metadata.getEntityName() + "#"
+          + id + " was updated or deleted by another transaction.");
+    }
+    return count;
+  }
+
+  /**
+   * Delete the entities of the given identifiers, in chunks of the in list size.
+   */
+  static <ID extends Serializable> int deleteByIds(Session session, Class<?> entityClazz,
+      Collection<ID> ids, int inListSize) {
+    if (ids == null || ids.isEmpty()) {
+      return 0;
+    }
+    ClassMetadata metadata = classMetadata(session, entityClazz);
+    String query = "delete from " + metadata.getEntityName() + " e where e."
+        + metadata.getIdentifierPropertyName() + " in (:ids)";
+
+    int count = 0;
+    for (List<ID> chunk : partition(ids, inListSize)) {
+      count += session.createQuery(query).setParameterList("ids", chunk).executeUpdate();
+    }
+    evict(session, entityClazz, ids);
+    return count;
+  }
+
+  static <ID extends Serializable, T extends Persistable<ID>> int deleteAllInBatch(
+      Session session, Class<T> entityClazz, Collection<T> entities, int inListSize) {
+    if (entities == null || entities.isEmpty()) {
+      return 0;
+    }
+    ClassMetadata metadata = classMetadata(session, entityClazz);
+    Map<Object, List<ID>> idsByVersion = new LinkedHashMap<>();
+    Set<ID> distinctIds = new HashSet<>();
+    for (T entity : entities) {
+      if (entity == null || entity.getId() == null) {
+        throw new HibernateException("Could not delete. ID is null.");
+      }
+      if (!distinctIds.add(entity.getId())) {
+        continue; // a row is deleted once however many times its entity is given
+      }
+      Object version = null;
+      if (metadata.isVersioned() && entity instanceof Versionable) {
+        version = ((Versionable) entity).getVersion();
+      }
+      idsByVersion.computeIfAbsent(version, k -> new ArrayList<>()).add(entity.getId());
+    }
+
+    String query = "delete from " + metadata.getEntityName() + " e where e."
+        + metadata.getIdentifierPropertyName() + " in (:ids)";
+    String versionedQuery = query;
+    if (metadata.isVersioned()) {
+      versionedQuery += " and e." + metadata.getPropertyNames()[metadata.getVersionProperty()]
+          + " = :version";
+    }
+
+    int count = 0;
+    List<ID> ids = new ArrayList<>(distinctIds.size());
+    for (Map.Entry<Object, List<ID>> entry : idsByVersion.entrySet()) {
+      for (List<ID> chunk : partition(entry.getValue(), inListSize)) {
+        Query hibernateQuery;
+        if (entry.getKey() == null) {
+          hibernateQuery = session.createQuery(query);
+        } else {
+          hibernateQuery = session.createQuery(versionedQuery)
+              .setParameter("version", entry.getKey());
+        }
+        count += hibernateQuery.setParameterList("ids", chunk).executeUpdate();
+      }
+      ids.addAll(entry.getValue());
+    }
+    evict(session, entityClazz, ids);
+
+    if (metadata.isVersioned() && count != distinctIds.size()) {
+      throw new StaleStateException("Could not delete. " + (distinctIds.size() - count) + " of "
+          + distinctIds.size() + " entities were updated or deleted by another transaction.");
+    }
+    return count;
+  }
+
+  /**
+   * Update the entities matching the criterions with a single HQL <code>UPDATE</code> statement.
+   */
+  static int updateByCriteria(Session session, Class<?> entityClazz, List<Criterion> criterions,
+      Map<String, ?> values) {
+    if (values == null || values.isEmpty()) {
+      return 0;
+    }
+    ClassMetadata metadata = classMetadata(session, entityClazz);
+    CriteriaShape shape = statementShape(metadata, criterions);
+    String query = updateQuery(metadata, values).append(shape.getNamedRestriction()).toString();
+    Query hibernateQuery = shape.bindNamed(session.createQuery(query));
+    int count = setParameters(hibernateQuery, metadata, values).executeUpdate();
+    evict(session, entityClazz, null);
+    return count;
+  }
+
+  /**
+   * Delete the entities matching the criterions with a single HQL <code>DELETE</code> statement,
+   * which also deletes the rows of the collection tables they own.
+   */
+  static int deleteByCriteria(Session session, Class<?> entityClazz,
+      List<Criterion> criterions) {
+    ClassMetadata metadata = classMetadata(session, entityClazz);
+    CriteriaShape shape = statementShape(metadata, criterions);
+    String query = "delete from " + metadata.getEntityName() + " e" + shape.getNamedRestriction();
+    int count = shape.bindNamed(session.createQuery(query)).executeUpdate();
+    evict(session, entityClazz, null);
+    return count;
+  }
+
+  /**
+   * Get the shape of the criterions restricting a set-based statement, which must have one.
+   */
+  static CriteriaShape statementShape(ClassMetadata metadata, List<Criterion> criterions) {
+    CriteriaShape shape = CriteriaShape.of((EntityPersister) metadata, criterions);
+    if (shape == null) {
+      throw new IllegalArgumentException("Criterions of a set-based statement on "
+          + metadata.getEntityName() + " must be comparisons, like, in, between or null checks"
+          + " on single column properties, or conjunctions and disjunctions of them.");
+    }
+    return shape;
+  }
+
+  static Criteria createCriteria(SharedSessionContract session, Class<?> entityClazz,
+      List<Criterion> criterions) {
+    Criteria criteria = session.createCriteria(entityClazz);
+    if (criterions != null) {
+      for (Criterion c : criterions) {
+        criteria.add(c);
+      }
+    }
+    return criteria;
+  }
+
+  static Criteria criteriaRange(Criteria criteria, int firstResult, int maxResults) {
+    if (criteria != null) {
+      if (maxResults >= 0) {
+        criteria.setMaxResults(maxResults);
+      }
+      if (firstResult >= 0) {
+        criteria.setFirstResult(firstResult);
+      }
+    }
+    return criteria;
+  }
+
+  /**
+   * Bind positional parameters, which start from 0 in HQL.
+   */
+  static Query setPositionalParameters(Query query, Object... params) {
+    if (params != null) {
+      for (int i = 0; i < params.length; i++) {
+        query.setParameter(i, params[i]);
+      }
+    }
+    return query;
+  }
+
+  /**
+   * Bind named parameters.
+   */
+  static Query setNamedParameters(Query query, Map<String, ?> params) {
+    if (params != null) {
+      params.forEach(query::setParameter);
+    }
+    return query;
+  }
+
+  /**
+   * Pass the rows of a forward-only cursor to the consumer, then close it.
+   *
+   * @return the number of rows
+   */
+  static <T> long scroll(ScrollableResults results, Consumer<? super T> consumer) {
+    long count = 0;
+    try {
+      while (results.next()) {
+        consumer.accept((T) results.get(0));
+        count++;
+      }
+    } finally {
+      results.close();
+    }
+    return count;
+  }
+
+  static <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findByKeyset(
+      Session session, Class<T> entityClazz, Keyset keyset, int maxResults,
+      List<Criterion> criterions) {
+    if (maxResults <= 0) {
+      throw new IllegalArgumentException("Max results must be greater than zero.");
+    }
+    Criteria criteria = createCriteria(session, entityClazz, criterions);
+    keysetCriteria(criteria, keyset);
+    List<T> results = criteria.setMaxResults(maxResults + 1).list();
+    return keysetPage(classMetadata(session, entityClazz), keyset, maxResults, results);
+  }
+
+  /**
+   * Restrict the criteria to the rows after the keyset and order it by the keyset properties.
+   */
+  static Criteria keysetCriteria(Criteria criteria, Keyset keyset) {
+    if (!keyset.isFirst()) {
+      criteria.add(keysetRestriction(keyset));
+    }
+    for (String property : keyset.getProperties()) {
+      criteria.addOrder(Order.asc(property));
+    }
+    return criteria;
+  }
+
+  /**
+   * Row value comparison <code>(p1, p2) &gt; (v1, v2)</code> expanded to
+   * <code>p1 &gt; v1 or (p1 = v1 and p2 &gt; v2)</code>.
+   */
+  private static Criterion keysetRestriction(Keyset keyset) {
+    String[] properties = keyset.getProperties();
+    Object[] values = keyset.getValues();
+    Disjunction disjunction = Restrictions.disjunction();
+    for (int i = 0; i < properties.length; i++) {
+      Conjunction conjunction = Restrictions.conjunction();
+      for (int j = 0; j < i; j++) {
+        conjunction.add(Restrictions.eq(properties[j], values[j]));
+      }
+      conjunction.add(Restrictions.gt(properties[i], values[i]));
+      disjunction.add(conjunction);
+    }
+    return disjunction;
+  }
+
+  /**
+   * Build the page of the rows read, one more than the max results when there is a next page.
+   */
+  static <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> keysetPage(
+      ClassMetadata metadata, Keyset keyset, int maxResults, List<T> results) {
+    if (results.size() <= maxResults) {
+      return new KeysetPage<>(results, null);
+    }
+
+    List<T> content = new ArrayList<>(results.subList(0, maxResults));
+    T last = content.get(maxResults - 1);
+
+    String[] properties = keyset.getProperties();
+    Object[] values = new Object[properties.length];
+    for (int i = 0; i < properties.length; i++) {
+      if (properties[i].equals(metadata.getIdentifierPropertyName())) {
+        values[i] = last.getId();
+      } else {
+        values[i] = metadata.getPropertyValue(last, properties[i]);
+      }
+    }
+    return new KeysetPage<>(content, keyset.after(values));
+  }
+
+  /**
+   * Get the keyset on the identifier of the entity, after the given identifier if any.
+   */
+  static Keyset idKeyset(Session session, Class<?> entityClazz, Serializable lastId) {
+    Keyset keyset = Keyset.of(classMetadata(session, entityClazz).getIdentifierPropertyName());
+    return lastId == null ? keyset : keyset.after(lastId);
+  }
+
+  /**
+   * Scroll the rows of the criteria through a forward-only cursor using the default fetch size.
+   */
+  static ScrollableResults scroll(Criteria criteria) {
+    return criteria.setFetchSize(AbstractHibernatePersistenceProvider.DEFAULT_FETCH_SIZE)
+        .scroll(ScrollMode.FORWARD_ONLY);
+  }
+
+  /**
+   * Scroll the rows of the query through a forward-only cursor using the default fetch size.
+   */
+  static ScrollableResults scroll(Query query) {
+    return query.setFetchSize(AbstractHibernatePersistenceProvider.DEFAULT_FETCH_SIZE)
+        .scroll(ScrollMode.FORWARD_ONLY);
+  }
+
+  /**
+   * Publish the rows scrolled by the query in a stateless session of its own, using the default
+   * fetch size.
+   */
+  static <T> Publisher<T> publisher(Session session,
+      BiFunction<StatelessSession, Integer, ScrollableResults> query) {
+    return new ScrollableResultsPublisher<>(session.getSessionFactory(), query,
+        AbstractHibernatePersistenceProvider.DEFAULT_FETCH_SIZE);
+  }
+
+  static ProjectionList projection(List<String> properties) {
+    if (properties == null || properties.isEmpty()) {
+      throw new IllegalArgumentException("Properties must not be empty.");
+    }
+    ProjectionList projection = Projections.projectionList();
+    for (String property : properties) {
+      projection.add(Projections.property(property));
+    }
+    return projection;
+  }
+
+  /**
+   * Start a set-based <code>UPDATE</code> statement of the given property values or
+   * {@link UpdateExpression expressions}, incrementing the version of versioned entities unless a
+   * value of the version is given. The property names are checked against the entity mapping as
+   * they are part of the statement, and each property must be mapped to a single column as a
+   * single value is bound to it.
+   */
+  static StringBuilder updateQuery(ClassMetadata metadata, Map<String, ?> values) {
+    List<String> propertyNames = Arrays.asList(metadata.getPropertyNames());
+    SessionFactoryImplementor factory = ((EntityPersister) metadata).getFactory();
+    StringBuilder query = new StringBuilder("update ");
+    if (metadata.isVersioned()
+        && !values.containsKey(propertyNames.get(metadata.getVersionProperty()))) {
+      query.append("versioned ");
+    }
+    query.append(metadata.getEntityName()).append(" e set ");
+    int i = 0;
+    for (Map.Entry<String, ?> entry : values.entrySet()) {
+      String property = entry.getKey();
+      Object value = entry.getValue();
+      for (String name : value instanceof UpdateExpression
+          ? Arrays.asList(property, ((UpdateExpression) value).getProperty())
+          : Collections.singletonList(property)) {
+        if (!propertyNames.contains(name)) {
+          throw new IllegalArgumentException(
+              "Unknown property " + name + " of entity " + metadata.getEntityName());
+        }
+        Type type = metadata.getPropertyType(name);
+        if (type.isCollectionType() || type.getColumnSpan(factory) != 1) {
+          throw new IllegalArgumentException("Property " + name + " of entity "
+              + metadata.getEntityName() + " must be mapped to a single column to be updated");
+        }
+      }
+      if (i > 0) {
+        query.append(", ");
+      }
+      query.append("e.").append(property).append(" = ");
+      if (value instanceof UpdateExpression) {
+        UpdateExpression expression = (UpdateExpression) value;
+        query.append("e.").append(expression.getProperty());
+        if (expression.getOperator() != null) {
+          query.append(' ').append(expression.getOperator()).append(" :p").append(i);
+        }
+      } else {
+        query.append(":p").append(i);
+      }
+      i++;
+    }
+    return query;
+  }
+
+  /**
+   * Bind the property values of a statement started by {@link #updateQuery(ClassMetadata, Map)}.
+   * The operand of an expression is bound with the type of its own class, which may differ from
+   * the type of the property, e.g. an integer added to a long version.
+   */
+  static Query setParameters(Query query, ClassMetadata metadata, Map<String, ?> values) {
+    int i = 0;
+    for (Object value : values.values()) {
+      if (!(value instanceof UpdateExpression)) {
+        query.setParameter("p" + i, value);
+      } else if (((UpdateExpression) value).getOperator() != null) {
+        UpdateExpression expression = (UpdateExpression) value;
+        query.setParameter("p" + i, expression.getOperand(), operandType(metadata, expression));
+      }
+      i++;
+    }
+    return query;
+  }
+
+  private static Type operandType(ClassMetadata metadata, UpdateExpression expression) {
+    Type type = ((EntityPersister) metadata).getFactory().getTypeResolver()
+        .heuristicType(expression.getOperand().getClass().getName());
+    if (type == null) {
+      throw new IllegalArgumentException("Unsupported operand of update expression " + expression);
+    }
+    return type;
+  }
+
+  /**
+   * Evict the instances of the entity class from the session, only those of the given identifiers
+   * unless they are null.
+   */
+  static void evict(Session session, Class<?> entityClazz,
+      Collection<? extends Serializable> ids) {
+    Set<Serializable> idSet = ids == null ? null : new HashSet<>(ids);
+    Map<EntityKey, Object> entities = ((SessionImplementor) session).getPersistenceContext()
+        .getEntitiesByKey();
+    for (Map.Entry<EntityKey, Object> entry : new ArrayList<>(entities.entrySet())) {
+      if (entityClazz.isInstance(entry.getValue())
+          && (idSet == null || idSet.contains(entry.getKey().getIdentifier()))) {
+        session.evict(entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Split the collection in chunks of at most the given size.
+   *
+   * @param collection the collection
+   * @param size the chunk size
+   * @param <E> the type of the elements
+   * @return the chunks
+   */
+  static <E> List<List<E>> partition(Collection<E> collection, int size) {
+    List<E> list = new ArrayList<>(collection);
+    List<List<E>> chunks = new ArrayList<>((list.size() + size - 1) / size);
+    for (int i = 0; i < list.size(); i += size) {
+      chunks.add(list.subList(i, Math.min(i + size, list.size())));
+    }
+    return chunks;
+  }
+}
@@ -22,15 +22,34 @@ package br.com.thiaguten.persistence.spi.provider.hibernate;
 import br.com.thiaguten.persistence.core.Persistable;
 import br.com.thiaguten.persistence.spi.PersistenceProvider;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.transform.ResultTransformer;
+import org.reactivestreams.Publisher;
 
 /**
  * Hibernate Persistence Provider Proxy.
  *
+ * <p>Only {@link #getSession()}, the finders and the writes of {@link PersistenceProvider} and the
+ * criteria finders are abstract. The other operations have default implementations built on them
+ * and on the session, so an existing implementation keeps compiling; they do without the JDBC
+ * batching, the result cache and the compiled query handles of
+ * {@link AbstractHibernatePersistenceProvider}, which overrides all of them.
+ *
  * @author Thiago Gutenberg Carvalho da Costa
  */
 public interface HibernatePersistenceProvider extends PersistenceProvider {
@@ -42,6 +61,59 @@ public interface HibernatePersistenceProvider extends PersistenceProvider {
    */
   Session getSession();
 
+  /**
+   * Get the entity classes whose queries are cached by the finders which take no
+   * <code>cacheable</code> flag.
+   *
+   * @return the cacheable entity classes, none unless the provider supports them
+   */
+  default Set<Class<?>> getCacheableEntityClasses() {
+    return Collections.emptySet();
+  }
+
+  /**
+   * Set the entity classes whose queries are cached by the finders which take no
+   * <code>cacheable</code> flag. The entities should also be mapped as cacheable in the second
+   * level cache, otherwise every cached query result is loaded entity by entity.
+   *
+   * @param cacheableEntityClasses the cacheable entity classes
+   * @throws UnsupportedOperationException if the provider does not cache the queries
+   */
+  default void setCacheableEntityClasses(Collection<? extends Class<?>> cacheableEntityClasses) {
+    throw new UnsupportedOperationException(getClass().getName()
+        + " does not cache the queries of the finders");
+  }
+
+  /**
+   * Find by identifiers. The session and the second-level cache are checked first and the missing
+   * entities are loaded with batched <code>IN</code> queries.
+   *
+   * @param entityClazz the entity class
+   * @param ids the entity identifiers
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the entities found, in the same order as the given identifiers
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> List<T> findByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    return HibernateOperations.findByIds(this, entityClazz, ids);
+  }
+
+  /**
+   * Find by identifiers. The session and the second-level cache are checked first and the missing
+   * entities are loaded with batched <code>IN</code> queries.
+   *
+   * @param entityClazz the entity class
+   * @param ids the entity identifiers
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the entities found by identifier, in the same order as the given identifiers
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findMapByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    return HibernateOperations.byId(findByIds(entityClazz, ids));
+  }
+
   /**
    * Find by named query.
    *
@@ -111,6 +183,428 @@ public interface HibernatePersistenceProvider extends PersistenceProvider {
       Map<String, ?> params);
 
 
+  /**
+   * Update some fields of an entity with a set-based <code>UPDATE</code> statement, without loading
+   * it. The version of a versioned entity is incremented.
+   *
+   * @param entityClazz the entity class
+   * @param id the entity identifier
+   * @param values the new values or update expressions by property name
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the number of updated entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> int updateFields(
+      Class<T> entityClazz, ID id, Map<String, ?> values) {
+    return updateFields(entityClazz, id, null, values);
+  }
+
+  /**
+   * Update some fields of a versioned entity with a set-based <code>UPDATE</code> statement,
+   * without loading it. The version is checked and incremented and a
+   * {@link org.hibernate.StaleStateException} is thrown if the entity was changed or deleted
+   * concurrently. An {@link IllegalArgumentException} is thrown if a version is given for an
+   * entity which is not versioned.
+   *
+   * @param entityClazz the entity class
+   * @param id the entity identifier
+   * @param version the expected version, see {@link br.com.thiaguten.persistence.core.Versionable}
+   * @param values the new values or update expressions by property name
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the number of updated entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> int updateFields(
+      Class<T> entityClazz, ID id, Object version, Map<String, ?> values) {
+    return HibernateOperations.updateFields(getSession(), entityClazz, id, version, values);
+  }
+
+  /**
+   * Update by criteria with a single set-based HQL <code>UPDATE</code> statement restricted by the
+   * criterions, without selecting or loading the entities. A value may be an
+   * {@link UpdateExpression} computed from a property of the row, e.g. <code>counter + 1</code>.
+   * The version of versioned entities is incremented unless a value of the version is given. The
+   * updated properties must be mapped to a single column, and the criterions must have a HQL
+   * rendering as for {@link #deleteByCriteria(Class, List)}. Instances of the entity are evicted
+   * from the session.
+   *
+   * @param entityClazz the entity class
+   * @param criterions the criterions
+   * @param values the new values or update expressions by property name
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the number of updated entities
+   * @throws IllegalArgumentException if a property is not mapped to a single column or a
+   *         criterion has no HQL rendering
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> int updateByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions, Map<String, ?> values) {
+    return HibernateOperations.updateByCriteria(getSession(), entityClazz, criterions, values);
+  }
+
+  /**
+   * Delete entities by their identifiers with set-based <code>DELETE</code> statements, without
+   * loading them. Large collections are split in chunks of the in list size. Matching instances
+   * are evicted from the session; Hibernate evicts the second-level cache region of the entity.
+   *
+   * @param entityClazz the entity class
+   * @param ids the entity identifiers
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the number of deleted entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> int deleteByIds(Class<T> entityClazz,
+      Collection<ID> ids) {
+    Session session = getSession();
+    return HibernateOperations.deleteByIds(session, entityClazz, ids,
+        HibernateOperations.inListSize(session));
+  }
+
+  /**
+   * Delete entities with set-based <code>DELETE</code> statements, without loading them. When the
+   * entity is versioned, the version of each given entity is checked and a
+   * {@link org.hibernate.StaleStateException} is thrown if any of them was changed or deleted
+   * concurrently. Entities which are not versioned and no longer exist are skipped.
+   *
+   * @param entityClazz the entity class
+   * @param entities the entities to delete
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the number of deleted entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> int deleteAllInBatch(
+      Class<T> entityClazz, Collection<T> entities) {
+    Session session = getSession();
+    return HibernateOperations.deleteAllInBatch(session, entityClazz, entities,
+        HibernateOperations.inListSize(session));
+  }
+
+  /**
+   * Delete by criteria with a single set-based HQL <code>DELETE</code> statement restricted by the
+   * criterions, without selecting or loading the entities. Hibernate deletes the rows of the
+   * collection tables the entities own too. The criterions must be comparisons, like, in, between
+   * or null checks on single column properties, or conjunctions and disjunctions of them, which
+   * have a HQL rendering. Instances of the entity are evicted from the session.
+   *
+   * @param entityClazz the entity class
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the number of deleted entities
+   * @throws IllegalArgumentException if a criterion has no HQL rendering
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> int deleteByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    return HibernateOperations.deleteByCriteria(getSession(), entityClazz, criterions);
+  }
+
+  /**
+   * Execute the work with a stateless session sharing the connection, and therefore the
+   * transaction, of the current session. A stateless session has no persistence context, no
+   * snapshots and no dirty checking, which suits bulk (ETL) work. Changes pending in the current
+   * session are not flushed.
+   *
+   * @param work the work
+   * @param <R> the type of the work result
+   * @return the work result
+   */
+  default <R> R withStatelessSession(Function<StatelessSession, R> work) {
+    Session session = getSession();
+    return session.doReturningWork(connection -> {
+      StatelessSession statelessSession = session.getSessionFactory()
+          .openStatelessSession(connection);
+      try {
+        return work.apply(statelessSession);
+      } finally {
+        statelessSession.close();
+      }
+    });
+  }
+
+  /**
+   * Execute the work in read-only mode: the entities loaded by the work are read-only, so the
+   * session keeps no snapshot of them and does not dirty check them, and the session is not
+   * flushed before its queries. The previous mode of the session is restored afterwards, the
+   * loaded entities stay read-only. The work must not modify entities.
+   *
+   * @param work the work
+   * @param <R> the type of the work result
+   * @return the work result
+   */
+  default <R> R readOnly(Supplier<R> work) {
+    Session session = getSession();
+    boolean defaultReadOnly = session.isDefaultReadOnly();
+    FlushMode flushMode = session.getFlushMode();
+    session.setDefaultReadOnly(true);
+    session.setFlushMode(FlushMode.MANUAL);
+    try {
+      return work.get();
+    } finally {
+      session.setDefaultReadOnly(defaultReadOnly);
+      session.setFlushMode(flushMode);
+    }
+  }
+
+  /**
+   * Insert a collection of entities through a stateless session.
+   *
+   * @param entities the entities to insert
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> void bulkInsert(
+      Collection<T> entities) {
+    HibernateOperations.bulk(this, entities, StatelessSession::insert);
+  }
+
+  /**
+   * Update a collection of entities through a stateless session.
+   *
+   * @param entities the entities to update
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> void bulkUpdate(
+      Collection<T> entities) {
+    HibernateOperations.bulk(this, entities, StatelessSession::update);
+  }
+
+  /**
+   * Delete a collection of entities through a stateless session.
+   *
+   * @param entities the entities to delete
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> void bulkDelete(
+      Collection<T> entities) {
+    HibernateOperations.bulk(this, entities, StatelessSession::delete);
+  }
+
+  /**
+   * Scroll by criteria through a stateless session. The entities read are never attached to a
+   * persistence context.
+   *
+   * @param entityClazz the entity class
+   * @param criterions the criterions
+   * @param consumer the consumer of each entity read
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the number of entities read
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> long bulkScroll(Class<T> entityClazz,
+      List<Criterion> criterions, Consumer<? super T> consumer) {
+    return withStatelessSession(statelessSession -> {
+      Criteria criteria = HibernateOperations.createCriteria(statelessSession, entityClazz,
+          criterions);
+      return HibernateOperations.scroll(HibernateOperations.scroll(criteria), consumer);
+    });
+  }
+
+  /**
+   * Prepare a query (JPQL/HQL, etc). The query is compiled once into the query plan cache of the
+   * session factory, sized by {@code hibernate.query.plan_cache_max_size}, and the prepared query
+   * handle is cached by the provider, so it can be executed many times with
+   * {@link #findByPreparedQuery(PreparedQuery, Object...)}.
+   *
+   * @param entityClazz the entity class
+   * @param cacheable enable query cache
+   * @param query the query string
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the prepared query
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareQuery(
+      Class<T> entityClazz, boolean cacheable, String query) {
+    return new PreparedQuery<>(entityClazz, query, false, cacheable, -1);
+  }
+
+  /**
+   * Prepare a named query. The query is compiled once into the query plan cache of the session
+   * factory, sized by {@code hibernate.query.plan_cache_max_size}, and the prepared query handle
+   * is cached by the provider, so it can be executed many times with
+   * {@link #findByPreparedQuery(PreparedQuery, Object...)}.
+   *
+   * @param entityClazz the entity class
+   * @param cacheable enable query cache
+   * @param queryName the name of the query
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the prepared query
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamedQuery(
+      Class<T> entityClazz, boolean cacheable, String queryName) {
+    return new PreparedQuery<>(entityClazz, queryName, true, cacheable, -1);
+  }
+
+  /**
+   * Find by prepared query.
+   *
+   * @param preparedQuery the prepared query
+   * @param params the query positional parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the list of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> List<T> findByPreparedQuery(
+      PreparedQuery<T> preparedQuery, Object... params) {
+    preparedQuery.checkParameters(params);
+    if (preparedQuery.isNamed()) {
+      return findByNamedQuery(preparedQuery.getResultClazz(), preparedQuery.isCacheable(),
+          preparedQuery.getQuery(), params);
+    }
+    return findByQuery(preparedQuery.getResultClazz(), preparedQuery.isCacheable(),
+        preparedQuery.getQuery(), params);
+  }
+
+  /**
+   * Stream all entities. The rows are read from a forward-only cursor and evicted from the
+   * session once consumed. The stream must be consumed inside a transaction and closed afterwards
+   * to release the cursor.
+   *
+   * @param entityClazz the entity class
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      Class<T> entityClazz) {
+    return streamByCriteria(entityClazz, null);
+  }
+
+  /**
+   * Stream by criteria. The rows are read from a forward-only cursor and evicted from the session
+   * once consumed. The stream must be consumed inside a transaction and closed afterwards to
+   * release the cursor.
+   *
+   * @param entityClazz the entity class
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    Session session = getSession();
+    Criteria criteria = HibernateOperations.createCriteria(session, entityClazz, criterions);
+    return ScrollableResultsSpliterator.stream(session, HibernateOperations.scroll(criteria));
+  }
+
+  /**
+   * Stream by named query. The rows are read from a forward-only cursor and evicted from the
+   * session once consumed. The stream must be consumed inside a transaction and closed afterwards
+   * to release the cursor.
+   *
+   * @param entityClazz the entity class
+   * @param queryName the name of the query
+   * @param params the query positional parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    Session session = getSession();
+    Query query = HibernateOperations.setPositionalParameters(session.getNamedQuery(queryName),
+        params);
+    return ScrollableResultsSpliterator.stream(session, HibernateOperations.scroll(query));
+  }
+
+  /**
+   * Stream by query (JPQL/HQL, etc). The rows are read from a forward-only cursor and evicted from
+   * the session once consumed. The stream must be consumed inside a transaction and closed
+   * afterwards to release the cursor.
+   *
+   * @param entityClazz the entity class
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    Session session = getSession();
+    Query hibernateQuery = HibernateOperations.setPositionalParameters(session.createQuery(query),
+        params);
+    return ScrollableResultsSpliterator.stream(session, HibernateOperations.scroll(hibernateQuery));
+  }
+
+  /**
+   * Stream by query (JPQL/HQL, etc) and parameters. The rows are read from a forward-only cursor
+   * and evicted from the session once consumed. The stream must be consumed inside a transaction
+   * and closed afterwards to release the cursor.
+   *
+   * @param entityClazz the entity class
+   * @param query the query string
+   * @param params the query string parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T>
+      streamByQueryAndNamedParams(Class<T> entityClazz, String query, Map<String, ?> params) {
+    Session session = getSession();
+    Query hibernateQuery = HibernateOperations.setNamedParameters(session.createQuery(query),
+        params);
+    return ScrollableResultsSpliterator.stream(session, HibernateOperations.scroll(hibernateQuery));
+  }
+
+  /**
+   * Publish all entities. Every subscription reads the rows from a forward-only cursor of its own
+   * stateless session, independent of the current transaction, only as they are requested, and
+   * releases the session and its connection once it completes or is cancelled. The entities are
+   * detached.
+   *
+   * @param entityClazz the entity class
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the publisher of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Publisher<T> publishAll(
+      Class<T> entityClazz) {
+    return publishByCriteria(entityClazz, null);
+  }
+
+  /**
+   * Publish by query (JPQL/HQL, etc) and parameters.
+   *
+   * @param entityClazz the entity class
+   * @param query the query string
+   * @param params the query string parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the publisher of entities
+   * @see #publishAll(Class)
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Publisher<T>
+      publishByQueryAndNamedParams(Class<T> entityClazz, String query, Map<String, ?> params) {
+    return HibernateOperations.publisher(getSession(), (statelessSession, fetch) -> {
+      Query hibernateQuery = statelessSession.createQuery(query).setFetchSize(fetch);
+      HibernateOperations.setNamedParameters(hibernateQuery, params);
+      return hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
+    });
+  }
+
+  /**
+   * Publish by criteria.
+   *
+   * @param entityClazz the entity class
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the publisher of entities
+   * @see #publishAll(Class)
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Publisher<T> publishByCriteria(
+      Class<T> entityClazz, List<Criterion> criterions) {
+    return HibernateOperations.publisher(getSession(), (statelessSession, fetch) -> {
+      Criteria criteria = HibernateOperations.createCriteria(statelessSession, entityClazz,
+          criterions);
+      return criteria.setFetchSize(fetch).scroll(ScrollMode.FORWARD_ONLY);
+    });
+  }
+
   /**
    * Delete an entity by its identifier.
    *
@@ -123,6 +617,48 @@ public interface HibernatePersistenceProvider extends PersistenceProvider {
   <ID extends Serializable, T extends Persistable<ID>> void deleteByEntityOrId(Class<T> entityClazz,
       T entity, ID id);
 
+  /**
+   * Save a collection of entities using JDBC batching. The persistence context is flushed and
+   * cleared every batch size entities, so the saved entities are returned detached.
+   *
+   * @param entities the entities to save
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the saved entities, in the same order as the given collection
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    return HibernateOperations.saveAll(this, entities);
+  }
+
+  /**
+   * Update a collection of entities using JDBC batching. The persistence context is flushed and
+   * cleared every batch size entities, so the updated entities are returned detached.
+   *
+   * @param entities the entities to update
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the updated entities, in the same order as the given collection
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    return HibernateOperations.updateAll(this, entities);
+  }
+
+  /**
+   * Delete a collection of entities using JDBC batching. The persistence context is flushed and
+   * cleared every batch size entities.
+   *
+   * @param entityClazz the entity class
+   * @param entities the entities to delete
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    HibernateOperations.deleteAll(this, entityClazz, entities);
+  }
+
   /**
    * Find by criteria.
    *
@@ -164,6 +700,42 @@ public interface HibernatePersistenceProvider extends PersistenceProvider {
   <ID extends Serializable, T extends Persistable<ID>> List<T> findByCriteria(Class<T> entityClazz,
       boolean cacheable, int firstResult, int maxResults, List<Criterion> criterions);
 
+  /**
+   * Find a page by keyset (seek) pagination. The entities are ordered by the keyset properties and
+   * only those after the keyset values are read, so the cost of a page does not depend on its
+   * depth.
+   *
+   * @param entityClazz the entity class
+   * @param keyset the keyset of the page to read
+   * @param maxResults max result
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the page and the keyset of the next page
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findByKeyset(
+      Class<T> entityClazz, Keyset keyset, int maxResults, List<Criterion> criterions) {
+    return HibernateOperations.findByKeyset(getSession(), entityClazz, keyset, maxResults,
+        criterions);
+  }
+
+  /**
+   * Find a page by keyset (seek) pagination on the entity identifier.
+   *
+   * @param entityClazz the entity class
+   * @param lastId the identifier of the last entity already read or null for the first page
+   * @param maxResults max result
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the page and the keyset of the next page
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findAfterId(
+      Class<T> entityClazz, ID lastId, int maxResults, List<Criterion> criterions) {
+    Keyset keyset = HibernateOperations.idKeyset(getSession(), entityClazz, lastId);
+    return findByKeyset(entityClazz, keyset, maxResults, criterions);
+  }
+
   /**
    * Find unique result by criteria.
    *
@@ -219,4 +791,91 @@ public interface HibernatePersistenceProvider extends PersistenceProvider {
       Class<T> entityClazz, Class<N> resultClazz, ResultTransformer resultTransformer,
       List<Criterion> criterions);
 
+  /**
+   * Find the properties of the entities matching the criterions as DTOs, without loading the
+   * entities. Each row of property values is passed in order to the first constructor of the DTO
+   * class whose parameters accept them; a single property may also be read as its own type.
+   *
+   * @param entityClazz the entity class
+   * @param dtoClazz the DTO class
+   * @param properties the names of the projected properties
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @param <D> the type of the DTO
+   * @return the list of DTOs
+   */
+  default <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByCriteria(
+      Class<T> entityClazz, Class<D> dtoClazz, List<String> properties,
+      List<Criterion> criterions) {
+    return findProjectionByCriteria(entityClazz, dtoClazz, properties, -1, -1, criterions);
+  }
+
+  /**
+   * Find the properties of the entities matching the criterions as DTOs, without loading the
+   * entities.
+   *
+   * @param entityClazz the entity class
+   * @param dtoClazz the DTO class
+   * @param properties the names of the projected properties
+   * @param firstResult first result
+   * @param maxResults max result
+   * @param criterions the criterions
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @param <D> the type of the DTO
+   * @return the list of DTOs
+   * @see #findProjectionByCriteria(Class, Class, List, List)
+   */
+  default <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByCriteria(
+      Class<T> entityClazz, Class<D> dtoClazz, List<String> properties, int firstResult,
+      int maxResults, List<Criterion> criterions) {
+    Criteria criteria = HibernateOperations.createCriteria(getSession(), entityClazz, criterions)
+        .setProjection(HibernateOperations.projection(properties));
+    return ProjectionMapper.map(dtoClazz,
+        HibernateOperations.criteriaRange(criteria, firstResult, maxResults).list());
+  }
+
+  /**
+   * Find by a query selecting scalar values, such as <code>select u.id, u.name from User u</code>,
+   * or a constructor expression, and return its rows as DTOs, without loading the entities. Each
+   * row of values is passed in order to the first constructor of the DTO class whose parameters
+   * accept them.
+   *
+   * @param entityClazz the entity class the query reads
+   * @param dtoClazz the DTO class
+   * @param query the query string
+   * @param params the query named parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @param <D> the type of the DTO
+   * @return the list of DTOs
+   */
+  default <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByQuery(
+      Class<T> entityClazz, Class<D> dtoClazz, String query, Map<String, ?> params) {
+    return ProjectionMapper.map(dtoClazz,
+        HibernateOperations.setNamedParameters(getSession().createQuery(query), params).list());
+  }
+
+  /**
+   * Find by a named query selecting scalar values or a constructor expression and return its rows
+   * as DTOs, without loading the entities.
+   *
+   * @param entityClazz the entity class the query reads
+   * @param dtoClazz the DTO class
+   * @param queryName the query name
+   * @param params the query named parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @param <D> the type of the DTO
+   * @return the list of DTOs
+   * @see #findProjectionByQuery(Class, Class, String, Map)
+   */
+  default <ID extends Serializable, T extends Persistable<ID>, D> List<D>
+      findProjectionByNamedQuery(
+      Class<T> entityClazz, Class<D> dtoClazz, String queryName, Map<String, ?> params) {
+    return ProjectionMapper.map(dtoClazz, HibernateOperations.setNamedParameters(
+        getSession().getNamedQuery(queryName), params).list());
+  }
+
 }
@@ -0,0 +1,231 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.HibernateMetrics;
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.LatencyHistogram;
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.OperationMetrics;
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.OperationStatistics;
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.PersistenceMetricsMXBean;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link HibernatePersistenceProvider} decorator recording the latency, calls, errors and rows of
+ * every operation by entity class, and exposing them with the Hibernate statistics through JMX.
+ *
+ * <p>Recording a call costs two clock reads and a few atomic increments. The operations returning
+ * a stream or a publisher are only timed until it is returned. The Hibernate statistics are read
+ * from the session factory of the first session used by an operation and are only maintained if
+ * the <code>hibernate.generate_statistics</code> configuration property is true.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class InstrumentedHibernatePersistenceProvider extends ForwardingHibernatePersistenceProvider
+    implements PersistenceMetricsMXBean {
+
+  /**
+   * JMX domain of the metrics.
+   */
+  public static final String JMX_DOMAIN = "br.com.thiaguten.persistence";
+
+  private final ConcurrentMap<String, ConcurrentMap<Class<?>, OperationMetrics>> metrics =
+      new ConcurrentHashMap<>();
+  private volatile SessionFactory sessionFactory;
+  private volatile ObjectName objectName;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate the provider the operations are forwarded to
+   */
+  public InstrumentedHibernatePersistenceProvider(HibernatePersistenceProvider delegate) {
+    super(delegate);
+  }
+
+  @Override
+  protected <R> R execute(Operation operation,
+      Function<? super HibernatePersistenceProvider, R> call) {
+    OperationMetrics operationMetrics = getMetrics(operation.getName(),
+        operation.getEntityClazz());
+    long start = System.nanoTime();
+    long rows = 0;
+    boolean error = true;
+    try {
+      R result = super.execute(operation, call);
+      rows = rows(operation, result);
+      error = false;
+      return result;
+    } finally {
+      operationMetrics.record(System.nanoTime() - start, rows, error);
+      if (sessionFactory == null && !error) {
+        captureSessionFactory();
+      }
+    }
+  }
+
+  private void captureSessionFactory() {
+    try {
+      sessionFactory = getDelegate().getSession().getSessionFactory();
+    } catch (HibernateException e) {
+      // no session outside of the operation, tried again after the next one
+    }
+  }
+
+  /**
+   * Get the metrics of an operation on an entity class.
+   *
+   * @param operation the name of the operation
+   * @param entityClazz the entity class or null
+   * @return the metrics of the operation
+   */
+  public OperationMetrics getMetrics(String operation, Class<?> entityClazz) {
+    Class<?> key = entityClazz == null ? Void.class : entityClazz;
+    ConcurrentMap<Class<?>, OperationMetrics> byEntity = metrics.get(operation);
+    if (byEntity == null) {
+      byEntity = metrics.computeIfAbsent(operation, k -> new ConcurrentHashMap<>());
+    }
+    OperationMetrics operationMetrics = byEntity.get(key);
+    if (operationMetrics == null) {
+      operationMetrics = byEntity.computeIfAbsent(key,
+          k -> new OperationMetrics(operation, entityClazz));
+    }
+    return operationMetrics;
+  }
+
+  /**
+   * Get the metrics of all the operations called so far.
+   *
+   * @return the metrics of the operations
+   */
+  public List<OperationMetrics> getMetrics() {
+    List<OperationMetrics> all = new ArrayList<>();
+    metrics.values().forEach(byEntity -> all.addAll(byEntity.values()));
+    return all;
+  }
+
+  /**
+   * Get the latency of an operation over all entity classes.
+   *
+   * @param operation the name of the operation
+   * @return a new histogram merging the latencies of the operation
+   */
+  public LatencyHistogram getLatency(String operation) {
+    LatencyHistogram latency = new LatencyHistogram();
+    Map<Class<?>, OperationMetrics> byEntity = metrics.get(operation);
+    if (byEntity != null) {
+      byEntity.values().forEach(m -> latency.add(m.getLatency()));
+    }
+    return latency;
+  }
+
+  /**
+   * Get the counters of the Hibernate statistics.
+   *
+   * @return the counters by name, empty if no operation was called yet or the statistics are not
+   *     enabled
+   * @see HibernateMetrics#snapshot(org.hibernate.stat.Statistics)
+   */
+  public Map<String, Number> getStatistics() {
+    SessionFactory factory = sessionFactory;
+    return HibernateMetrics.snapshot(factory == null ? null : factory.getStatistics());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<OperationStatistics> getOperations() {
+    List<OperationStatistics> operations = new ArrayList<>();
+    for (OperationMetrics operationMetrics : getMetrics()) {
+      operations.add(operationMetrics.toStatistics());
+    }
+    return operations;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Double> getHibernateStatistics() {
+    Map<String, Double> statistics = new LinkedHashMap<>();
+    getStatistics().forEach((name, value) -> statistics.put(name, value.doubleValue()));
+    return statistics;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void reset() {
+    getMetrics().forEach(OperationMetrics::reset);
+  }
+
+  /**
+   * Register the metrics in the platform MBean server under
+   * <code>br.com.thiaguten.persistence:type=PersistenceMetrics,name=&lt;name&gt;</code>.
+   *
+   * @param name the name of the provider
+   * @return the object name of the MBean
+   */
+  public ObjectName registerMBean(String name) {
+    try {
+      ObjectName on = new ObjectName(JMX_DOMAIN + ":type=PersistenceMetrics,name="
+          + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+      objectName = on;
+      return on;
+    } catch (JMException e) {
+      throw new HibernateException("Could not register the persistence metrics MBean", e);
+    }
+  }
+
+  /**
+   * Unregister the metrics from the platform MBean server, if registered.
+   */
+  public void unregisterMBean() {
+    ObjectName on = objectName;
+    if (on != null) {
+      objectName = null;
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+        if (server.isRegistered(on)) {
+          server.unregisterMBean(on);
+        }
+      } catch (JMException e) {
+        throw new HibernateException("Could not unregister the persistence metrics MBean", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Keyset (seek) pagination position: the ordered properties a result set is sorted by and, after
+ * the first page, the values of those properties in the last row already read.
+ *
+ * <p>The next page is read with a <code>WHERE (p1, p2) &gt; (?, ?) ORDER BY p1, p2</code>
+ * predicate, so every page costs the same regardless of how deep it is in the result set.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class Keyset implements Serializable {
+
+  private static final long serialVersionUID = -4217785361528218127L;
+
+  private final String[] properties;
+  private final Object[] values;
+
+  private Keyset(String[] properties, Object[] values) {
+    this.properties = properties;
+    this.values = values;
+  }
+
+  /**
+   * Create the keyset of the first page ordered by the given properties. The properties together
+   * must be unique, e.g. the identifier or a composite key ending with the identifier.
+   *
+   * @param properties the ordered key properties
+   * @return the keyset of the first page
+   */
+  public static Keyset of(String... properties) {
+    if (properties == null || properties.length == 0) {
+      throw new IllegalArgumentException("Keyset must have at least one property.");
+    }
+    return new Keyset(properties.clone(), null);
+  }
+
+  /**
+   * Create the keyset of the page after the given key values.
+   *
+   * @param values the key values of the last row read, in the same order as the properties
+   * @return the keyset of the next page
+   */
+  public Keyset after(Object... values) {
+    if (values == null || values.length != properties.length) {
+      throw new IllegalArgumentException("Keyset values must match the keyset properties.");
+    }
+    for (Object value : values) {
+      if (value == null) {
+        throw new IllegalArgumentException("Keyset values must not be null.");
+      }
+    }
+    return new Keyset(properties, values.clone());
+  }
+
+  /**
+   * Get the ordered key properties.
+   *
+   * @return the key properties
+   */
+  public String[] getProperties() {
+    return properties.clone();
+  }
+
+  /**
+   * Get the key values of the last row read.
+   *
+   * @return the key values or null if this is the keyset of the first page
+   */
+  public Object[] getValues() {
+    return values == null ? null : values.clone();
+  }
+
+  /**
+   * Whether this is the keyset of the first page.
+   *
+   * @return true if there is no last row read
+   */
+  public boolean isFirst() {
+    return values == null;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    Keyset keyset = (Keyset) o;
+    return Arrays.equals(properties, keyset.properties) && Arrays.equals(values, keyset.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(properties) + Arrays.hashCode(values);
+  }
+
+  @Override
+  public String toString() {
+    return "Keyset{" +
+        "properties=" + Arrays.toString(properties) +
+        ", values=" + Arrays.toString(values) +
+        '}';
+  }
+}
@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of a keyset (seek) paginated result set.
+ *
+ * @param <T> the type of the entity
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class KeysetPage<T> implements Serializable {
+
+  private static final long serialVersionUID = 2391784650817216419L;
+
+  private final List<T> content;
+  private final Keyset next;
+
+  /**
+   * Constructor.
+   *
+   * @param content the entities of this page
+   * @param next the keyset of the next page or null if this is the last page
+   */
+  public KeysetPage(List<T> content, Keyset next) {
+    this.content = content;
+    this.next = next;
+  }
+
+  /**
+   * Get the entities of this page.
+   *
+   * @return the entities
+   */
+  public List<T> getContent() {
+    return content;
+  }
+
+  /**
+   * Get the continuation token of the next page.
+   *
+   * @return the keyset of the next page or null if this is the last page
+   */
+  public Keyset getNext() {
+    return next;
+  }
+
+  /**
+   * Whether there is a page after this one.
+   *
+   * @return true if there is a next page
+   */
+  public boolean hasNext() {
+    return next != null;
+  }
+
+  @Override
+  public String toString() {
+    return "KeysetPage{" +
+        "content=" + content +
+        ", next=" + next +
+        '}';
+  }
+}
@@ -0,0 +1,441 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Thread-safe, weight bounded, least recently used cache with an optional time to live, keeping
+ * hit, miss, put, eviction and expiration statistics.
+ *
+ * <p>The entries are striped over independently locked segments, so concurrent lookups of
+ * different keys rarely contend, each one evicting its least recently used entries once it holds
+ * more than its share of the maximum weight. Unless a weigher is given every entry weighs one, so
+ * the maximum weight is the maximum number of entries.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class LruCache<K, V> {
+
+  /**
+   * Default number of segments of the cache.
+   */
+  public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+  private final long maxWeight;
+  private final long timeToLiveNanos;
+  private final ToIntBiFunction<? super K, ? super V> weigher;
+  private final Segment<K, V>[] segments;
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder putCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+  private final LongAdder expirationCount = new LongAdder();
+
+  /**
+   * Constructor of a cache whose entries weigh one and never expire.
+   *
+   * @param maxSize the maximum number of entries
+   */
+  public LruCache(int maxSize) {
+    this(DEFAULT_CONCURRENCY_LEVEL, maxSize);
+  }
+
+  /**
+   * Constructor of a cache whose entries weigh one and never expire.
+   *
+   * @param concurrencyLevel the number of segments, rounded up to a power of two and at most the
+   *     maximum size
+   * @param maxSize the maximum number of entries
+   */
+  public LruCache(int concurrencyLevel, int maxSize) {
+    this(concurrencyLevel, maxSize, 0, TimeUnit.SECONDS, (key, value) -> 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param concurrencyLevel the number of segments, rounded up to a power of two and at most the
+   *     maximum weight
+   * @param maxWeight the maximum weight of the entries
+   * @param timeToLive the time to live of the entries, zero if they never expire
+   * @param unit the unit of the time to live
+   * @param weigher the weigher of the entries, an entry heavier than a segment is not cached
+   */
+  @SuppressWarnings("unchecked")
+  public LruCache(int concurrencyLevel, long maxWeight, long timeToLive, TimeUnit unit,
+      ToIntBiFunction<? super K, ? super V> weigher) {
+    if (concurrencyLevel <= 0) {
+      throw new IllegalArgumentException("Concurrency level must be greater than zero.");
+    }
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("Max weight must be greater than zero.");
+    }
+    if (timeToLive < 0) {
+      throw new IllegalArgumentException("Time to live must not be negative.");
+    }
+    this.maxWeight = maxWeight;
+    this.timeToLiveNanos = unit.toNanos(timeToLive);
+    this.weigher = Objects.requireNonNull(weigher, "weigher");
+    int size = 1;
+    while (size < concurrencyLevel && size * 2L <= maxWeight) {
+      size <<= 1;
+    }
+    this.segments = new Segment[size];
+    for (int i = 0; i < size; i++) {
+      // the shares add up to the maximum weight
+      segments[i] = new Segment<>(maxWeight / size + (i < maxWeight % size ? 1 : 0));
+    }
+  }
+
+  /**
+   * Get the value of the key, computing it with the loader on a miss. The loader is called
+   * outside of the segment lock, so concurrent misses of the same key may compute it more than
+   * once.
+   *
+   * @param key the key
+   * @param loader the loader of missing values
+   * @return the value
+   */
+  public V get(K key, Function<? super K, ? extends V> loader) {
+    V value = getIfPresent(key);
+    if (value != null) {
+      return value;
+    }
+    V loaded = loader.apply(key);
+    if (loaded == null) {
+      return null;
+    }
+    Segment<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      Entry<V> existing = segment.map.get(key);
+      if (existing != null && !isExpired(existing)) {
+        return existing.value;
+      }
+    }
+    put(key, loaded, false);
+    return loaded;
+  }
+
+  /**
+   * Get the value of the key.
+   *
+   * @param key the key
+   * @return the value or null if it is not cached or expired
+   */
+  public V getIfPresent(K key) {
+    Segment<K, V> segment = segmentFor(key);
+    V value = null;
+    synchronized (segment) {
+      Entry<V> entry = segment.map.get(key);
+      if (entry != null) {
+        if (isExpired(entry)) {
+          segment.remove(key);
+          expirationCount.increment();
+        } else {
+          value = entry.value;
+        }
+      }
+    }
+    if (value != null) {
+      hitCount.increment();
+    } else {
+      missCount.increment();
+    }
+    return value;
+  }
+
+  /**
+   * Cache the value of the key.
+   *
+   * @param key the key
+   * @param value the value
+   */
+  public void put(K key, V value) {
+    put(key, value, false);
+  }
+
+  /**
+   * Cache the value of the key unless a value of the key is already cached.
+   *
+   * @param key the key
+   * @param value the value
+   * @return true if the value was cached
+   */
+  public boolean putIfAbsent(K key, V value) {
+    return put(key, value, true);
+  }
+
+  private boolean put(K key, V value, boolean onlyIfAbsent) {
+    Objects.requireNonNull(value, "value");
+    int weight = weigher.applyAsInt(key, value);
+    if (weight < 0) {
+      throw new IllegalArgumentException("Weight must not be negative.");
+    }
+    Segment<K, V> segment = segmentFor(key);
+    int evicted = 0;
+    synchronized (segment) {
+      Entry<V> existing = segment.map.get(key);
+      if (existing != null) {
+        if (onlyIfAbsent && !isExpired(existing)) {
+          return false;
+        }
+        segment.remove(key);
+      }
+      if (weight > segment.maxWeight) {
+        return false;
+      }
+      long expiresAt = timeToLiveNanos > 0 ? System.nanoTime() + timeToLiveNanos : 0;
+      segment.map.put(key, new Entry<>(value, weight, expiresAt));
+      segment.weight += weight;
+      Iterator<Entry<V>> iterator = segment.map.values().iterator();
+      while (segment.weight > segment.maxWeight && iterator.hasNext()) {
+        Entry<V> eldest = iterator.next();
+        iterator.remove();
+        segment.weight -= eldest.weight;
+        evicted++;
+      }
+    }
+    putCount.increment();
+    if (evicted > 0) {
+      evictionCount.add(evicted);
+    }
+    return true;
+  }
+
+  /**
+   * Check if a value of the key is cached, without counting a hit or a miss.
+   *
+   * @param key the key
+   * @return true if a value of the key is cached and not expired
+   */
+  public boolean containsKey(K key) {
+    Segment<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      Entry<V> entry = segment.map.get(key);
+      return entry != null && !isExpired(entry);
+    }
+  }
+
+  /**
+   * Remove the value of the key.
+   *
+   * @param key the key
+   */
+  public void invalidate(K key) {
+    Segment<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      segment.remove(key);
+    }
+  }
+
+  /**
+   * Remove all the values.
+   */
+  public void clear() {
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        segment.map.clear();
+        segment.weight = 0;
+      }
+    }
+  }
+
+  /**
+   * Get a snapshot of the cached values which are not expired.
+   *
+   * @return the cached values
+   */
+  public Map<K, V> asMap() {
+    Map<K, V> map = new LinkedHashMap<>();
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        segment.map.forEach((key, entry) -> {
+          if (!isExpired(entry)) {
+            map.put(key, entry.value);
+          }
+        });
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Get the number of cached values, including the expired ones not removed yet.
+   *
+   * @return the size
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        size += segment.map.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Get the weight of the cached values.
+   *
+   * @return the weight
+   */
+  public long getWeight() {
+    long weight = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        weight += segment.weight;
+      }
+    }
+    return weight;
+  }
+
+  /**
+   * Get the maximum weight of the cached values, the maximum number of cached values unless the
+   * cache has a weigher.
+   *
+   * @return the max weight
+   */
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * Get the number of lookups which found a cached value.
+   *
+   * @return the hit count
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Get the number of lookups which did not find a cached value.
+   *
+   * @return the miss count
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Get the number of values stored in the cache, replaced or evicted since.
+   *
+   * @return the put count
+   */
+  public long getPutCount() {
+    return putCount.sum();
+  }
+
+  /**
+   * Get the number of values evicted because the cache was full.
+   *
+   * @return the eviction count
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Get the number of values removed because their time to live elapsed.
+   *
+   * @return the expiration count
+   */
+  public long getExpirationCount() {
+    return expirationCount.sum();
+  }
+
+  /**
+   * Get the ratio of lookups which found a cached value.
+   *
+   * @return the hit ratio, between 0 and 1
+   */
+  public double getHitRatio() {
+    long hits = getHitCount();
+    long total = hits + getMissCount();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  @Override
+  public String toString() {
+    return "LruCache{" +
+        "size=" + size() +
+        ", weight=" + getWeight() +
+        ", maxWeight=" + maxWeight +
+        ", hitCount=" + getHitCount() +
+        ", missCount=" + getMissCount() +
+        ", evictionCount=" + getEvictionCount() +
+        ", expirationCount=" + getExpirationCount() +
+        '}';
+  }
+
+  private Segment<K, V> segmentFor(K key) {
+    int hash = key.hashCode();
+    hash ^= hash >>> 16;
+    return segments[hash & (segments.length - 1)];
+  }
+
+  private boolean isExpired(Entry<V> entry) {
+    return timeToLiveNanos > 0 && entry.expiresAt - System.nanoTime() <= 0;
+  }
+
+  /**
+   * Segment of the cache, an access ordered map guarded by its own monitor.
+   */
+  private static final class Segment<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private long weight;
+
+    private Segment(long maxWeight) {
+      this.maxWeight = maxWeight;
+    }
+
+    private void remove(K key) {
+      Entry<V> entry = map.remove(key);
+      if (entry != null) {
+        weight -= entry.weight;
+      }
+    }
+  }
+
+  private static final class Entry<V> {
+
+    private final V value;
+    private final int weight;
+    private final long expiresAt;
+
+    private Entry(V value, int weight, long expiresAt) {
+      this.value = value;
+      this.weight = weight;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
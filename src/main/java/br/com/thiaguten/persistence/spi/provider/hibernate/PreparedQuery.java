@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import java.io.Serializable;
+
+/**
+ * Prepared query handle: an immutable, thread-safe descriptor of a query string (JPQL/HQL) or
+ * named query compiled once and executed many times with positional parameters.
+ *
+ * <p>The handle only keeps the query string and the number of its positional parameters. The
+ * compiled plan is kept by the query plan cache of the session factory, which every execution
+ * looks up; size it with {@code hibernate.query.plan_cache_max_size} so that the plans of the
+ * prepared queries are not evicted.
+ *
+ * @param <T> the type of the result
+ * @author Thiago Gutenberg Carvalho da Costa
+ * @see HibernatePersistenceProvider#findByPreparedQuery(PreparedQuery, Object...)
+ */
+public final class PreparedQuery<T> implements Serializable {
+
+  private static final long serialVersionUID = 6601484217370434785L;
+
+  private final Class<T> resultClazz;
+  private final String query;
+  private final boolean named;
+  private final boolean cacheable;
+  private final int parameterCount;
+
+  /**
+   * Constructor.
+   *
+   * @param resultClazz the result class
+   * @param query the query string or the name of the query
+   * @param named whether the query is a named query
+   * @param cacheable enable query cache
+   * @param parameterCount the number of positional parameters or -1 if it is unknown
+   */
+  public PreparedQuery(Class<T> resultClazz, String query, boolean named, boolean cacheable,
+      int parameterCount) {
+    this.resultClazz = resultClazz;
+    this.query = query;
+    this.named = named;
+    this.cacheable = cacheable;
+    this.parameterCount = parameterCount;
+  }
+
+  /**
+   * Get the result class.
+   *
+   * @return the result class
+   */
+  public Class<T> getResultClazz() {
+    return resultClazz;
+  }
+
+  /**
+   * Get the query string or, if this is a named query, the name of the query.
+   *
+   * @return the query
+   */
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * Whether this is a named query.
+   *
+   * @return true if the query is a named query
+   */
+  public boolean isNamed() {
+    return named;
+  }
+
+  /**
+   * Whether the query cache is enabled.
+   *
+   * @return true if the query is cacheable
+   */
+  public boolean isCacheable() {
+    return cacheable;
+  }
+
+  /**
+   * Get the number of positional parameters.
+   *
+   * @return the parameter count or -1 if it is unknown
+   */
+  public int getParameterCount() {
+    return parameterCount;
+  }
+
+  /**
+   * Check the positional parameters before binding them.
+   *
+   * @param params the positional parameters
+   */
+  public void checkParameters(Object... params) {
+    int count = params == null ? 0 : params.length;
+    if (parameterCount >= 0 && count != parameterCount) {
+      throw new IllegalArgumentException("Query expects " + parameterCount
+          + " positional parameters but " + count + " were given: " + query);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PreparedQuery{" +
+        "resultClazz=" + resultClazz.getName() +
+        ", query='" + query + '\'' +
+        ", named=" + named +
+        ", cacheable=" + cacheable +
+        ", parameterCount=" + parameterCount +
+        '}';
+  }
+}
@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import org.hibernate.HibernateException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps the rows of a projection to DTOs through one of their constructors.
+ *
+ * <p>A row, either a single column or an array of columns, is passed in order to the first
+ * constructor of the DTO class whose parameters accept the types of its columns. The constructor is
+ * resolved once per DTO class and column types into a {@link MethodHandle} that spreads the row
+ * over the constructor parameters, so no reflection is done per row. Rows that already are DTOs,
+ * as produced by a <code>select new</code> constructor expression, are returned as they are.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class ProjectionMapper {
+
+  private static final MethodType ROW_MAPPER_TYPE =
+      MethodType.methodType(Object.class, Object[].class);
+
+  private static final ClassValue<ConcurrentMap<List<Class<?>>, MethodHandle>> CONSTRUCTORS =
+      new ClassValue<ConcurrentMap<List<Class<?>>, MethodHandle>>() {
+        @Override
+        protected ConcurrentMap<List<Class<?>>, MethodHandle> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  private ProjectionMapper() {
+  }
+
+  /**
+   * Map the rows of a projection to DTOs.
+   *
+   * @param dtoClazz the DTO class
+   * @param rows the rows, single columns or arrays of columns
+   * @param <D> the type of the DTO
+   * @return the DTOs
+   */
+  @SuppressWarnings("unchecked")
+  static <D> List<D> map(Class<D> dtoClazz, List<?> rows) {
+    List<D> dtos = new ArrayList<>(rows.size());
+    MethodHandle constructor = null;
+    for (Object row : rows) {
+      if (dtoClazz.isInstance(row)) {
+        dtos.add((D) row);
+        continue;
+      }
+      Object[] columns = row instanceof Object[] ? (Object[]) row : new Object[] {row};
+      if (constructor == null) {
+        constructor = constructor(dtoClazz, columns);
+      }
+      try {
+        dtos.add((D) constructor.invokeExact(columns));
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new HibernateException("Could not instantiate " + dtoClazz.getName(), e);
+      }
+    }
+    return dtos;
+  }
+
+  private static MethodHandle constructor(Class<?> dtoClazz, Object[] columns) {
+    Class<?>[] types = new Class<?>[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      types[i] = columns[i] == null ? null : columns[i].getClass();
+    }
+    return CONSTRUCTORS.get(dtoClazz).computeIfAbsent(Arrays.asList(types),
+        key -> resolveConstructor(dtoClazz, key));
+  }
+
+  private static MethodHandle resolveConstructor(Class<?> dtoClazz, List<Class<?>> types) {
+    for (Constructor<?> constructor : dtoClazz.getDeclaredConstructors()) {
+      if (accepts(constructor.getParameterTypes(), types)) {
+        try {
+          constructor.setAccessible(true);
+          return MethodHandles.lookup().unreflectConstructor(constructor)
+              .asSpreader(Object[].class, types.size())
+              .asType(ROW_MAPPER_TYPE);
+        } catch (IllegalAccessException | RuntimeException e) {
+          throw new HibernateException("Could not access constructor " + constructor, e);
+        }
+      }
+    }
+    throw new HibernateException("No constructor of " + dtoClazz.getName()
+        + " accepts the projection columns " + types);
+  }
+
+  private static boolean accepts(Class<?>[] parameterTypes, List<Class<?>> types) {
+    if (parameterTypes.length != types.size()) {
+      return false;
+    }
+    for (int i = 0; i < parameterTypes.length; i++) {
+      Class<?> type = types.get(i);
+      if (type == null
+          ? parameterTypes[i].isPrimitive()
+          : !MethodType.methodType(parameterTypes[i]).wrap().returnType().isAssignableFrom(type)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,327 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import org.hibernate.HibernateException;
+import org.hibernate.QueryTimeoutException;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.TransactionException;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * {@link HibernatePersistenceProvider} decorator sending the reads to read replicas: the
+ * <code>find*</code> and <code>count*</code> operations go to one of the replica providers, each
+ * over the session factory of a replica, and everything else goes to the primary provider it
+ * decorates.
+ *
+ * <p>The reads stay on the primary inside a read-write transaction of the primary, so they see its
+ * writes, and for the maximum replica lag after a write of the same thread, so a thread reads its
+ * own writes. The replicas are balanced round-robin or by least latency. A replica whose read
+ * fails to connect, times out or fails its transaction, or whose lag reported by the lag probe is
+ * over the maximum, is skipped until it is checked again, and the read fails back to the primary;
+ * without any available replica every read goes to the primary. Any other failure of a read, such
+ * as an invalid query, would fail on the primary as well and is thrown as it is.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class RoutingHibernatePersistenceProvider extends ForwardingHibernatePersistenceProvider {
+
+  private static final Logger LOG = Logger.getLogger(RoutingHibernatePersistenceProvider.class);
+
+  /**
+   * Balancing of the reads between the available replicas.
+   */
+  public enum Balancing {
+
+    /**
+     * Every replica in turn.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * The replica with the least average latency of its recent reads.
+     */
+    LEAST_LATENCY
+  }
+
+  private final List<Replica> replicas;
+  private final AtomicInteger next = new AtomicInteger();
+  private final ThreadLocal<long[]> lastWrite = ThreadLocal.withInitial(
+      () -> new long[] {Long.MIN_VALUE});
+  private final LongAdder replicaReads = new LongAdder();
+  private final LongAdder fallbacks = new LongAdder();
+  private volatile Balancing balancing = Balancing.ROUND_ROBIN;
+  private volatile ToLongFunction<? super HibernatePersistenceProvider> lagProbe;
+  private volatile long maxLagNanos = TimeUnit.SECONDS.toNanos(1);
+  private volatile long checkIntervalNanos = TimeUnit.SECONDS.toNanos(5);
+
+  /**
+   * Constructor.
+   *
+   * @param primary the provider of the primary, which the writes go to
+   * @param replicas the providers of the read replicas
+   */
+  public RoutingHibernatePersistenceProvider(HibernatePersistenceProvider primary,
+      List<? extends HibernatePersistenceProvider> replicas) {
+    super(primary);
+    List<Replica> list = new ArrayList<>(replicas.size());
+    for (HibernatePersistenceProvider replica : replicas) {
+      list.add(new Replica(replica));
+    }
+    this.replicas = Collections.unmodifiableList(list);
+  }
+
+  /**
+   * Set the balancing of the reads between the replicas, round-robin by default.
+   *
+   * @param balancing the balancing
+   */
+  public void setBalancing(Balancing balancing) {
+    this.balancing = balancing;
+  }
+
+  /**
+   * Set the probe of the lag of a replica behind the primary, such as the age of a heartbeat row
+   * written on the primary, in milliseconds. It is called for every replica once per check
+   * interval; a replica whose probe fails is skipped like a lagging one.
+   *
+   * @param lagProbe the probe returning the lag of the given replica provider in milliseconds
+   */
+  public void setLagProbe(ToLongFunction<? super HibernatePersistenceProvider> lagProbe) {
+    this.lagProbe = lagProbe;
+  }
+
+  /**
+   * Set the maximum lag of a replica to be read from, which is also how long the reads of a thread
+   * stay on the primary after its writes, one second by default.
+   *
+   * @param maxLag the maximum lag
+   * @param unit the unit of the maximum lag
+   */
+  public void setMaxLag(long maxLag, TimeUnit unit) {
+    this.maxLagNanos = unit.toNanos(maxLag);
+  }
+
+  /**
+   * Set the interval between two checks of a replica, when its lag is probed or, after a failure,
+   * it is tried again, five seconds by default.
+   *
+   * @param checkInterval the check interval
+   * @param unit the unit of the check interval
+   */
+  public void setCheckInterval(long checkInterval, TimeUnit unit) {
+    this.checkIntervalNanos = unit.toNanos(checkInterval);
+  }
+
+  /**
+   * Get the number of reads served by a replica.
+   *
+   * @return the number of replica reads
+   */
+  public long getReplicaReads() {
+    return replicaReads.sum();
+  }
+
+  /**
+   * Get the number of reads which failed on a replica and were served by the primary.
+   *
+   * @return the number of fallbacks
+   */
+  public long getFallbacks() {
+    return fallbacks.sum();
+  }
+
+  /**
+   * Set the cacheable entity classes of the primary and of every replica.
+   *
+   * @param cacheableEntityClasses the cacheable entity classes
+   */
+  @Override
+  public void setCacheableEntityClasses(Collection<? extends Class<?>> cacheableEntityClasses) {
+    super.setCacheableEntityClasses(cacheableEntityClasses);
+    for (Replica replica : replicas) {
+      replica.provider.setCacheableEntityClasses(cacheableEntityClasses);
+    }
+  }
+
+  @Override
+  protected <R> R execute(Operation operation,
+      Function<? super HibernatePersistenceProvider, R> call) {
+    if (operation.isWrite()) {
+      try {
+        return super.execute(operation, call);
+      } finally {
+        lastWrite.get()[0] = System.nanoTime();
+      }
+    }
+    Replica replica = isRoutable(operation) ? select() : null;
+    if (replica == null) {
+      return super.execute(operation, call);
+    }
+    long start = System.nanoTime();
+    R result;
+    try {
+      result = call.apply(replica.provider);
+    } catch (RuntimeException e) {
+      if (!isReplicaFailure(e)) {
+        throw e;
+      }
+      replica.fail(start, e);
+      fallbacks.increment();
+      return super.execute(operation, call);
+    }
+    replica.latency(System.nanoTime() - start);
+    replicaReads.increment();
+    return result;
+  }
+
+  /**
+   * Check if a read failed because of the replica: a connection failure, a query timeout or a
+   * transaction failure, possibly wrapped by the provider.
+   */
+  private static boolean isReplicaFailure(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof JDBCConnectionException || cause instanceof QueryTimeoutException
+          || cause instanceof TransactionException
+          || cause instanceof javax.persistence.QueryTimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isRoutable(Operation operation) {
+    String name = operation.getName();
+    if (replicas.isEmpty() || !(name.startsWith("find") || name.startsWith("count"))) {
+      return false;
+    }
+    long written = lastWrite.get()[0];
+    if (written != Long.MIN_VALUE && System.nanoTime() - written <= maxLagNanos) {
+      return false; // reads its own writes
+    }
+    return !isInWriteTransaction();
+  }
+
+  /**
+   * Check if the primary has an active read-write transaction on the current thread.
+   */
+  private boolean isInWriteTransaction() {
+    try {
+      Session session = getDelegate().getSession();
+      Transaction transaction = session.getTransaction();
+      return transaction != null && transaction.getStatus() == TransactionStatus.ACTIVE
+          && !session.isDefaultReadOnly();
+    } catch (HibernateException | IllegalStateException e) {
+      return false; // no session, or a closed one, outside of a transaction
+    }
+  }
+
+  private Replica select() {
+    long now = System.nanoTime();
+    Replica selected = null;
+    int size = replicas.size();
+    int start = next.getAndIncrement() & Integer.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      Replica replica = replicas.get((start + i) % size);
+      if (!replica.isAvailable(now)) {
+        continue;
+      }
+      if (balancing == Balancing.ROUND_ROBIN) {
+        return replica;
+      }
+      if (selected == null || replica.averageLatency.get() < selected.averageLatency.get()) {
+        selected = replica;
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Read replica, with its availability and average latency.
+   */
+  private final class Replica {
+
+    private final HibernatePersistenceProvider provider;
+    private final AtomicLong nextCheck = new AtomicLong(System.nanoTime());
+    private final AtomicLong averageLatency = new AtomicLong();
+    private volatile boolean available = true;
+
+    private Replica(HibernatePersistenceProvider provider) {
+      this.provider = provider;
+    }
+
+    /**
+     * Check if the replica can be read from, probing its lag or trying it again once per check
+     * interval, by the first thread which finds the check due.
+     */
+    private boolean isAvailable(long now) {
+      long check = nextCheck.get();
+      if (now - check >= 0 && nextCheck.compareAndSet(check, now + checkIntervalNanos)) {
+        ToLongFunction<? super HibernatePersistenceProvider> probe = lagProbe;
+        if (probe == null) {
+          available = true;
+        } else {
+          try {
+            long lag = TimeUnit.MILLISECONDS.toNanos(probe.applyAsLong(provider));
+            available = lag <= maxLagNanos;
+            if (!available) {
+              LOG.warnf("Replica %s lags %d ms behind the primary, reads fail back to it",
+                  provider, TimeUnit.NANOSECONDS.toMillis(lag));
+            }
+          } catch (RuntimeException e) {
+            available = false;
+            LOG.warnf(e, "Could not probe the lag of replica %s, reads fail back to the primary",
+                provider);
+          }
+        }
+      }
+      return available;
+    }
+
+    private void fail(long now, RuntimeException e) {
+      available = false;
+      nextCheck.set(now + checkIntervalNanos);
+      LOG.warnf(e, "Read failed on replica %s, reads fail back to the primary", provider);
+    }
+
+    /**
+     * Update the exponentially weighted moving average of the latency, by an eighth of the
+     * difference.
+     */
+    private void latency(long nanos) {
+      long average = averageLatency.get();
+      averageLatency.compareAndSet(average, average + ((nanos - average) >> 3));
+    }
+  }
+}
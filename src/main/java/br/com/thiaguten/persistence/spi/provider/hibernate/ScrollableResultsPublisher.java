@@ -0,0 +1,247 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Cold {@link Publisher} over the rows of a query read through a forward-only cursor.
+ *
+ * <p>Every subscription opens its own stateless session, so the rows are not kept in a
+ * persistence context, and runs the query on the first request only. Rows are read from the cursor
+ * only as the subscriber requests them, on the thread calling {@link Subscription#request(long)},
+ * and the cursor, the transaction and the session, with its connection, are released as soon as
+ * the subscription completes, fails or is cancelled.
+ *
+ * <p>The fetch size is fixed when the query runs, since a Hibernate cursor does not expose its
+ * result set to change it: it is the first demand, up to the configured fetch size. A subscriber
+ * requesting its rows in batches should make its first request as large as its batches, otherwise
+ * every later batch is fetched in as many round trips as the first request had rows.
+ *
+ * <p>A subscriber which throws from <code>onNext</code> cancels its subscription and the exception
+ * is thrown to the caller of {@link Subscription#request(long)}; the subscription is terminated
+ * before <code>onComplete</code> and <code>onError</code> are signalled, so nothing is signalled
+ * after them, even when they throw.
+ *
+ * @param <T> the type of the rows
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@SuppressWarnings("unchecked")
+final class ScrollableResultsPublisher<T> implements Publisher<T> {
+
+  private final SessionFactory sessionFactory;
+  private final BiFunction<StatelessSession, Integer, ScrollableResults> query;
+  private final int fetchSize;
+
+  /**
+   * Constructor.
+   *
+   * @param sessionFactory the session factory opening the stateless sessions
+   * @param query the query scrolling the rows of a stateless session with the given fetch size
+   * @param fetchSize the maximum fetch size
+   */
+  ScrollableResultsPublisher(SessionFactory sessionFactory,
+      BiFunction<StatelessSession, Integer, ScrollableResults> query, int fetchSize) {
+    this.sessionFactory = sessionFactory;
+    this.query = query;
+    this.fetchSize = fetchSize;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber");
+    subscriber.onSubscribe(new ScrollSubscription(subscriber));
+  }
+
+  private final class ScrollSubscription implements Subscription {
+
+    private final Subscriber<? super T> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+
+    // only accessed by the draining thread
+    private StatelessSession session;
+    private Transaction transaction;
+    private ScrollableResults results;
+    private boolean done;
+
+    private ScrollSubscription(Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException(
+            "Request must be greater than zero (rule 3.9), was " + n);
+      } else {
+        requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    /**
+     * Emit the requested rows. Only one thread drains at a time; a request or a cancellation made
+     * meanwhile, including from <code>onNext</code>, is handled by that thread before it leaves.
+     */
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        emit();
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void emit() {
+      if (done) {
+        return;
+      }
+      if (cancelled) {
+        finish(false);
+        return;
+      }
+      if (invalidRequest != null) {
+        fail(invalidRequest);
+        return;
+      }
+      long demand = requested.get();
+      long emitted = 0;
+      boolean completed = false;
+      while (emitted != demand) {
+        if (cancelled) {
+          finish(false);
+          return;
+        }
+        T row;
+        try {
+          if (results == null) {
+            open((int) Math.min(demand, fetchSize));
+          }
+          if (!results.next()) {
+            completed = true;
+            break;
+          }
+          row = (T) results.get(0);
+        } catch (RuntimeException e) {
+          fail(e);
+          return;
+        }
+        try {
+          subscriber.onNext(row);
+        } catch (RuntimeException e) {
+          // rule 2.13: the subscription is cancelled and the error goes to the caller
+          cancelled = true;
+          release(e);
+          throw e;
+        }
+        emitted++;
+      }
+      if (completed) {
+        try {
+          finish(true);
+        } catch (RuntimeException e) {
+          fail(e);
+          return;
+        }
+        subscriber.onComplete();
+        return;
+      }
+      if (emitted != 0 && demand != Long.MAX_VALUE) {
+        requested.addAndGet(-emitted);
+      }
+    }
+
+    private void open(int fetchSize) {
+      session = sessionFactory.openStatelessSession();
+      transaction = session.beginTransaction();
+      results = query.apply(session, Math.max(1, fetchSize));
+    }
+
+    private void fail(Throwable e) {
+      release(e);
+      subscriber.onError(e);
+    }
+
+    /**
+     * Release the resources after a failure, keeping a failure of the release as suppressed.
+     *
+     * @param e the failure
+     */
+    private void release(Throwable e) {
+      try {
+        finish(false);
+      } catch (RuntimeException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+    }
+
+    /**
+     * Release the cursor, the transaction and the session.
+     *
+     * @param commit true to commit the transaction, false to roll it back
+     */
+    private void finish(boolean commit) {
+      done = true;
+      try {
+        if (results != null) {
+          results.close();
+        }
+        TransactionStatus status = transaction == null ? null : transaction.getStatus();
+        if (status == TransactionStatus.ACTIVE || status == TransactionStatus.MARKED_ROLLBACK) {
+          if (commit) {
+            transaction.commit();
+          } else {
+            transaction.rollback();
+          }
+        }
+      } finally {
+        results = null;
+        transaction = null;
+        if (session != null) {
+          session.close();
+          session = null;
+        }
+      }
+    }
+  }
+}
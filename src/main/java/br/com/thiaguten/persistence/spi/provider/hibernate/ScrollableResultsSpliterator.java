@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+/**
+ * Spliterator over a forward-only {@link ScrollableResults} that evicts the entities of each row
+ * from the session once it was consumed, so memory stays constant whatever the size of the result
+ * set. A row of a single column is passed as its value, a row of several columns as an array;
+ * scalar values are left alone.
+ *
+ * @param <T> the type of the rows
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@SuppressWarnings("unchecked")
+final class ScrollableResultsSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+  private final Session session;
+  private final ScrollableResults results;
+  private boolean closed;
+
+  private ScrollableResultsSpliterator(Session session, ScrollableResults results) {
+    super(Long.MAX_VALUE, Spliterator.ORDERED);
+    this.session = session;
+    this.results = results;
+  }
+
+  /**
+   * Create a sequential stream over the scrollable results. Closing the stream releases the
+   * underlying database cursor.
+   *
+   * @param session the session which the results belong to
+   * @param results the scrollable results
+   * @param <T> the type of the rows
+   * @return the stream of rows
+   */
+  static <T> Stream<T> stream(Session session, ScrollableResults results) {
+    ScrollableResultsSpliterator<T> spliterator = new ScrollableResultsSpliterator<>(session,
+        results);
+    return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (closed || !results.next()) {
+      close();
+      return false;
+    }
+    Object[] columns = results.get();
+    action.accept((T) (columns.length == 1 ? columns[0] : columns));
+    for (Object column : columns) {
+      if (column != null && session.contains(column)) {
+        session.evict(column);
+      }
+    }
+    return true;
+  }
+
+  private void close() {
+    if (!closed) {
+      closed = true;
+      results.close();
+    }
+  }
+}
@@ -0,0 +1,681 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import org.hibernate.HibernateException;
+import org.hibernate.NonUniqueResultException;
+import org.hibernate.Session;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.engine.spi.NamedQueryDefinition;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.jboss.logging.Logger;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link HibernatePersistenceProvider} over several shards, each a provider over the session
+ * factory of one database, routing the operations on an entity or identifier to the shard given
+ * by a shard function of the identifier, and scattering the other reads to every shard in parallel
+ * and gathering their results.
+ *
+ * <p>The lists of entities found by identifier or criteria are merged sorted by identifier, while
+ * the results of a query are concatenated shard by shard, each shard keeping the order of the
+ * query; a query ordering its results with an <code>order by</code> clause cannot be merged in its
+ * order and is rejected. The counts and the numbers of written rows are summed, the
+ * <code>min</code> and <code>max</code> aggregates selected by a query are reduced across the
+ * shards, and any other single result, such as an average, must be found on at most one shard.
+ * The paginated finders paginate globally over the entities sorted by identifier: every shard
+ * reads the first
+ * <code>firstResult + maxResults</code> entities of its own, so deep pages cost more on every
+ * shard and {@link #findAfterId(Class, Serializable, int, List)} should be preferred to walk a
+ * whole table. Streams read the shards one after the other. The operations which cannot be merged,
+ * such as the publishers, the keyset pagination on other properties than the identifier, the
+ * paginated projections, which have no identifier to paginate by, or the work run in a session,
+ * fail with a {@link HibernateException}; they are called on a shard provider instead.
+ *
+ * <p>A new entity without identifier is saved on the shards in turn, so the identifiers generated
+ * by every shard must belong to it, e.g. sequences starting at the index of the shard and
+ * incremented by the number of shards for the {@link #modulo(int)} shard function. The scattered
+ * reads run on the executor, outside of the transaction of the calling thread; the routed
+ * operations and the writes run on the calling thread.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class ShardedHibernatePersistenceProvider extends ForwardingHibernatePersistenceProvider {
+
+  private static final Logger LOG = Logger.getLogger(ShardedHibernatePersistenceProvider.class);
+  private static final Pattern ORDER_BY = Pattern.compile("\\border\\s+by\\b",
+      Pattern.CASE_INSENSITIVE);
+  private static final Pattern AGGREGATE = Pattern.compile(
+      "^\\s*select\\s+(count|sum|min|max|avg)\\s*\\(\\s*(distinct\\b)?", Pattern.CASE_INSENSITIVE);
+
+  private final List<HibernatePersistenceProvider> shards;
+  private final ToIntFunction<Object> shardFunction;
+  private final Executor executor;
+  private final AtomicInteger placement = new AtomicInteger();
+
+  /**
+   * Constructor.
+   *
+   * @param shards the providers of the shards
+   * @param shardFunction the function of an identifier giving the index of its shard
+   * @param executor the executor of the scattered reads
+   */
+  public ShardedHibernatePersistenceProvider(List<? extends HibernatePersistenceProvider> shards,
+      ToIntFunction<Object> shardFunction, Executor executor) {
+    super(first(shards));
+    this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+    this.shardFunction = shardFunction;
+    this.executor = executor;
+  }
+
+  private static HibernatePersistenceProvider first(
+      List<? extends HibernatePersistenceProvider> shards) {
+    if (shards == null || shards.isEmpty()) {
+      throw new IllegalArgumentException("There must be at least one shard.");
+    }
+    return shards.get(0);
+  }
+
+  /**
+   * Get the shard function placing the identifiers by their value modulo the number of shards,
+   * or by their hash code if they are not integral numbers.
+   *
+   * @param shardCount the number of shards
+   * @return the shard function
+   */
+  public static ToIntFunction<Object> modulo(int shardCount) {
+    return id -> {
+      if (id instanceof Long || id instanceof Integer || id instanceof Short) {
+        return (int) Math.floorMod(((Number) id).longValue(), (long) shardCount);
+      }
+      return Math.floorMod(id.hashCode(), shardCount);
+    };
+  }
+
+  /**
+   * Get the number of shards.
+   *
+   * @return the number of shards
+   */
+  public int getShardCount() {
+    return shards.size();
+  }
+
+  /**
+   * Get the provider of a shard.
+   *
+   * @param index the index of the shard
+   * @return the shard provider
+   */
+  public HibernatePersistenceProvider getShard(int index) {
+    return shards.get(index);
+  }
+
+  /**
+   * Get the index of the shard of an identifier.
+   *
+   * @param id the identifier
+   * @return the index of the shard
+   * @throws HibernateException if the shard function gives an index out of range
+   */
+  public int shardOf(Object id) {
+    int index = shardFunction.applyAsInt(id);
+    if (index < 0 || index >= shards.size()) {
+      throw new HibernateException("Shard function placed the identifier " + id
+          + " on the shard " + index + " out of " + shards.size());
+    }
+    return index;
+  }
+
+  /**
+   * The session of one shard has no meaning for the whole provider.
+   *
+   * @throws HibernateException always
+   */
+  @Override
+  public Session getSession() {
+    throw new HibernateException("There is no session across the shards, get it from a shard");
+  }
+
+  /**
+   * Set the cacheable entity classes of every shard.
+   *
+   * @param cacheableEntityClasses the cacheable entity classes
+   */
+  @Override
+  public void setCacheableEntityClasses(Collection<? extends Class<?>> cacheableEntityClasses) {
+    shards.forEach(shard -> shard.setCacheableEntityClasses(cacheableEntityClasses));
+  }
+
+  @Override
+  protected <R> R execute(Operation operation,
+      Function<? super HibernatePersistenceProvider, R> call) {
+    String name = operation.getName();
+    Object[] arguments = operation.getArguments();
+    switch (name) {
+      case "findById":
+      case "deleteById":
+      case "updateFields":
+        return call.apply(shards.get(shardOf(arguments[1])));
+      case "save":
+        return save((Persistable<?>) arguments[0], call);
+      case "update":
+        return call.apply(shards.get(shardOf((Persistable<?>) arguments[0])));
+      case "delete":
+        return call.apply(shards.get(shardOf((Persistable<?>) arguments[1])));
+      case "deleteByEntityOrId":
+        return call.apply(shards.get(arguments[1] == null ? shardOf(arguments[2])
+            : shardOf((Persistable<?>) arguments[1])));
+      case "prepareQuery":
+      case "prepareNamedQuery":
+        return super.execute(operation, call); // the shards share their mappings
+      case "findByKeyset":
+        throw unsupported(name + " on other properties than the identifier, use findAfterId");
+      case "findProjectionByCriteria":
+        if (arguments.length == 6 && ((int) arguments[3] > 0 || (int) arguments[4] >= 0)) {
+          throw unsupported(name + " with pagination, the projections have no identifier");
+        }
+        break;
+      case "updateByCriteria":
+      case "deleteByCriteria":
+      case "bulkScroll":
+        return gather(name, null, shards.stream().map(call).collect(Collectors.toList()));
+      default:
+        break;
+    }
+    String query = query(operation);
+    if (query != null && (name.startsWith("find") || name.startsWith("stream"))
+        && ORDER_BY.matcher(query).find()) {
+      throw unsupported(name + " of an ordered query, its order cannot be merged");
+    }
+    if (name.startsWith("stream")) {
+      @SuppressWarnings("unchecked")
+      R stream = (R) shards.stream().flatMap(shard -> (Stream<?>) call.apply(shard));
+      return stream;
+    }
+    if (name.startsWith("find") || name.startsWith("count")) {
+      return gather(name, query, scatter(call));
+    }
+    throw unsupported(name);
+  }
+
+  /**
+   * Get the query of the operation: its query string, the query string of its named query, or an
+   * empty string if the named query cannot be looked up; null if it is not a query operation.
+   */
+  private String query(Operation operation) {
+    for (Object argument : operation.getArguments()) {
+      if (argument instanceof PreparedQuery) {
+        PreparedQuery<?> preparedQuery = (PreparedQuery<?>) argument;
+        return preparedQuery.isNamed() ? namedQuery(preparedQuery.getQuery())
+            : preparedQuery.getQuery();
+      }
+      if (argument instanceof String) {
+        return operation.getName().contains("NamedQuery") ? namedQuery((String) argument)
+            : (String) argument;
+      }
+    }
+    return null;
+  }
+
+  private String namedQuery(String queryName) {
+    try {
+      SessionFactoryImplementor factory = (SessionFactoryImplementor) shards.get(0).getSession()
+          .getSessionFactory();
+      NamedQueryDefinition definition = factory.getNamedQuery(queryName);
+      if (definition == null) {
+        definition = factory.getNamedSQLQuery(queryName);
+      }
+      return definition == null ? "" : definition.getQueryString();
+    } catch (HibernateException | IllegalStateException e) {
+      return ""; // no session to look the named query up with
+    }
+  }
+
+  private <R> R save(Persistable<?> entity,
+      Function<? super HibernatePersistenceProvider, R> call) {
+    int index = shardOf(entity);
+    R saved = call.apply(shards.get(index));
+    Object id = entity.getId();
+    if (id != null && shardOf(id) != index) {
+      LOG.warnf("Entity %s saved on the shard %d but its identifier %s belongs to the shard %d",
+          entity.getClass().getName(), index, id, shardOf(id));
+    }
+    return saved;
+  }
+
+  private int shardOf(Persistable<?> entity) {
+    Object id = entity.getId();
+    if (id != null) {
+      return shardOf(id);
+    }
+    return (placement.getAndIncrement() & Integer.MAX_VALUE) % shards.size();
+  }
+
+  private static HibernateException unsupported(String operation) {
+    return new HibernateException("Operation " + operation
+        + " is not supported across the shards, call it on a shard provider");
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The identifiers are grouped by shard and every shard is read once.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    List<List<T>> found = onShards(group(ids, this::shardOf),
+        (shard, shardIds) -> shard.findByIds(entityClazz, shardIds));
+    return merge(found);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The identifiers are grouped by shard and every shard is read once.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findMapByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    Map<ID, T> found = new LinkedHashMap<>();
+    onShards(group(ids, this::shardOf),
+        (shard, shardIds) -> shard.findMapByIds(entityClazz, shardIds)).forEach(found::putAll);
+    return found;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The page is taken from the entities of all the shards sorted by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    return page(entityClazz, firstResult, maxResults, null,
+        () -> super.findAll(entityClazz, firstResult, maxResults));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The page is taken from the entities of all the shards sorted by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByCriteria(
+      Class<T> entityClazz, int firstResult, int maxResults, List<Criterion> criterions) {
+    return page(entityClazz, firstResult, maxResults, criterions,
+        () -> super.findByCriteria(entityClazz, firstResult, maxResults, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The page is taken from the entities of all the shards sorted by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByCriteria(
+      Class<T> entityClazz, boolean cacheable, int firstResult, int maxResults,
+      List<Criterion> criterions) {
+    return page(entityClazz, firstResult, maxResults, criterions,
+        () -> super.findByCriteria(entityClazz, cacheable, firstResult, maxResults, criterions));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Every shard reads a page after the identifier and the page is taken from their entities
+   * sorted by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findAfterId(
+      Class<T> entityClazz, ID lastId, int maxResults, List<Criterion> criterions) {
+    List<KeysetPage<T>> pages = scatter(
+        shard -> shard.findAfterId(entityClazz, lastId, maxResults, criterions));
+    List<T> merged = merge(pages.stream().map(KeysetPage::getContent)
+        .collect(Collectors.toList()));
+    boolean hasNext = merged.size() > maxResults || pages.stream().anyMatch(KeysetPage::hasNext);
+    if (!hasNext) {
+      return new KeysetPage<>(merged, null);
+    }
+    List<T> content = new ArrayList<>(merged.subList(0, Math.min(maxResults, merged.size())));
+    String identifier = pages.stream().filter(KeysetPage::hasNext)
+        .map(page -> page.getNext().getProperties()[0]).findFirst()
+        .orElseGet(() -> identifierPropertyName(entityClazz));
+    Object last = content.get(content.size() - 1).getId();
+    return new KeysetPage<>(content, Keyset.of(identifier).after(last));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The identifiers are grouped by shard and the shards are written one after the other.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int deleteByIds(
+      Class<T> entityClazz, Collection<ID> ids) {
+    return onShards(group(ids, this::shardOf),
+        (shard, shardIds) -> shard.deleteByIds(entityClazz, shardIds))
+        .stream().mapToInt(Integer::intValue).sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The entities are grouped by shard and the shards are written one after the other.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> int deleteAllInBatch(
+      Class<T> entityClazz, Collection<T> entities) {
+    return onShards(group(entities, this::shardOf),
+        (shard, shardEntities) -> shard.deleteAllInBatch(entityClazz, shardEntities))
+        .stream().mapToInt(Integer::intValue).sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The entities are grouped by shard and the shards are written one after the other.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void bulkInsert(
+      Collection<T> entities) {
+    onShards(group(entities, this::shardOf), (shard, shardEntities) -> {
+      shard.bulkInsert(shardEntities);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The entities are grouped by shard and the shards are written one after the other.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void bulkUpdate(
+      Collection<T> entities) {
+    onShards(group(entities, this::shardOf), (shard, shardEntities) -> {
+      shard.bulkUpdate(shardEntities);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The entities are grouped by shard and the shards are written one after the other.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void bulkDelete(
+      Collection<T> entities) {
+    onShards(group(entities, this::shardOf), (shard, shardEntities) -> {
+      shard.bulkDelete(shardEntities);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The entities are grouped by shard and the shards are written one after the other; the
+   * saved entities are returned sorted by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    return merge(onShards(group(entities, this::shardOf), HibernatePersistenceProvider::saveAll));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The entities are grouped by shard and the shards are written one after the other; the
+   * updated entities are returned sorted by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    return merge(onShards(group(entities, this::shardOf),
+        HibernatePersistenceProvider::updateAll));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The entities are grouped by shard and the shards are written one after the other.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(
+      Class<T> entityClazz, Collection<T> entities) {
+    onShards(group(entities, this::shardOf), (shard, shardEntities) -> {
+      shard.deleteAll(entityClazz, shardEntities);
+      return null;
+    });
+  }
+
+  /**
+   * Read the first <code>firstResult + maxResults</code> entities sorted by identifier of every
+   * shard and take the page from their merge, or gather all the entities without maximum.
+   */
+  private <ID extends Serializable, T extends Persistable<ID>> List<T> page(
+      Class<T> entityClazz, int firstResult, int maxResults, List<Criterion> criterions,
+      Supplier<List<T>> unpaged) {
+    if (maxResults < 0) {
+      return unpaged.get();
+    }
+    int first = Math.max(firstResult, 0);
+    if (maxResults == 0) {
+      return new ArrayList<>();
+    }
+    int limit = (int) Math.min((long) first + maxResults, Integer.MAX_VALUE);
+    List<T> merged = merge(scatter(
+        shard -> shard.findAfterId(entityClazz, null, limit, criterions).getContent()));
+    return first >= merged.size() ? new ArrayList<>()
+        : new ArrayList<>(merged.subList(first, Math.min(limit, merged.size())));
+  }
+
+  private String identifierPropertyName(Class<?> entityClazz) {
+    return shards.get(0).getSession().getSessionFactory().getClassMetadata(entityClazz)
+        .getIdentifierPropertyName();
+  }
+
+  /**
+   * Call every shard in parallel, on the executor, and wait for their results.
+   */
+  private <R> List<R> scatter(Function<? super HibernatePersistenceProvider, R> call) {
+    if (shards.size() == 1) {
+      return Collections.singletonList(call.apply(shards.get(0)));
+    }
+    List<CompletableFuture<R>> futures = new ArrayList<>(shards.size());
+    for (HibernatePersistenceProvider shard : shards) {
+      futures.add(CompletableFuture.supplyAsync(() -> call.apply(shard), executor));
+    }
+    List<R> results = new ArrayList<>(shards.size());
+    try {
+      for (CompletableFuture<R> future : futures) {
+        results.add(future.join());
+      }
+    } catch (CompletionException e) {
+      futures.forEach(future -> future.cancel(false));
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+    return results;
+  }
+
+  /**
+   * Gather the results of the shards: merge the lists, sorted by identifier unless they are the
+   * results of a query, and the maps, reduce the aggregates and check that any other single result
+   * was found at most once.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <R> R gather(String operation, String query, List<R> results) {
+    List<Object> found = new ArrayList<>(results.size());
+    for (R result : results) {
+      if (result != null) {
+        found.add(result);
+      }
+    }
+    if (found.isEmpty()) {
+      return null;
+    }
+    Object first = found.get(0);
+    if (first instanceof List) {
+      if (query == null) {
+        return (R) merge((List) found);
+      }
+      List<Object> concatenated = new ArrayList<>();
+      found.forEach(result -> concatenated.addAll((List<?>) result));
+      return (R) concatenated;
+    }
+    if (first instanceof Map) {
+      Map<Object, Object> map = new LinkedHashMap<>();
+      found.forEach(result -> map.putAll((Map<?, ?>) result));
+      return (R) map;
+    }
+    String aggregate = query == null || first instanceof Object[] ? null : aggregate(query);
+    if ("min".equals(aggregate)) {
+      return (R) Collections.min((List) found);
+    }
+    if ("max".equals(aggregate)) {
+      return (R) Collections.max((List) found);
+    }
+    if (aggregate != null && !"count".equals(aggregate) && !"sum".equals(aggregate)) {
+      if (found.size() > 1) {
+        throw unsupported(operation + " of " + aggregate + " found on " + found.size()
+            + " shards, select its sum and count instead");
+      }
+      return (R) first; // an aggregate over no rows is null, so the other shards have none
+    }
+    if (first instanceof Number && (aggregate != null || operation.startsWith("count"))
+        || !operation.startsWith("find")) {
+      return (R) sum((List) found);
+    }
+    if (found.size() > 1) {
+      throw new NonUniqueResultException(found.size());
+    }
+    return (R) first;
+  }
+
+  /**
+   * Get the aggregate function selected by a query, with the distinct qualifier which prevents
+   * summing counts and sums across the shards, or null if it selects none.
+   */
+  private static String aggregate(String query) {
+    Matcher matcher = AGGREGATE.matcher(query);
+    if (!matcher.find()) {
+      return null;
+    }
+    String function = matcher.group(1).toLowerCase(Locale.ROOT);
+    return matcher.group(2) == null || function.equals("min") || function.equals("max")
+        ? function : function + " distinct";
+  }
+
+  /**
+   * Merge the lists of the shards, sorted by identifier when they are comparable entities.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <T> List<T> merge(List<List<T>> lists) {
+    List<T> merged = new ArrayList<>();
+    lists.forEach(merged::addAll);
+    for (T element : merged) {
+      if (!(element instanceof Persistable)
+          || !(((Persistable<?>) element).getId() instanceof Comparable)) {
+        return merged;
+      }
+    }
+    merged.sort(Comparator.comparing(e -> (Comparable) ((Persistable<?>) e).getId()));
+    return merged;
+  }
+
+  /**
+   * Sum the numbers, in the type of the first one.
+   */
+  private static Number sum(List<Number> numbers) {
+    Number first = numbers.get(0);
+    if (first instanceof BigDecimal) {
+      return numbers.stream().map(n -> (BigDecimal) n).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+    if (first instanceof BigInteger) {
+      return numbers.stream().map(n -> (BigInteger) n).reduce(BigInteger.ZERO, BigInteger::add);
+    }
+    if (first instanceof Double || first instanceof Float) {
+      double sum = numbers.stream().mapToDouble(Number::doubleValue).sum();
+      return first instanceof Double ? (Number) sum : (Number) (float) sum;
+    }
+    long sum = numbers.stream().mapToLong(Number::longValue).sum();
+    if (first instanceof Integer) {
+      return Math.toIntExact(sum);
+    }
+    return first instanceof Short ? (Number) (short) sum : (Number) sum;
+  }
+
+  /**
+   * Group the items by the index of their shard, in the order of the shards.
+   */
+  private <E> Map<Integer, List<E>> group(Collection<E> items, ToIntFunction<E> shard) {
+    Map<Integer, List<E>> groups = new TreeMap<>();
+    for (E item : items) {
+      groups.computeIfAbsent(shard.applyAsInt(item), k -> new ArrayList<>()).add(item);
+    }
+    return groups;
+  }
+
+  /**
+   * Call the shards of the groups one after the other, on the calling thread.
+   */
+  private <E, R> List<R> onShards(Map<Integer, List<E>> groups,
+      BiFunction<HibernatePersistenceProvider, List<E>, R> call) {
+    List<R> results = new ArrayList<>(groups.size());
+    groups.forEach((index, items) -> results.add(call.apply(shards.get(index), items)));
+    return results;
+  }
+}
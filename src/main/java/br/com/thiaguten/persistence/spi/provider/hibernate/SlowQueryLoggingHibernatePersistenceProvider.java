@@ -0,0 +1,261 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.SlowQueryLog;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * {@link HibernatePersistenceProvider} decorator recording the operations slower than the threshold
+ * of a {@link SlowQueryLog}, with their query, bound parameters, entity class, rows and elapsed
+ * time.
+ *
+ * <p>The query is the HQL/JPQL text, the name of a named query or, for criteria operations, the
+ * HQL restriction equivalent to the criterions when they have one, otherwise only the class names
+ * of the criterions, whose values are then not recorded since they cannot be keyed by property
+ * for the redactor. The parameters are the named or positional query parameters, the criterion
+ * values keyed by property name, the identifiers and the updated values; they are only collected
+ * for the slow operations whose parameters are sampled. The operations returning a stream or a
+ * publisher are only timed until it is returned.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class SlowQueryLoggingHibernatePersistenceProvider
+    extends ForwardingHibernatePersistenceProvider {
+
+  private static final Pattern RESTRICTION_TOKEN = Pattern.compile("\\be\\.([A-Za-z0-9_$]+)|\\?");
+
+  private final SlowQueryLog log;
+  private volatile SessionFactory sessionFactory;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate the provider the operations are forwarded to
+   * @param log the log the slow operations are recorded in
+   */
+  public SlowQueryLoggingHibernatePersistenceProvider(HibernatePersistenceProvider delegate,
+      SlowQueryLog log) {
+    super(delegate);
+    if (log == null) {
+      throw new IllegalArgumentException("Slow query log must not be null.");
+    }
+    this.log = log;
+  }
+
+  /**
+   * Get the log the slow operations are recorded in.
+   *
+   * @return the slow query log
+   */
+  public SlowQueryLog getLog() {
+    return log;
+  }
+
+  @Override
+  protected <R> R execute(Operation operation,
+      Function<? super HibernatePersistenceProvider, R> call) {
+    long start = System.nanoTime();
+    long rows = 0;
+    Throwable error = null;
+    try {
+      R result = super.execute(operation, call);
+      rows = rows(operation, result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      error = e;
+      throw e;
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      if (log.isSlow(elapsed)) {
+        log.record(operation.getName(), operation.getEntityClazz(), query(operation),
+            () -> parameters(operation), rows, elapsed, error);
+      }
+    }
+  }
+
+  private String query(Operation operation) {
+    for (Object argument : operation.getArguments()) {
+      if (argument instanceof String) {
+        return operation.getName().contains("NamedQuery") ? "named query " + argument
+            : (String) argument;
+      }
+      if (argument instanceof PreparedQuery) {
+        PreparedQuery<?> preparedQuery = (PreparedQuery<?>) argument;
+        return preparedQuery.isNamed() ? "named query " + preparedQuery.getQuery()
+            : preparedQuery.getQuery();
+      }
+    }
+    List<Criterion> criterions = criterions(operation);
+    if (criterions == null) {
+      return null;
+    }
+    Class<?> entityClazz = operation.getEntityClazz();
+    CriteriaShape shape = shape(entityClazz, criterions);
+    String entityName = entityClazz == null ? "?" : entityClazz.getSimpleName();
+    if (shape == null) {
+      // the criterions render their values, only their classes are safe to record
+      return "criteria " + entityName + " " + criterions.stream()
+          .map(criterion -> criterion.getClass().getSimpleName())
+          .collect(Collectors.toList());
+    }
+    return "criteria " + entityName + " e" + shape.getRestriction();
+  }
+
+  private Map<String, Object> parameters(Operation operation) {
+    Map<String, Object> parameters = new LinkedHashMap<>();
+    Object[] arguments = operation.getArguments();
+    switch (operation.getName()) {
+      case "findById":
+      case "deleteById":
+      case "updateFields":
+        parameters.put("id", arguments[1]);
+        if (arguments.length == 4) {
+          parameters.put("version", arguments[2]);
+        }
+        break;
+      case "deleteByEntityOrId":
+        parameters.put("id", arguments[2]);
+        break;
+      case "findByIds":
+      case "findMapByIds":
+      case "deleteByIds":
+        parameters.put("ids", arguments[1]);
+        break;
+      case "findAfterId":
+        parameters.put("lastId", arguments[1]);
+        break;
+      case "findByKeyset":
+        parameters.put("keyset", arguments[1]);
+        break;
+      default:
+        break;
+    }
+    for (Object argument : arguments) {
+      if (argument instanceof Object[]) {
+        Object[] params = (Object[]) argument;
+        for (int i = 0; i < params.length; i++) {
+          parameters.put("?" + i, params[i]);
+        }
+      } else if (argument instanceof Map) {
+        ((Map<?, ?>) argument).forEach((name, value) -> parameters.put(String.valueOf(name),
+            value));
+      }
+    }
+    List<Criterion> criterions = criterions(operation);
+    if (criterions != null) {
+      putCriterionValues(shape(operation.getEntityClazz(), criterions), parameters);
+    }
+    return parameters;
+  }
+
+  /**
+   * Put the criterion values keyed by the name of the property each one is bound against, so the
+   * redactor sees the property name for every value. The values bound against the same property,
+   * such as both bounds of a between or the values of an in list, are put as a list. Without a
+   * shape the values cannot be keyed by property, so none is put.
+   */
+  private static void putCriterionValues(CriteriaShape shape, Map<String, Object> parameters) {
+    if (shape == null) {
+      return;
+    }
+    List<Object> values = shape.getValues();
+    Map<String, List<Object>> byProperty = new LinkedHashMap<>();
+    Matcher matcher = RESTRICTION_TOKEN.matcher(shape.getRestriction());
+    String property = null;
+    int index = 0;
+    while (matcher.find()) {
+      if (matcher.group(1) != null) {
+        property = matcher.group(1);
+      } else if (index < values.size()) {
+        String name = property == null ? "?" + index : property;
+        byProperty.computeIfAbsent(name, key -> new ArrayList<>()).add(values.get(index++));
+      }
+    }
+    byProperty.forEach((name, propertyValues) -> {
+      Object value = propertyValues.size() == 1 ? propertyValues.get(0) : propertyValues;
+      parameters.merge(name, value, (previous, next) -> Arrays.asList(previous, next));
+    });
+  }
+
+  /**
+   * Get the shape of the criterions, rendered against the persister of the entity class, or null
+   * if they have none or it cannot be rendered.
+   */
+  private CriteriaShape shape(Class<?> entityClazz, List<Criterion> criterions) {
+    SessionFactory factory = sessionFactory();
+    ClassMetadata metadata = factory == null || entityClazz == null ? null
+        : factory.getClassMetadata(entityClazz);
+    try {
+      return metadata instanceof EntityPersister
+          ? CriteriaShape.of((EntityPersister) metadata, criterions) : null;
+    } catch (RuntimeException e) {
+      return null; // e.g. an unknown property, the operation itself failed with it
+    }
+  }
+
+  /**
+   * Get the session factory of the delegate, remembered from the first session it could be got
+   * from, since a slow operation may be recorded outside of any transaction.
+   */
+  private SessionFactory sessionFactory() {
+    SessionFactory factory = sessionFactory;
+    if (factory == null) {
+      try {
+        factory = getSession().getSessionFactory();
+        sessionFactory = factory;
+      } catch (RuntimeException e) {
+        return null; // no current session, only the classes of the criterions are logged
+      }
+    }
+    return factory;
+  }
+
+  /**
+   * Get the criterions of the call: the last argument which is a list of criterions.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Criterion> criterions(Operation operation) {
+    List<Criterion> criterions = null;
+    for (Object argument : operation.getArguments()) {
+      if (argument instanceof List) {
+        List<?> list = (List<?>) argument;
+        if (list.isEmpty() || list.get(0) instanceof Criterion) {
+          criterions = (List<Criterion>) list;
+        }
+      }
+    }
+    return criterions;
+  }
+}
@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import org.hibernate.HibernateException;
+
+/**
+ * Thrown when a provider operation, together with the lazy loads which followed it, or a
+ * transaction prepared more JDBC statements than its budget.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ * @see StatementBudgetHibernatePersistenceProvider
+ */
+public class StatementBudgetExceededException extends HibernateException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String operation;
+  private final Class<?> entityClazz;
+  private final long statements;
+  private final int budget;
+  private final boolean transaction;
+
+  /**
+   * Constructor.
+   *
+   * @param operation the name of the operation which prepared the most statements
+   * @param entityClazz the entity class of the operation or null
+   * @param statements the number of statements prepared
+   * @param budget the budget of statements
+   * @param transaction true if the budget is per transaction, false if it is per call
+   */
+  public StatementBudgetExceededException(String operation, Class<?> entityClazz,
+      long statements, int budget, boolean transaction) {
+    super((transaction ? "Transaction" : "Call") + " prepared " + statements
+        + " statements, over the budget of " + budget + (transaction ? " per transaction" : "")
+        + ", from " + operation
+        + (entityClazz == null ? "" : " of " + entityClazz.getName()));
+    this.operation = operation;
+    this.entityClazz = entityClazz;
+    this.statements = statements;
+    this.budget = budget;
+    this.transaction = transaction;
+  }
+
+  /**
+   * Get the name of the provider operation which prepared the statements; for a transaction, the
+   * one which prepared the most statements.
+   *
+   * @return the name of the operation or null if the transaction had no operation
+   */
+  public String getOperation() {
+    return operation;
+  }
+
+  /**
+   * Get the entity class of the operation.
+   *
+   * @return the entity class or null if unknown
+   */
+  public Class<?> getEntityClazz() {
+    return entityClazz;
+  }
+
+  /**
+   * Get the number of statements prepared.
+   *
+   * @return the number of statements
+   */
+  public long getStatements() {
+    return statements;
+  }
+
+  /**
+   * Get the budget of statements.
+   *
+   * @return the budget
+   */
+  public int getBudget() {
+    return budget;
+  }
+
+  /**
+   * Check if the budget is per transaction.
+   *
+   * @return true if the budget is per transaction, false if it is per call
+   */
+  public boolean isTransaction() {
+    return transaction;
+  }
+}
@@ -0,0 +1,294 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Transaction;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.jboss.logging.Logger;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.transaction.Synchronization;
+
+/**
+ * {@link HibernatePersistenceProvider} decorator guarding against N+1 selects and statement
+ * explosions: it counts the JDBC statements prepared by every operation and by every transaction,
+ * and warns or fails when a count goes over its budget, reporting the originating operation and
+ * entity class.
+ *
+ * <p>Within a transaction, the statements of an operation include the lazy loads which follow it
+ * until the next operation or the end of the transaction, so a <code>findAll</code> whose results
+ * then load their associations one by one is reported. Outside a transaction, only the statements
+ * of the operation itself are counted. The budget of a transaction is checked before it commits;
+ * a transaction which rolls back is only warned about. A transaction begun by the delegate itself,
+ * such as behind declarative transactions, is budgeted from its first statement.
+ *
+ * <p>The statements are counted by the {@link StatementCountingInspector}, which must be installed
+ * in the session factory; without it every count is zero.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class StatementBudgetHibernatePersistenceProvider
+    extends ForwardingHibernatePersistenceProvider {
+
+  private static final Logger LOG = Logger.getLogger(
+      StatementBudgetHibernatePersistenceProvider.class);
+
+  private final ThreadLocal<Map<Transaction, Scope>> scopes =
+      ThreadLocal.withInitial(() -> Collections.synchronizedMap(new IdentityHashMap<>()));
+  private volatile int callBudget;
+  private volatile int transactionBudget;
+  private volatile boolean failing;
+
+  /**
+   * Constructor warning about the operations and transactions over their budget.
+   *
+   * @param delegate the provider the operations are forwarded to
+   * @param callBudget the maximum number of statements of an operation and its lazy loads
+   * @param transactionBudget the maximum number of statements of a transaction
+   */
+  public StatementBudgetHibernatePersistenceProvider(HibernatePersistenceProvider delegate,
+      int callBudget, int transactionBudget) {
+    super(delegate);
+    setCallBudget(callBudget);
+    setTransactionBudget(transactionBudget);
+  }
+
+  /**
+   * Get the maximum number of statements of an operation and its lazy loads.
+   *
+   * @return the budget per call
+   */
+  public int getCallBudget() {
+    return callBudget;
+  }
+
+  /**
+   * Set the maximum number of statements of an operation and its lazy loads.
+   *
+   * @param callBudget the budget per call
+   */
+  public void setCallBudget(int callBudget) {
+    if (callBudget < 0) {
+      throw new IllegalArgumentException("Budget must not be negative.");
+    }
+    this.callBudget = callBudget;
+  }
+
+  /**
+   * Get the maximum number of statements of a transaction.
+   *
+   * @return the budget per transaction
+   */
+  public int getTransactionBudget() {
+    return transactionBudget;
+  }
+
+  /**
+   * Set the maximum number of statements of a transaction.
+   *
+   * @param transactionBudget the budget per transaction
+   */
+  public void setTransactionBudget(int transactionBudget) {
+    if (transactionBudget < 0) {
+      throw new IllegalArgumentException("Budget must not be negative.");
+    }
+    this.transactionBudget = transactionBudget;
+  }
+
+  /**
+   * Set if going over a budget throws a {@link StatementBudgetExceededException} instead of
+   * logging a warning, false by default.
+   *
+   * @param failing true to fail, false to warn
+   */
+  public void setFailing(boolean failing) {
+    this.failing = failing;
+  }
+
+  @Override
+  protected <R> R execute(Operation operation,
+      Function<? super HibernatePersistenceProvider, R> call) {
+    Scope scope = scope();
+    if (scope != null) {
+      scope.endCall(true);
+    }
+    long start = StatementCountingInspector.getCount();
+    ScopeListener listener = null;
+    if (scope == null && StatementCountingInspector.getListener() == null) {
+      listener = new ScopeListener(operation, start);
+      StatementCountingInspector.setListener(listener);
+    }
+    boolean completed = false;
+    try {
+      R result = super.execute(operation, call);
+      completed = true;
+      return result;
+    } finally {
+      if (listener != null && StatementCountingInspector.getListener() == listener) {
+        StatementCountingInspector.setListener(null);
+      }
+      long statements = StatementCountingInspector.getCount() - start;
+      boolean over = completed && statements > callBudget;
+      if (scope != null) {
+        scope.startCall(operation, start, over);
+      }
+      if (over) {
+        exceeded(new StatementBudgetExceededException(operation.getName(),
+            operation.getEntityClazz(), statements, callBudget, false), true);
+      }
+    }
+  }
+
+  private void exceeded(StatementBudgetExceededException e, boolean fail) {
+    if (fail && failing) {
+      throw e;
+    }
+    LOG.warn(e.getMessage());
+  }
+
+  /**
+   * Get the scope of the active transaction of the current thread, registering it on the first
+   * operation of the transaction.
+   */
+  private Scope scope() {
+    Transaction transaction;
+    try {
+      transaction = getDelegate().getSession().getTransaction();
+    } catch (HibernateException | IllegalStateException e) {
+      return null; // no session, or a closed one, outside of a transaction
+    }
+    if (transaction == null || transaction.getStatus() != TransactionStatus.ACTIVE) {
+      return null;
+    }
+    Map<Transaction, Scope> transactionScopes = scopes.get();
+    Scope scope = transactionScopes.get(transaction);
+    if (scope == null) {
+      scope = new Scope(transaction, transactionScopes);
+      transaction.registerSynchronization(scope);
+      transactionScopes.put(transaction, scope);
+    }
+    return scope;
+  }
+
+  /**
+   * Listener of the statements of an operation called outside of a transaction, registering the
+   * scope of the transaction the delegate begins, if any, on its first statement.
+   */
+  private final class ScopeListener implements Runnable {
+
+    private final Operation operation;
+    private final long operationStart;
+
+    private ScopeListener(Operation operation, long operationStart) {
+      this.operation = operation;
+      this.operationStart = operationStart;
+    }
+
+    @Override
+    public void run() {
+      StatementCountingInspector.setListener(null); // looking the scope up prepares no statement
+      Scope scope = scope();
+      if (scope == null) {
+        StatementCountingInspector.setListener(this);
+      } else {
+        scope.startCall(operation, operationStart, false);
+      }
+    }
+  }
+
+  /**
+   * Statements of a transaction and of its last operation.
+   */
+  private final class Scope implements Synchronization {
+
+    private final Transaction transaction;
+    private final Map<Transaction, Scope> owner;
+    private final Thread thread = Thread.currentThread();
+    private final long start = StatementCountingInspector.getCount();
+    private Operation operation;
+    private long operationStart;
+    private boolean reported;
+    private Operation worst;
+    private long worstStatements = -1;
+    private boolean checked;
+
+    private Scope(Transaction transaction, Map<Transaction, Scope> owner) {
+      this.transaction = transaction;
+      this.owner = owner;
+    }
+
+    private void startCall(Operation operation, long operationStart, boolean reported) {
+      this.operation = operation;
+      this.operationStart = operationStart;
+      this.reported = reported;
+    }
+
+    /**
+     * Check the statements of the last operation and of the lazy loads which followed it.
+     */
+    private void endCall(boolean fail) {
+      Operation last = operation;
+      if (last == null) {
+        return;
+      }
+      operation = null;
+      long statements = StatementCountingInspector.getCount() - operationStart;
+      if (statements > worstStatements) {
+        worst = last;
+        worstStatements = statements;
+      }
+      if (!reported && statements > callBudget) {
+        exceeded(new StatementBudgetExceededException(last.getName(), last.getEntityClazz(),
+            statements, callBudget, false), fail);
+      }
+    }
+
+    private void check(boolean fail) {
+      checked = true;
+      endCall(fail);
+      long statements = StatementCountingInspector.getCount() - start;
+      if (statements > transactionBudget) {
+        exceeded(new StatementBudgetExceededException(worst == null ? null : worst.getName(),
+            worst == null ? null : worst.getEntityClazz(), statements, transactionBudget, true),
+            fail);
+      }
+    }
+
+    @Override
+    public void beforeCompletion() {
+      check(true);
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      owner.remove(transaction);
+      // a transaction may be rolled back by another thread, such as a transaction timeout, whose
+      // statement count is not the one of this transaction
+      if (!checked && Thread.currentThread() == thread) {
+        check(false); // rolled back, too late to fail
+      }
+    }
+  }
+}
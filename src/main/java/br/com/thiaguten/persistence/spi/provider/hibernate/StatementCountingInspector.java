@@ -0,0 +1,177 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * {@link StatementInspector} counting the JDBC statements prepared by the current thread.
+ *
+ * <p>It is installed by setting the <code>hibernate.session_factory.statement_inspector</code>
+ * configuration property to the name of this class. The count is kept per thread over all the
+ * session factories using this inspector, so the number of statements of a unit of work is the
+ * difference of two counts taken on its thread, as {@link #start()} does:
+ *
+ * <pre>
+ * StatementCountingInspector.Count count = StatementCountingInspector.start();
+ * provider.findByCriteria(User.class, criterions).forEach(user -&gt; user.getRoles().size());
+ * count.assertAtMost(2); // fails on N+1 selects
+ * </pre>
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ * @see StatementBudgetHibernatePersistenceProvider
+ */
+public class StatementCountingInspector implements StatementInspector {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+  private static final ThreadLocal<Runnable> LISTENER = new ThreadLocal<>();
+
+  private static volatile boolean installed;
+
+  /**
+   * Constructor, called by Hibernate.
+   */
+  public StatementCountingInspector() {
+    installed = true;
+  }
+
+  @Override
+  public String inspect(String sql) {
+    Runnable listener = LISTENER.get();
+    if (listener != null) {
+      listener.run();
+    }
+    COUNT.get()[0]++;
+    return sql;
+  }
+
+  /**
+   * Get the listener notified before every statement prepared by the current thread.
+   *
+   * @return the listener or null
+   */
+  static Runnable getListener() {
+    return LISTENER.get();
+  }
+
+  /**
+   * Set the listener notified before every statement prepared by the current thread, before the
+   * statement is counted.
+   *
+   * @param listener the listener or null to remove it
+   */
+  static void setListener(Runnable listener) {
+    if (listener == null) {
+      LISTENER.remove();
+    } else {
+      LISTENER.set(listener);
+    }
+  }
+
+  /**
+   * Check if a session factory was built with this inspector, otherwise nothing is counted.
+   *
+   * @return true if the inspector is installed
+   */
+  public static boolean isInstalled() {
+    return installed;
+  }
+
+  /**
+   * Get the number of statements prepared so far by the current thread.
+   *
+   * @return the number of statements
+   */
+  public static long getCount() {
+    return COUNT.get()[0];
+  }
+
+  /**
+   * Start counting the statements prepared from now on by the current thread.
+   *
+   * @return the count
+   */
+  public static Count start() {
+    return new Count(getCount());
+  }
+
+  /**
+   * Number of statements prepared by a thread since a given point, with assertions to pin the
+   * statement counts of critical paths in tests.
+   */
+  public static final class Count {
+
+    private final Thread thread;
+    private final long start;
+
+    private Count(long start) {
+      this.thread = Thread.currentThread();
+      this.start = start;
+    }
+
+    /**
+     * Get the number of statements prepared since the count started.
+     *
+     * @return the number of statements
+     * @throws IllegalStateException if called from another thread than the one which started it
+     */
+    public long get() {
+      if (Thread.currentThread() != thread) {
+        throw new IllegalStateException("Statements are counted by the thread "
+            + thread.getName());
+      }
+      return getCount() - start;
+    }
+
+    /**
+     * Assert that the given number of statements were prepared since the count started.
+     *
+     * @param expected the expected number of statements
+     * @throws AssertionError if another number of statements were prepared
+     */
+    public void assertEquals(long expected) {
+      long actual = get();
+      if (actual != expected) {
+        throw new AssertionError(message("Expected " + expected, actual));
+      }
+    }
+
+    /**
+     * Assert that at most the given number of statements were prepared since the count started.
+     *
+     * @param max the maximum number of statements
+     * @throws AssertionError if more statements were prepared
+     */
+    public void assertAtMost(long max) {
+      long actual = get();
+      if (actual > max) {
+        throw new AssertionError(message("Expected at most " + max, actual));
+      }
+    }
+
+    private static String message(String expected, long actual) {
+      return expected + " statements but " + actual + " were prepared"
+          + (installed ? "" : " (" + StatementCountingInspector.class.getSimpleName()
+              + " is not installed)");
+    }
+  }
+}
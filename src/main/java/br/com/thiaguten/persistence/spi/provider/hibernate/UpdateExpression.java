@@ -0,0 +1,149 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Value of a set-based <code>UPDATE</code> computed from a property of the updated row instead of
+ * a literal, e.g. <code>set counter = counter + 1</code>:
+ *
+ * <pre>
+ * provider.updateByCriteria(Counter.class, criterions,
+ *     Collections.singletonMap("counter", UpdateExpression.add("counter", 1)));
+ * </pre>
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ * @see HibernatePersistenceProvider#updateByCriteria(Class, java.util.List, java.util.Map)
+ */
+public final class UpdateExpression implements Serializable {
+
+  private static final long serialVersionUID = 2911416260367013052L;
+
+  private final String property;
+  private final String operator;
+  private final Number operand;
+
+  private UpdateExpression(String property, String operator, Number operand) {
+    if (property == null || property.isEmpty()) {
+      throw new IllegalArgumentException("Update expression must have a property.");
+    }
+    if (operator != null && operand == null) {
+      throw new IllegalArgumentException("Update expression must have an operand.");
+    }
+    this.property = property;
+    this.operator = operator;
+    this.operand = operand;
+  }
+
+  /**
+   * The value of another property of the row.
+   *
+   * @param property the property
+   * @return the expression
+   */
+  public static UpdateExpression property(String property) {
+    return new UpdateExpression(property, null, null);
+  }
+
+  /**
+   * The value of a numeric property of the row plus an amount.
+   *
+   * @param property the property
+   * @param amount the amount
+   * @return the expression
+   */
+  public static UpdateExpression add(String property, Number amount) {
+    return new UpdateExpression(property, "+", amount);
+  }
+
+  /**
+   * The value of a numeric property of the row minus an amount.
+   *
+   * @param property the property
+   * @param amount the amount
+   * @return the expression
+   */
+  public static UpdateExpression subtract(String property, Number amount) {
+    return new UpdateExpression(property, "-", amount);
+  }
+
+  /**
+   * The value of a numeric property of the row multiplied by a factor.
+   *
+   * @param property the property
+   * @param factor the factor
+   * @return the expression
+   */
+  public static UpdateExpression multiply(String property, Number factor) {
+    return new UpdateExpression(property, "*", factor);
+  }
+
+  /**
+   * Get the property the value is computed from.
+   *
+   * @return the property
+   */
+  public String getProperty() {
+    return property;
+  }
+
+  /**
+   * Get the arithmetic operator applied to the property.
+   *
+   * @return the operator or null if the value is the property itself
+   */
+  public String getOperator() {
+    return operator;
+  }
+
+  /**
+   * Get the operand of the arithmetic operator.
+   *
+   * @return the operand or null if the value is the property itself
+   */
+  public Number getOperand() {
+    return operand;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    UpdateExpression that = (UpdateExpression) o;
+    return property.equals(that.property) && Objects.equals(operator, that.operator)
+        && Objects.equals(operand, that.operand);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(property, operator, operand);
+  }
+
+  @Override
+  public String toString() {
+    return operator == null ? property : property + " " + operator + " " + operand;
+  }
+}
@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.cache;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.access.RegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionImplementor;
+
+/**
+ * Access strategy of the {@link LocalRegionFactory} regions.
+ *
+ * <p>A <code>read-only</code> strategy caches the entries on load and on insert and refuses
+ * updates. A <code>nonstrict-read-write</code> strategy caches the entries on load only and evicts
+ * them on update and removal, without locking, so a concurrent load may cache stale data until the
+ * next update of the entry or its time to live elapses.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+abstract class LocalAccessStrategy implements RegionAccessStrategy {
+
+  private final LocalTransactionalRegion region;
+  private final boolean readOnly;
+
+  LocalAccessStrategy(LocalTransactionalRegion region, boolean readOnly) {
+    this.region = region;
+    this.readOnly = readOnly;
+  }
+
+  LocalTransactionalRegion region() {
+    return region;
+  }
+
+  @Override
+  public Object get(SessionImplementor session, Object key, long txTimestamp)
+      throws CacheException {
+    return region.getCache().getIfPresent(key);
+  }
+
+  @Override
+  public boolean putFromLoad(SessionImplementor session, Object key, Object value,
+      long txTimestamp, Object version) throws CacheException {
+    return putFromLoad(session, key, value, txTimestamp, version, false);
+  }
+
+  @Override
+  public boolean putFromLoad(SessionImplementor session, Object key, Object value,
+      long txTimestamp, Object version, boolean minimalPutOverride) throws CacheException {
+    if (minimalPutOverride) {
+      return region.getCache().putIfAbsent(key, value);
+    }
+    region.getCache().put(key, value);
+    return true;
+  }
+
+  @Override
+  public SoftLock lockItem(SessionImplementor session, Object key, Object version)
+      throws CacheException {
+    return null;
+  }
+
+  @Override
+  public SoftLock lockRegion() throws CacheException {
+    return null;
+  }
+
+  @Override
+  public void unlockItem(SessionImplementor session, Object key, SoftLock lock)
+      throws CacheException {
+    evict(key);
+  }
+
+  @Override
+  public void unlockRegion(SoftLock lock) throws CacheException {
+    evictAll();
+  }
+
+  @Override
+  public void remove(SessionImplementor session, Object key) throws CacheException {
+    evict(key);
+  }
+
+  @Override
+  public void removeAll() throws CacheException {
+    evictAll();
+  }
+
+  @Override
+  public void evict(Object key) throws CacheException {
+    region.getCache().invalidate(key);
+  }
+
+  @Override
+  public void evictAll() throws CacheException {
+    region.getCache().clear();
+  }
+
+  boolean afterInsert(Object key, Object value) {
+    if (readOnly) {
+      region.getCache().put(key, value);
+      return true;
+    }
+    return false;
+  }
+
+  boolean update(Object key) {
+    checkWritable();
+    evict(key);
+    return false;
+  }
+
+  boolean afterUpdate(SessionImplementor session, Object key, SoftLock lock) {
+    checkWritable();
+    unlockItem(session, key, lock);
+    return false;
+  }
+
+  private void checkWritable() {
+    if (readOnly) {
+      throw new UnsupportedOperationException("Can't write to a readonly object");
+    }
+  }
+}
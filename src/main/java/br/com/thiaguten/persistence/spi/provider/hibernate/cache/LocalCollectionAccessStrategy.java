@@ -0,0 +1,55 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.cache;
+
+import org.hibernate.cache.internal.DefaultCacheKeysFactory;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+
+/**
+ * Collection access strategy of the {@link LocalRegionFactory}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class LocalCollectionAccessStrategy extends LocalAccessStrategy
+    implements CollectionRegionAccessStrategy {
+
+  LocalCollectionAccessStrategy(LocalCollectionRegion region, boolean readOnly) {
+    super(region, readOnly);
+  }
+
+  @Override
+  public CollectionRegion getRegion() {
+    return (CollectionRegion) region();
+  }
+
+  @Override
+  public Object generateCacheKey(Object id, CollectionPersister persister,
+      SessionFactoryImplementor factory, String tenantIdentifier) {
+    return DefaultCacheKeysFactory.createCollectionKey(id, persister, factory, tenantIdentifier);
+  }
+
+  @Override
+  public Object getCacheKeyId(Object cacheKey) {
+    return DefaultCacheKeysFactory.getCollectionId(cacheKey);
+  }
+}
@@ -0,0 +1,47 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.cache;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.LruCache;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+
+/**
+ * Collection region of the {@link LocalRegionFactory}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class LocalCollectionRegion extends LocalTransactionalRegion implements CollectionRegion {
+
+  LocalCollectionRegion(LocalRegionFactory regionFactory, String name,
+      LruCache<Object, Object> cache, CacheDataDescription metadata) {
+    super(regionFactory, name, cache, metadata);
+  }
+
+  @Override
+  public CollectionRegionAccessStrategy buildAccessStrategy(AccessType accessType)
+      throws CacheException {
+    return new LocalCollectionAccessStrategy(this, checkAccessType(accessType));
+  }
+}
@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.cache;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.internal.DefaultCacheKeysFactory;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Entity access strategy of the {@link LocalRegionFactory}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class LocalEntityAccessStrategy extends LocalAccessStrategy
+    implements EntityRegionAccessStrategy {
+
+  LocalEntityAccessStrategy(LocalEntityRegion region, boolean readOnly) {
+    super(region, readOnly);
+  }
+
+  @Override
+  public EntityRegion getRegion() {
+    return (EntityRegion) region();
+  }
+
+  @Override
+  public Object generateCacheKey(Object id, EntityPersister persister,
+      SessionFactoryImplementor factory, String tenantIdentifier) {
+    return DefaultCacheKeysFactory.createEntityKey(id, persister, factory, tenantIdentifier);
+  }
+
+  @Override
+  public Object getCacheKeyId(Object cacheKey) {
+    return DefaultCacheKeysFactory.getEntityId(cacheKey);
+  }
+
+  @Override
+  public boolean insert(SessionImplementor session, Object key, Object value, Object version)
+      throws CacheException {
+    return false;
+  }
+
+  @Override
+  public boolean afterInsert(SessionImplementor session, Object key, Object value,
+      Object version) throws CacheException {
+    return afterInsert(key, value);
+  }
+
+  @Override
+  public boolean update(SessionImplementor session, Object key, Object value,
+      Object currentVersion, Object previousVersion) throws CacheException {
+    return update(key);
+  }
+
+  @Override
+  public boolean afterUpdate(SessionImplementor session, Object key, Object value,
+      Object currentVersion, Object previousVersion, SoftLock lock) throws CacheException {
+    return afterUpdate(session, key, lock);
+  }
+}
@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.cache;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.LruCache;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.engine.spi.SessionImplementor;
+
+/**
+ * Query results or update timestamps region of the {@link LocalRegionFactory}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class LocalGeneralDataRegion extends LocalRegion
+    implements QueryResultsRegion, TimestampsRegion {
+
+  LocalGeneralDataRegion(LocalRegionFactory regionFactory, String name,
+      LruCache<Object, Object> cache) {
+    super(regionFactory, name, cache);
+  }
+
+  @Override
+  public Object get(SessionImplementor session, Object key) throws CacheException {
+    return getCache().getIfPresent(key);
+  }
+
+  @Override
+  public void put(SessionImplementor session, Object key, Object value) throws CacheException {
+    getCache().put(key, value);
+  }
+
+  @Override
+  public void evict(Object key) throws CacheException {
+    getCache().invalidate(key);
+  }
+
+  @Override
+  public void evictAll() throws CacheException {
+    getCache().clear();
+  }
+}
@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.cache;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.LruCache;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.Region;
+
+import java.util.Map;
+
+/**
+ * Region of the {@link LocalRegionFactory} backed by a {@link LruCache}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+abstract class LocalRegion implements Region {
+
+  private final LocalRegionFactory regionFactory;
+  private final String name;
+  private final LruCache<Object, Object> cache;
+
+  LocalRegion(LocalRegionFactory regionFactory, String name, LruCache<Object, Object> cache) {
+    this.regionFactory = regionFactory;
+    this.name = name;
+    this.cache = cache;
+  }
+
+  LruCache<Object, Object> getCache() {
+    return cache;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public void destroy() throws CacheException {
+    cache.clear();
+  }
+
+  @Override
+  public boolean contains(Object key) {
+    return cache.containsKey(key);
+  }
+
+  @Override
+  public long getSizeInMemory() {
+    return -1; // unknown
+  }
+
+  @Override
+  public long getElementCountInMemory() {
+    return cache.size();
+  }
+
+  @Override
+  public long getElementCountOnDisk() {
+    return 0;
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Map toMap() {
+    return cache.asMap();
+  }
+
+  @Override
+  public long nextTimestamp() {
+    return regionFactory.nextTimestamp();
+  }
+
+  @Override
+  public int getTimeout() {
+    return LocalRegionFactory.TIMEOUT;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" +
+        "name='" + name + '\'' +
+        ", cache=" + cache +
+        '}';
+  }
+}
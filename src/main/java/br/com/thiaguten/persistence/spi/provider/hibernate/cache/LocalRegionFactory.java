@@ -0,0 +1,232 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.cache;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.LruCache;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.access.AccessType;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second level cache region factory keeping the regions in local memory, which needs no external
+ * cache server. Enable it with the <code>hibernate.cache.region.factory_class</code> configuration
+ * property.
+ *
+ * <p>Every region is a {@link LruCache} bounded by weight and with an optional time to live.
+ * Entities, collections and natural ids weigh one, query results weigh their number of rows. The
+ * update timestamps region is never bounded nor expired, since losing a timestamp could serve
+ * stale query results. The regions are configured by the properties:
+ * <ul>
+ * <li><code>hibernate.cache.local.max_weight</code> (default 10000)</li>
+ * <li><code>hibernate.cache.local.time_to_live</code> in seconds (default 0, never expire)</li>
+ * <li><code>hibernate.cache.local.concurrency_level</code> (default 16)</li>
+ * </ul>
+ * The maximum weight and the time to live are overridden per region by the properties
+ * <code>hibernate.cache.local.region.&lt;region name&gt;.max_weight</code> and
+ * <code>hibernate.cache.local.region.&lt;region name&gt;.time_to_live</code>.
+ *
+ * <p>The <code>read-only</code> and <code>nonstrict-read-write</code> access types are supported,
+ * the later being the default.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class LocalRegionFactory implements RegionFactory {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Default maximum weight of a region.
+   */
+  public static final long DEFAULT_MAX_WEIGHT = 10_000;
+
+  /**
+   * Prefix of the configuration properties of the regions.
+   */
+  public static final String PREFIX = "hibernate.cache.local.";
+
+  /**
+   * Maximum weight of a region.
+   */
+  public static final String MAX_WEIGHT = PREFIX + "max_weight";
+
+  /**
+   * Time to live in seconds of the entries of a region.
+   */
+  public static final String TIME_TO_LIVE = PREFIX + "time_to_live";
+
+  /**
+   * Number of segments of a region.
+   */
+  public static final String CONCURRENCY_LEVEL = PREFIX + "concurrency_level";
+
+  /**
+   * Prefix of the configuration properties of a single region.
+   */
+  public static final String REGION_PREFIX = PREFIX + "region.";
+
+  // nextTimestamp() is in milliseconds shifted by 12 bits, so the timeout is 60 seconds
+  static final int TIMEOUT = 60_000 << 12;
+
+  private final AtomicLong timestamp = new AtomicLong();
+  private final transient ConcurrentMap<String, LocalRegion> regions = new ConcurrentHashMap<>();
+  private transient Properties properties = new Properties();
+
+  @Override
+  public void start(SessionFactoryOptions settings, Properties properties) throws CacheException {
+    this.properties = properties;
+  }
+
+  @Override
+  public void stop() {
+    regions.values().forEach(LocalRegion::destroy);
+    regions.clear();
+  }
+
+  @Override
+  public boolean isMinimalPutsEnabledByDefault() {
+    return false;
+  }
+
+  @Override
+  public AccessType getDefaultAccessType() {
+    return AccessType.NONSTRICT_READ_WRITE;
+  }
+
+  /**
+   * Get the next timestamp, in milliseconds shifted by 12 bits and strictly increasing.
+   *
+   * @return the next timestamp
+   */
+  @Override
+  public long nextTimestamp() {
+    long now = System.currentTimeMillis() << 12;
+    return timestamp.accumulateAndGet(now, (last, next) -> next > last ? next : last + 1);
+  }
+
+  @Override
+  public EntityRegion buildEntityRegion(String regionName, Properties properties,
+      CacheDataDescription metadata) throws CacheException {
+    return register(new LocalEntityRegion(this, regionName,
+        newCache(regionName, properties, false), metadata));
+  }
+
+  @Override
+  public NaturalIdRegion buildNaturalIdRegion(String regionName, Properties properties,
+      CacheDataDescription metadata) throws CacheException {
+    return register(new LocalNaturalIdRegion(this, regionName,
+        newCache(regionName, properties, false), metadata));
+  }
+
+  @Override
+  public CollectionRegion buildCollectionRegion(String regionName, Properties properties,
+      CacheDataDescription metadata) throws CacheException {
+    return register(new LocalCollectionRegion(this, regionName,
+        newCache(regionName, properties, false), metadata));
+  }
+
+  @Override
+  public QueryResultsRegion buildQueryResultsRegion(String regionName, Properties properties)
+      throws CacheException {
+    return register(new LocalGeneralDataRegion(this, regionName,
+        newCache(regionName, properties, true)));
+  }
+
+  @Override
+  public TimestampsRegion buildTimestampsRegion(String regionName, Properties properties)
+      throws CacheException {
+    LruCache<Object, Object> cache = new LruCache<>(concurrencyLevel(properties),
+        Long.MAX_VALUE, 0, TimeUnit.SECONDS, (key, value) -> 1);
+    return register(new LocalGeneralDataRegion(this, regionName, cache));
+  }
+
+  /**
+   * Get the names of the regions built by the factory.
+   *
+   * @return the region names
+   */
+  public Set<String> getRegionNames() {
+    return Collections.unmodifiableSet(regions.keySet());
+  }
+
+  /**
+   * Get the cache of the region, which exposes its hit, miss, eviction and expiration statistics.
+   *
+   * @param regionName the region name
+   * @return the cache or null if there is no region of that name
+   */
+  public LruCache<Object, Object> getCache(String regionName) {
+    LocalRegion region = regions.get(regionName);
+    return region == null ? null : region.getCache();
+  }
+
+  private <R extends LocalRegion> R register(R region) {
+    if (regions.putIfAbsent(region.getName(), region) != null) {
+      throw new CacheException("Region [" + region.getName() + "] already exists");
+    }
+    return region;
+  }
+
+  private LruCache<Object, Object> newCache(String regionName, Properties properties,
+      boolean weighRows) {
+    long maxWeight = longProperty(properties, REGION_PREFIX + regionName + ".max_weight",
+        longProperty(properties, MAX_WEIGHT, DEFAULT_MAX_WEIGHT));
+    long timeToLive = longProperty(properties, REGION_PREFIX + regionName + ".time_to_live",
+        longProperty(properties, TIME_TO_LIVE, 0));
+    return new LruCache<>(concurrencyLevel(properties), maxWeight, timeToLive, TimeUnit.SECONDS,
+        (key, value) -> weighRows && value instanceof Collection
+            ? Math.max(1, ((Collection<?>) value).size()) : 1);
+  }
+
+  private int concurrencyLevel(Properties properties) {
+    return (int) longProperty(properties, CONCURRENCY_LEVEL, LruCache.DEFAULT_CONCURRENCY_LEVEL);
+  }
+
+  private long longProperty(Properties properties, String name, long defaultValue) {
+    String value = properties != null ? properties.getProperty(name) : null;
+    if (value == null) {
+      value = this.properties.getProperty(name);
+    }
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new CacheException("Invalid value [" + value + "] of property [" + name + "]", e);
+    }
+  }
+}
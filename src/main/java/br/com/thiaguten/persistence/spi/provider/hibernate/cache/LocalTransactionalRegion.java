@@ -0,0 +1,72 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.cache;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.LruCache;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.TransactionalDataRegion;
+import org.hibernate.cache.spi.access.AccessType;
+
+/**
+ * Entity, collection or natural id region of the {@link LocalRegionFactory}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+abstract class LocalTransactionalRegion extends LocalRegion implements TransactionalDataRegion {
+
+  private final CacheDataDescription metadata;
+
+  LocalTransactionalRegion(LocalRegionFactory regionFactory, String name,
+      LruCache<Object, Object> cache, CacheDataDescription metadata) {
+    super(regionFactory, name, cache);
+    this.metadata = metadata;
+  }
+
+  @Override
+  public boolean isTransactionAware() {
+    return false;
+  }
+
+  @Override
+  public CacheDataDescription getCacheDataDescription() {
+    return metadata;
+  }
+
+  /**
+   * Check if the access type is supported by the region.
+   *
+   * @param accessType the access type
+   * @return true if the access type is read only
+   * @throws CacheException if the access type is not supported
+   */
+  boolean checkAccessType(AccessType accessType) throws CacheException {
+    if (accessType == AccessType.READ_ONLY) {
+      return true;
+    }
+    if (accessType == AccessType.NONSTRICT_READ_WRITE) {
+      return false;
+    }
+    throw new CacheException("Unsupported access type [" + accessType.getExternalName()
+        + "] of region [" + getName() + "], only [read-only] and [nonstrict-read-write] are "
+        + "supported");
+  }
+}
@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.metrics;
+
+import org.hibernate.stat.Statistics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stable names for the counters of Hibernate {@link Statistics}, so monitoring does not depend on
+ * the Hibernate version.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class HibernateMetrics {
+
+  private HibernateMetrics() {
+  }
+
+  /**
+   * Get a snapshot of the statistics of a session factory. The counters are only maintained if
+   * the <code>hibernate.generate_statistics</code> configuration property is true.
+   *
+   * @param statistics the statistics of the session factory
+   * @return the counters by name, empty if the statistics are not enabled
+   */
+  public static Map<String, Number> snapshot(Statistics statistics) {
+    if (statistics == null || !statistics.isStatisticsEnabled()) {
+      return Collections.emptyMap();
+    }
+    Map<String, Number> metrics = new LinkedHashMap<>();
+    metrics.put("sessions.opened", statistics.getSessionOpenCount());
+    metrics.put("sessions.closed", statistics.getSessionCloseCount());
+    metrics.put("transactions", statistics.getTransactionCount());
+    metrics.put("transactions.successful", statistics.getSuccessfulTransactionCount());
+    metrics.put("optimistic_failures", statistics.getOptimisticFailureCount());
+    metrics.put("connections.obtained", statistics.getConnectCount());
+    metrics.put("statements.prepared", statistics.getPrepareStatementCount());
+    metrics.put("statements.closed", statistics.getCloseStatementCount());
+    metrics.put("flushes", statistics.getFlushCount());
+    metrics.put("queries.executed", statistics.getQueryExecutionCount());
+    metrics.put("queries.max_time_millis", statistics.getQueryExecutionMaxTime());
+    metrics.put("entities.loaded", statistics.getEntityLoadCount());
+    metrics.put("entities.fetched", statistics.getEntityFetchCount());
+    metrics.put("entities.inserted", statistics.getEntityInsertCount());
+    metrics.put("entities.updated", statistics.getEntityUpdateCount());
+    metrics.put("entities.deleted", statistics.getEntityDeleteCount());
+    metrics.put("collections.loaded", statistics.getCollectionLoadCount());
+    metrics.put("collections.fetched", statistics.getCollectionFetchCount());
+    putCache(metrics, "second_level_cache", statistics.getSecondLevelCacheHitCount(),
+        statistics.getSecondLevelCacheMissCount(), statistics.getSecondLevelCachePutCount());
+    putCache(metrics, "query_cache", statistics.getQueryCacheHitCount(),
+        statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount());
+    putCache(metrics, "natural_id_cache", statistics.getNaturalIdCacheHitCount(),
+        statistics.getNaturalIdCacheMissCount(), statistics.getNaturalIdCachePutCount());
+    return metrics;
+  }
+
+  private static void putCache(Map<String, Number> metrics, String name, long hits, long misses,
+      long puts) {
+    metrics.put(name + ".hits", hits);
+    metrics.put(name + ".misses", misses);
+    metrics.put(name + ".puts", puts);
+    metrics.put(name + ".hit_ratio", hits + misses == 0 ? 0d : (double) hits / (hits + misses));
+  }
+}
@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds with a bounded relative error, in the manner of
+ * an HDR histogram.
+ *
+ * <p>Values are counted in log-linear buckets: every power of two range is split into 32 linear
+ * sub-buckets, so a reported value is within about 3% of the recorded one. Recording is a handful
+ * of atomic increments without allocation; reading percentiles walks the 1,280 buckets covering
+ * values up to about 4.9 hours, larger values being counted in the last bucket.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_VALUE_BITS = 44;
+  private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+  private static final int BUCKET_COUNT =
+      (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Record a latency.
+   *
+   * @param nanos the latency in nanoseconds, negative values are recorded as zero
+   */
+  public void record(long nanos) {
+    long value = Math.max(0L, nanos);
+    counts.incrementAndGet(index(Math.min(value, MAX_VALUE)));
+    count.increment();
+    total.add(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Add the values recorded by another histogram to this one.
+   *
+   * @param other the other histogram
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long c = other.counts.get(i);
+      if (c != 0) {
+        counts.addAndGet(i, c);
+      }
+    }
+    count.add(other.count.sum());
+    total.add(other.total.sum());
+    long otherMax = other.max.get();
+    long current = max.get();
+    while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Get the number of recorded values.
+   *
+   * @return the number of recorded values
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Get the sum of the recorded values.
+   *
+   * @param unit the unit of the result
+   * @return the sum of the recorded values
+   */
+  public long getTotal(TimeUnit unit) {
+    return unit.convert(total.sum(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the greatest recorded value.
+   *
+   * @param unit the unit of the result
+   * @return the greatest recorded value
+   */
+  public long getMax(TimeUnit unit) {
+    return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the mean of the recorded values in nanoseconds.
+   *
+   * @return the mean in nanoseconds, 0 if nothing was recorded
+   */
+  public double getMeanNanos() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) total.sum() / n;
+  }
+
+  /**
+   * Get the value below or at which the given percentage of the recorded values falls, as the
+   * highest value of its bucket.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @param unit the unit of the result
+   * @return the value at the percentile, 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile, TimeUnit unit) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+    long[] snapshot = new long[BUCKET_COUNT];
+    long n = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+      n += snapshot[i];
+    }
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        long value = Math.min(highestValue(i), max.get());
+        return unit.convert(value, TimeUnit.NANOSECONDS);
+      }
+    }
+    return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Clear the recorded values. Values recorded meanwhile may be partially cleared.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    total.reset();
+    max.set(0);
+  }
+
+  /**
+   * Get the bucket of a value: values below 64 have a bucket each, a greater value with the
+   * highest bit <code>b</code> falls in the bucket of its 6 highest bits, offset by
+   * <code>(b - 5) * 32</code>.
+   */
+  static int index(long value) {
+    int highestBit = 63 - Long.numberOfLeadingZeros(value | 1);
+    if (highestBit <= SUB_BUCKET_BITS) {
+      return (int) value;
+    }
+    int shift = highestBit - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+  }
+
+  static long highestValue(int index) {
+    if (index < 2 * SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram{count=" + getCount()
+        + ", mean=" + (long) getMeanNanos() + "ns"
+        + ", p50=" + getValueAtPercentile(50, TimeUnit.NANOSECONDS) + "ns"
+        + ", p99=" + getValueAtPercentile(99, TimeUnit.NANOSECONDS) + "ns"
+        + ", max=" + getMax(TimeUnit.NANOSECONDS) + "ns}";
+  }
+}
@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of an operation of a provider on an entity class: latency histogram, calls, errors and
+ * rows returned or written.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class OperationMetrics {
+
+  private final String operation;
+  private final Class<?> entityClazz;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder rows = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param operation the name of the operation
+   * @param entityClazz the entity class or null if the operation has none
+   */
+  public OperationMetrics(String operation, Class<?> entityClazz) {
+    this.operation = operation;
+    this.entityClazz = entityClazz;
+  }
+
+  /**
+   * Record a call of the operation.
+   *
+   * @param nanos the latency of the call in nanoseconds
+   * @param rows the number of rows returned or written by the call
+   * @param error true if the call failed
+   */
+  public void record(long nanos, long rows, boolean error) {
+    latency.record(nanos);
+    if (rows > 0) {
+      this.rows.add(rows);
+    }
+    if (error) {
+      errors.increment();
+    }
+  }
+
+  /**
+   * Get the name of the operation.
+   *
+   * @return the name of the operation
+   */
+  public String getOperation() {
+    return operation;
+  }
+
+  /**
+   * Get the entity class of the operation.
+   *
+   * @return the entity class or null if the operation has none
+   */
+  public Class<?> getEntityClazz() {
+    return entityClazz;
+  }
+
+  /**
+   * Get the latency histogram of the calls.
+   *
+   * @return the latency histogram
+   */
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  /**
+   * Get the number of calls, failed ones included.
+   *
+   * @return the number of calls
+   */
+  public long getCalls() {
+    return latency.getCount();
+  }
+
+  /**
+   * Get the number of failed calls.
+   *
+   * @return the number of failed calls
+   */
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  /**
+   * Get the number of rows returned or written by the calls.
+   *
+   * @return the number of rows
+   */
+  public long getRows() {
+    return rows.sum();
+  }
+
+  /**
+   * Clear the metrics.
+   */
+  public void reset() {
+    latency.reset();
+    errors.reset();
+    rows.reset();
+  }
+
+  /**
+   * Get a snapshot of the metrics in milliseconds.
+   *
+   * @return the snapshot
+   */
+  public OperationStatistics toStatistics() {
+    double millis = TimeUnit.MILLISECONDS.toNanos(1);
+    return new OperationStatistics(operation, entityClazz == null ? null : entityClazz.getName(),
+        getCalls(), getErrors(), getRows(), latency.getMeanNanos() / millis,
+        latency.getValueAtPercentile(50, TimeUnit.NANOSECONDS) / millis,
+        latency.getValueAtPercentile(95, TimeUnit.NANOSECONDS) / millis,
+        latency.getValueAtPercentile(99, TimeUnit.NANOSECONDS) / millis,
+        latency.getMax(TimeUnit.NANOSECONDS) / millis);
+  }
+
+  @Override
+  public String toString() {
+    return "OperationMetrics{operation=" + operation
+        + ", entityClazz=" + (entityClazz == null ? null : entityClazz.getName())
+        + ", errors=" + getErrors()
+        + ", rows=" + getRows()
+        + ", latency=" + latency + "}";
+  }
+}
@@ -0,0 +1,177 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable snapshot of the metrics of an operation, with latencies in milliseconds, as exposed
+ * through JMX.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class OperationStatistics {
+
+  private final String operation;
+  private final String entityName;
+  private final long calls;
+  private final long errors;
+  private final long rows;
+  private final double meanMillis;
+  private final double p50Millis;
+  private final double p95Millis;
+  private final double p99Millis;
+  private final double maxMillis;
+
+  /**
+   * Constructor.
+   *
+   * @param operation the name of the operation
+   * @param entityName the name of the entity class or null
+   * @param calls the number of calls
+   * @param errors the number of failed calls
+   * @param rows the number of rows returned or written
+   * @param meanMillis the mean latency
+   * @param p50Millis the median latency
+   * @param p95Millis the 95th percentile latency
+   * @param p99Millis the 99th percentile latency
+   * @param maxMillis the maximum latency
+   */
+  @ConstructorProperties({"operation", "entityName", "calls", "errors", "rows", "meanMillis",
+      "p50Millis", "p95Millis", "p99Millis", "maxMillis"})
+  public OperationStatistics(String operation, String entityName, long calls, long errors,
+      long rows, double meanMillis, double p50Millis, double p95Millis, double p99Millis,
+      double maxMillis) {
+    this.operation = operation;
+    this.entityName = entityName;
+    this.calls = calls;
+    this.errors = errors;
+    this.rows = rows;
+    this.meanMillis = meanMillis;
+    this.p50Millis = p50Millis;
+    this.p95Millis = p95Millis;
+    this.p99Millis = p99Millis;
+    this.maxMillis = maxMillis;
+  }
+
+  /**
+   * Get the name of the operation.
+   *
+   * @return the name of the operation
+   */
+  public String getOperation() {
+    return operation;
+  }
+
+  /**
+   * Get the name of the entity class or null.
+   *
+   * @return the name of the entity class or null
+   */
+  public String getEntityName() {
+    return entityName;
+  }
+
+  /**
+   * Get the number of calls.
+   *
+   * @return the number of calls
+   */
+  public long getCalls() {
+    return calls;
+  }
+
+  /**
+   * Get the number of failed calls.
+   *
+   * @return the number of failed calls
+   */
+  public long getErrors() {
+    return errors;
+  }
+
+  /**
+   * Get the number of rows returned or written.
+   *
+   * @return the number of rows returned or written
+   */
+  public long getRows() {
+    return rows;
+  }
+
+  /**
+   * Get the mean latency in milliseconds.
+   *
+   * @return the mean latency in milliseconds
+   */
+  public double getMeanMillis() {
+    return meanMillis;
+  }
+
+  /**
+   * Get the median latency in milliseconds.
+   *
+   * @return the median latency in milliseconds
+   */
+  public double getP50Millis() {
+    return p50Millis;
+  }
+
+  /**
+   * Get the 95th percentile latency in milliseconds.
+   *
+   * @return the 95th percentile latency in milliseconds
+   */
+  public double getP95Millis() {
+    return p95Millis;
+  }
+
+  /**
+   * Get the 99th percentile latency in milliseconds.
+   *
+   * @return the 99th percentile latency in milliseconds
+   */
+  public double getP99Millis() {
+    return p99Millis;
+  }
+
+  /**
+   * Get the maximum latency in milliseconds.
+   *
+   * @return the maximum latency in milliseconds
+   */
+  public double getMaxMillis() {
+    return maxMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "OperationStatistics{operation=" + operation
+        + ", entityName=" + entityName
+        + ", calls=" + calls
+        + ", errors=" + errors
+        + ", rows=" + rows
+        + ", meanMillis=" + meanMillis
+        + ", p50Millis=" + p50Millis
+        + ", p95Millis=" + p95Millis
+        + ", p99Millis=" + p99Millis
+        + ", maxMillis=" + maxMillis + "}";
+  }
+}
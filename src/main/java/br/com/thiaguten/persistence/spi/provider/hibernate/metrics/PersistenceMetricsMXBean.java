@@ -0,0 +1,51 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of the metrics of an instrumented provider.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public interface PersistenceMetricsMXBean {
+
+  /**
+   * Get the metrics of the operations by entity class.
+   *
+   * @return the metrics of the operations
+   */
+  List<OperationStatistics> getOperations();
+
+  /**
+   * Get the counters of the Hibernate statistics.
+   *
+   * @return the counters by name
+   * @see HibernateMetrics#snapshot(org.hibernate.stat.Statistics)
+   */
+  Map<String, Double> getHibernateStatistics();
+
+  /**
+   * Clear the metrics of the operations.
+   */
+  void reset();
+}
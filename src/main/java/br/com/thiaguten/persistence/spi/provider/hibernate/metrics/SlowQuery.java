@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.metrics;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry of the slow query log: an operation which took longer than the threshold.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class SlowQuery {
+
+  private static final int MAX_VALUE_LENGTH = 200;
+
+  private final long timestamp;
+  private final String operation;
+  private final String entityName;
+  private final String query;
+  private final Map<String, Object> parameters;
+  private final long rows;
+  private final long elapsedNanos;
+  private final String error;
+  private final String thread;
+
+  SlowQuery(long timestamp, String operation, String entityName, String query,
+      Map<String, Object> parameters, long rows, long elapsedNanos, String error, String thread) {
+    this.timestamp = timestamp;
+    this.operation = operation;
+    this.entityName = entityName;
+    this.query = query;
+    this.parameters = parameters == null ? null : Collections.unmodifiableMap(parameters);
+    this.rows = rows;
+    this.elapsedNanos = elapsedNanos;
+    this.error = error;
+    this.thread = thread;
+  }
+
+  /**
+   * Get the time the operation ended at.
+   *
+   * @return the time in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Get the name of the operation.
+   *
+   * @return the name of the operation
+   */
+  public String getOperation() {
+    return operation;
+  }
+
+  /**
+   * Get the name of the entity class of the operation.
+   *
+   * @return the name of the entity class or null
+   */
+  public String getEntityName() {
+    return entityName;
+  }
+
+  /**
+   * Get the query of the operation: the HQL/JPQL text, the name of a named query or the criteria
+   * restriction.
+   *
+   * @return the query or null if the operation has none
+   */
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * Get the redacted bound parameters of the operation.
+   *
+   * @return the parameters by name or null if they were not sampled
+   */
+  public Map<String, Object> getParameters() {
+    return parameters;
+  }
+
+  /**
+   * Get the number of rows returned or written by the operation.
+   *
+   * @return the number of rows
+   */
+  public long getRows() {
+    return rows;
+  }
+
+  /**
+   * Get the time the operation took.
+   *
+   * @param unit the unit of the result
+   * @return the elapsed time
+   */
+  public long getElapsed(TimeUnit unit) {
+    return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the class of the exception the operation failed with.
+   *
+   * @return the exception class name or null if the operation succeeded
+   */
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * Get the name of the thread which called the operation.
+   *
+   * @return the thread name
+   */
+  public String getThread() {
+    return thread;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("slow ").append(operation);
+    if (entityName != null) {
+      sb.append(' ').append(entityName);
+    }
+    sb.append(" took ").append(TimeUnit.NANOSECONDS.toMicros(elapsedNanos) / 1000d).append("ms")
+        .append(", rows=").append(rows);
+    if (query != null) {
+      sb.append(", query=[").append(query).append(']');
+    }
+    if (parameters != null) {
+      Map<String, Object> abbreviated = new LinkedHashMap<>();
+      parameters.forEach((name, value) -> abbreviated.put(name, abbreviate(value)));
+      sb.append(", parameters=").append(abbreviated);
+    }
+    if (error != null) {
+      sb.append(", error=").append(error);
+    }
+    return sb.append(", thread=").append(thread)
+        .append(", at=").append(Instant.ofEpochMilli(timestamp)).toString();
+  }
+
+  private static Object abbreviate(Object value) {
+    String text = String.valueOf(value);
+    return text.length() <= MAX_VALUE_LENGTH ? value
+        : text.substring(0, MAX_VALUE_LENGTH) + "...(" + text.length() + " chars)";
+  }
+}
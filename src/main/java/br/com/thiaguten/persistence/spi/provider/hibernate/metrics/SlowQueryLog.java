@@ -0,0 +1,288 @@
+/*-
+ * #%L
+ * Simple DAO Hibernate
+ * %%
+ * Copyright (C) 2016 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.provider.hibernate.metrics;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Log of the operations slower than a threshold.
+ *
+ * <p>Every slow operation is logged at <code>WARN</code> level with its query, sampled and redacted
+ * bound parameters, rows and elapsed time. The slowest operations are kept in a bounded min-heap
+ * ordered by elapsed time, so a burst of operations just over the threshold does not push the worst
+ * ones out; they can be read or dumped slowest first. Operations under the threshold cost nothing
+ * but the comparison of their elapsed time.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class SlowQueryLog {
+
+  /**
+   * Default number of slowest operations kept.
+   */
+  public static final int DEFAULT_CAPACITY = 100;
+
+  /**
+   * Replacement of the redacted parameter values.
+   */
+  public static final String REDACTED = "****";
+
+  private static final Logger LOG = Logger.getLogger(SlowQueryLog.class);
+  private static final Comparator<SlowQuery> BY_ELAPSED =
+      Comparator.comparingLong(entry -> entry.getElapsed(TimeUnit.NANOSECONDS));
+
+  private final int capacity;
+  private final PriorityQueue<SlowQuery> entries;
+  private final AtomicLong count = new AtomicLong();
+  private volatile long fastestKeptNanos;
+  private volatile long thresholdNanos;
+  private volatile double parameterSampleRate = 1d;
+  private volatile BiFunction<String, Object, Object> redactor = (name, value) -> value;
+  private volatile boolean logging = true;
+
+  /**
+   * Constructor keeping the {@value #DEFAULT_CAPACITY} slowest operations.
+   *
+   * @param threshold the elapsed time from which an operation is slow
+   * @param unit the unit of the threshold
+   */
+  public SlowQueryLog(long threshold, TimeUnit unit) {
+    this(threshold, unit, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param threshold the elapsed time from which an operation is slow
+   * @param unit the unit of the threshold
+   * @param capacity the number of slowest operations kept
+   */
+  public SlowQueryLog(long threshold, TimeUnit unit, int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be greater than zero.");
+    }
+    this.capacity = capacity;
+    this.entries = new PriorityQueue<>(capacity, BY_ELAPSED);
+    setThreshold(threshold, unit);
+  }
+
+  /**
+   * Get a redactor replacing the values of the parameters with the given names, ignoring case, by
+   * {@value #REDACTED}.
+   *
+   * @param names the names of the redacted parameters
+   * @return the redactor
+   */
+  public static BiFunction<String, Object, Object> redacting(String... names) {
+    Set<String> redacted = Arrays.stream(names).map(name -> name.toLowerCase(Locale.ROOT))
+        .collect(Collectors.toSet());
+    return (name, value) -> name != null && redacted.contains(name.toLowerCase(Locale.ROOT))
+        ? REDACTED : value;
+  }
+
+  /**
+   * Get the elapsed time from which an operation is slow.
+   *
+   * @param unit the unit of the result
+   * @return the threshold
+   */
+  public long getThreshold(TimeUnit unit) {
+    return unit.convert(thresholdNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Set the elapsed time from which an operation is slow.
+   *
+   * @param threshold the threshold
+   * @param unit the unit of the threshold
+   */
+  public void setThreshold(long threshold, TimeUnit unit) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Threshold must not be negative.");
+    }
+    this.thresholdNanos = unit.toNanos(threshold);
+  }
+
+  /**
+   * Set the fraction of the slow operations whose bound parameters are captured, 1 by default.
+   *
+   * @param parameterSampleRate the sample rate, between 0 (never) and 1 (always)
+   */
+  public void setParameterSampleRate(double parameterSampleRate) {
+    if (parameterSampleRate < 0 || parameterSampleRate > 1) {
+      throw new IllegalArgumentException("Sample rate must be between 0 and 1.");
+    }
+    this.parameterSampleRate = parameterSampleRate;
+  }
+
+  /**
+   * Set the function applied to every captured parameter, given its name and value, to get the
+   * value to log instead, such as {@link #redacting(String...)}. The default keeps the values.
+   *
+   * @param redactor the redactor
+   */
+  public void setRedactor(BiFunction<String, Object, Object> redactor) {
+    this.redactor = redactor == null ? (name, value) -> value : redactor;
+  }
+
+  /**
+   * Set if the slow operations are logged, true by default. The slowest ones are kept anyway.
+   *
+   * @param logging true to log the slow operations
+   */
+  public void setLogging(boolean logging) {
+    this.logging = logging;
+  }
+
+  /**
+   * Check if an operation is slow.
+   *
+   * @param elapsedNanos the elapsed time of the operation in nanoseconds
+   * @return true if the operation is slow
+   */
+  public boolean isSlow(long elapsedNanos) {
+    return elapsedNanos >= thresholdNanos;
+  }
+
+  /**
+   * Record a slow operation.
+   *
+   * @param operation the name of the operation
+   * @param entityClazz the entity class of the operation or null
+   * @param query the query of the operation or null
+   * @param parameters the supplier of the bound parameters, only called if they are sampled
+   * @param rows the number of rows returned or written
+   * @param elapsedNanos the elapsed time in nanoseconds
+   * @param error the exception the operation failed with or null
+   * @return the entry of the slow operation
+   */
+  public SlowQuery record(String operation, Class<?> entityClazz, String query,
+      Supplier<Map<String, ?>> parameters, long rows, long elapsedNanos, Throwable error) {
+    SlowQuery entry = new SlowQuery(System.currentTimeMillis(), operation,
+        entityClazz == null ? null : entityClazz.getName(), query, sample(parameters), rows,
+        elapsedNanos, error == null ? null : error.getClass().getName(),
+        Thread.currentThread().getName());
+    count.incrementAndGet();
+    keep(entry);
+    if (logging) {
+      LOG.warn(entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Keep the entry if it is slower than the fastest one kept, which it then replaces once the heap
+   * is full.
+   */
+  private void keep(SlowQuery entry) {
+    long elapsed = entry.getElapsed(TimeUnit.NANOSECONDS);
+    if (elapsed <= fastestKeptNanos) {
+      return; // the heap is full of slower operations, checked without locking
+    }
+    synchronized (entries) {
+      if (entries.size() == capacity) {
+        if (elapsed <= entries.peek().getElapsed(TimeUnit.NANOSECONDS)) {
+          return;
+        }
+        entries.poll();
+      }
+      entries.add(entry);
+      if (entries.size() == capacity) {
+        fastestKeptNanos = entries.peek().getElapsed(TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  private Map<String, Object> sample(Supplier<Map<String, ?>> parameters) {
+    double rate = parameterSampleRate;
+    if (parameters == null || rate == 0
+        || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+      return null;
+    }
+    Map<String, ?> values = parameters.get();
+    if (values == null) {
+      return null;
+    }
+    BiFunction<String, Object, Object> redact = redactor;
+    Map<String, Object> redacted = new LinkedHashMap<>();
+    values.forEach((name, value) -> redacted.put(name, redact.apply(name, value)));
+    return redacted;
+  }
+
+  /**
+   * Get the number of slow operations recorded so far.
+   *
+   * @return the number of slow operations
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Get the slowest operations kept, slowest first.
+   *
+   * @return the slow operations
+   */
+  public List<SlowQuery> getWorst() {
+    List<SlowQuery> worst;
+    synchronized (entries) {
+      worst = new ArrayList<>(entries);
+    }
+    worst.sort(BY_ELAPSED.reversed());
+    return Collections.unmodifiableList(worst);
+  }
+
+  /**
+   * Dump the slowest operations kept, slowest first, one per line.
+   *
+   * @return the dump
+   */
+  public String dump() {
+    return getWorst().stream().map(SlowQuery::toString)
+        .collect(Collectors.joining(System.lineSeparator()));
+  }
+
+  /**
+   * Clear the slowest operations kept.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+      fastestKeptNanos = 0;
+    }
+  }
+}
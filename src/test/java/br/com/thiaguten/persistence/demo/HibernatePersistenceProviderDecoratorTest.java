@@ -0,0 +1,494 @@
+/*
+ * #%L
+ * %%
+ * Copyright (C) 2015 - 2016 Thiago Gutenberg Carvalho da Costa.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.demo;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.AbstractHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.AsyncHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.ForwardingHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.HedgingHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.HibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.KeysetPage;
+import br.com.thiaguten.persistence.spi.provider.hibernate.RoutingHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.ShardedHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.SlowQueryLoggingHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.SlowQuery;
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.SlowQueryLog;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl;
+import org.hibernate.exception.JDBCConnectionException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests of the provider decorators, each one over a database of its own.
+ */
+public class HibernatePersistenceProviderDecoratorTest {
+
+    private SessionFactory sessionFactory;
+    private HibernatePersistenceProvider persistenceProvider;
+
+    @BeforeMethod
+    public void setUp(Method method) {
+        sessionFactory = InMemoryDatabase.newSessionFactory("decorator" + method.getName());
+        persistenceProvider = InMemoryDatabase.transactionalProvider(sessionFactory);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        InMemoryDatabase.close(sessionFactory);
+    }
+
+    @Test
+    public void slowQueryTest() {
+        SlowQueryLog log = new SlowQueryLog(0, TimeUnit.NANOSECONDS);
+        log.setRedactor(SlowQueryLog.redacting("NAME", "VERSION"));
+        log.setLogging(false);
+        SlowQueryLoggingHibernatePersistenceProvider logging = new SlowQueryLoggingHibernatePersistenceProvider(persistenceProvider, log);
+        User user = logging.save(new User("SLOW"));
+        assertEquals(logging.findByQueryAndNamedParams(User.class, "select u from User u where u.name = :name", Collections.singletonMap("name", "SLOW")).size(), 1);
+        List<Criterion> criterions = Arrays.asList(Restrictions.eq("name", "SLOW"), Restrictions.between("version", 0L, 100L));
+        assertEquals(logging.findByCriteria(User.class, criterions).size(), 1);
+        assertEquals(logging.findById(User.class, user.getId()).getName(), "SLOW");
+        assertEquals(log.getCount(), 4L);
+
+        SlowQuery query = slowQuery(log, "findByQueryAndNamedParams");
+        assertEquals(query.getQuery(), "select u from User u where u.name = :name");
+        assertEquals(query.getParameters().get("name"), SlowQueryLog.REDACTED);
+
+        // both bounds of the between are keyed by their property, so both are redacted
+        SlowQuery criteria = slowQuery(log, "findByCriteria");
+        assertTrue(criteria.getQuery().startsWith("criteria User e where "));
+        assertEquals(criteria.getEntityName(), User.class.getName());
+        assertEquals(criteria.getRows(), 1L);
+        assertEquals(criteria.getParameters().keySet(), new LinkedHashSet<>(Arrays.asList("name", "version")));
+        assertEquals(criteria.getParameters().get("name"), SlowQueryLog.REDACTED);
+        assertEquals(criteria.getParameters().get("version"), SlowQueryLog.REDACTED);
+
+        SlowQuery findById = slowQuery(log, "findById");
+        assertEquals(findById.getParameters().get("id"), user.getId());
+        assertTrue(log.dump().contains("findById"));
+
+        log.setThreshold(1, TimeUnit.HOURS);
+        logging.findAll(User.class);
+        assertEquals(log.getCount(), 4L);
+    }
+
+    @Test
+    public void slowQueryUnsupportedCriterionTest() {
+        SlowQueryLog log = new SlowQueryLog(0, TimeUnit.NANOSECONDS);
+        log.setRedactor(SlowQueryLog.redacting("NAME"));
+        log.setLogging(false);
+        SlowQueryLoggingHibernatePersistenceProvider logging = new SlowQueryLoggingHibernatePersistenceProvider(persistenceProvider, log);
+        logging.save(new User("SLOW"));
+
+        // criterions without a shape render their values, so only their classes are recorded
+        List<Criterion> criterions = Arrays.asList(Restrictions.not(Restrictions.eq("name", "SECRET")),
+                Restrictions.sqlRestriction("{alias}.name <> 'SECRET'"));
+        assertEquals(logging.findByCriteria(User.class, criterions).size(), 1);
+        SlowQuery criteria = slowQuery(log, "findByCriteria");
+        assertEquals(criteria.getQuery(), "criteria User [NotExpression, SQLCriterion]");
+        assertTrue(criteria.getParameters().isEmpty());
+        assertFalse(log.dump().contains("SECRET"));
+    }
+
+    @Test
+    public void slowQueryLogKeepsTheSlowestTest() {
+        SlowQueryLog log = new SlowQueryLog(0, TimeUnit.NANOSECONDS, 2);
+        log.setLogging(false);
+        for (long elapsed : new long[] {5, 1, 4, 2, 3, 1, 1}) {
+            log.record("findAll", User.class, null, null, 0, TimeUnit.MILLISECONDS.toNanos(elapsed), null);
+        }
+        assertEquals(log.getCount(), 7L);
+
+        // a burst of operations just over the threshold does not push the slowest ones out
+        List<SlowQuery> worst = log.getWorst();
+        assertEquals(worst.size(), 2);
+        assertEquals(worst.get(0).getElapsed(TimeUnit.MILLISECONDS), 5L);
+        assertEquals(worst.get(1).getElapsed(TimeUnit.MILLISECONDS), 4L);
+
+        log.clear();
+        assertTrue(log.getWorst().isEmpty());
+        log.record("findAll", User.class, null, null, 0, TimeUnit.MILLISECONDS.toNanos(1), null);
+        assertEquals(log.getWorst().size(), 1);
+    }
+
+    @Test
+    public void routingTest() {
+        SessionFactory replicaFactory = InMemoryDatabase.newSessionFactory("decoratorreplica");
+        try {
+            AtomicBoolean down = new AtomicBoolean();
+            HibernatePersistenceProvider replica = new ForwardingHibernatePersistenceProvider(InMemoryDatabase.transactionalProvider(replicaFactory)) {
+                @Override
+                protected <R> R execute(Operation operation, Function<? super HibernatePersistenceProvider, R> call) {
+                    if (down.get()) {
+                        throw new JDBCConnectionException("replica down", new SQLException("connection refused"));
+                    }
+                    return super.execute(operation, call);
+                }
+            };
+            replica.save(new User("REPLICA"));
+            RoutingHibernatePersistenceProvider routing = new RoutingHibernatePersistenceProvider(persistenceProvider, Collections.singletonList(replica));
+            List<Criterion> criterions = Collections.singletonList(Restrictions.eq("name", "REPLICA"));
+            assertEquals(routing.findByCriteria(User.class, criterions).size(), 1);
+            assertEquals(routing.getReplicaReads(), 1L);
+
+            // a read failing for another reason than the replica is not retried on the primary
+            try {
+                routing.findByCriteria(User.class, Collections.singletonList(Restrictions.eq("unknown", "REPLICA")));
+                fail("invalid query routed to the primary");
+            } catch (HibernateException expected) {
+                assertEquals(routing.getFallbacks(), 0L);
+            }
+
+            // a replica failing to connect is skipped until it is checked again
+            down.set(true);
+            assertTrue(routing.findByCriteria(User.class, criterions).isEmpty());
+            assertEquals(routing.getFallbacks(), 1L);
+            assertTrue(routing.findByCriteria(User.class, criterions).isEmpty());
+            assertEquals(routing.getFallbacks(), 1L);
+        } finally {
+            InMemoryDatabase.close(replicaFactory);
+        }
+    }
+
+    @Test
+    public void routingInWriteTransactionTest() {
+        HibernatePersistenceProvider replica = new AbstractHibernatePersistenceProvider() {
+            @Override
+            public Session getSession() {
+                throw new JDBCConnectionException("read sent to the replica", new SQLException("connection refused"));
+            }
+        };
+        RoutingHibernatePersistenceProvider routing = new RoutingHibernatePersistenceProvider(persistenceProvider, Collections.singletonList(replica));
+        Transaction transaction = sessionFactory.getCurrentSession().beginTransaction();
+        try {
+            // written around the router, so only the write transaction keeps the reads on the primary
+            User user = persistenceProvider.save(new User("ROUTING"));
+            assertEquals(routing.findById(User.class, user.getId()).getName(), "ROUTING");
+            assertEquals(routing.countAll(User.class), 1L);
+            assertEquals(routing.getReplicaReads(), 0L);
+            assertEquals(routing.getFallbacks(), 0L);
+        } finally {
+            transaction.rollback();
+        }
+
+        // outside of the transaction the read is routed to the replica, and fails back to the primary
+        assertEquals(routing.countAll(User.class), 0L);
+        assertEquals(routing.getFallbacks(), 1L);
+    }
+
+    @Test
+    public void shardingTest() {
+        int shardCount = 2;
+        List<SessionFactory> factories = new ArrayList<>();
+        ExecutorService executor = AsyncHibernatePersistenceProvider.newExecutor(shardCount, shardCount * 4, false);
+        try {
+            List<HibernatePersistenceProvider> shards = new ArrayList<>();
+            for (int index = 0; index < shardCount; index++) {
+                SessionFactory factory = InMemoryDatabase.newSessionFactory("decoratorshard" + index);
+                factories.add(factory);
+                // every shard generates the identifiers congruent to its index modulo the shard count
+                try (Session session = factory.openSession()) {
+                    Transaction transaction = session.beginTransaction();
+                    session.createSQLQuery("alter sequence hibernate_sequence restart with " + (index == 0 ? shardCount : index)).executeUpdate();
+                    session.createSQLQuery("alter sequence hibernate_sequence increment by " + shardCount).executeUpdate();
+                    transaction.commit();
+                }
+                shards.add(InMemoryDatabase.transactionalProvider(factory));
+            }
+            ShardedHibernatePersistenceProvider sharded = new ShardedHibernatePersistenceProvider(shards, ShardedHibernatePersistenceProvider.modulo(shardCount), executor);
+
+            List<User> users = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                users.add(sharded.save(new User("SHARD" + i)));
+            }
+            for (User user : users) {
+                int shard = sharded.shardOf(user.getId());
+                assertEquals(shard, (int) (user.getId() % shardCount));
+                assertEquals(sharded.getShard(shard).findById(User.class, user.getId()).getName(), user.getName());
+                assertEquals(sharded.findById(User.class, user.getId()).getName(), user.getName());
+            }
+            assertEquals(sharded.getShard(0).countAll(User.class), 3L);
+            assertEquals(sharded.countAll(User.class), 6L);
+
+            List<User> all = sharded.findAll(User.class);
+            assertEquals(all.size(), 6);
+            for (int i = 1; i < all.size(); i++) {
+                assertTrue(all.get(i - 1).getId() < all.get(i).getId());
+            }
+            List<User> page = sharded.findAll(User.class, 2, 3);
+            assertEquals(page.size(), 3);
+            for (int i = 0; i < page.size(); i++) {
+                assertEquals(page.get(i).getId(), all.get(i + 2).getId());
+            }
+            KeysetPage<User> firstPage = sharded.findAfterId(User.class, null, 4, null);
+            assertEquals(firstPage.getContent().size(), 4);
+            assertTrue(firstPage.hasNext());
+            KeysetPage<User> lastPage = sharded.findAfterId(User.class, (Long) firstPage.getNext().getValues()[0], 4, null);
+            assertEquals(lastPage.getContent().size(), 2);
+            assertFalse(lastPage.hasNext());
+            assertEquals(lastPage.getContent().get(1).getId(), all.get(5).getId());
+
+            // the results of a query keep the order of every shard, an ordered query is rejected
+            Map<String, Object> params = Collections.singletonMap("name", "SHARD%");
+            List<User> queried = sharded.findByQueryAndNamedParams(User.class, "select u from User u where u.name like :name", params);
+            assertEquals(queried.size(), 6);
+            for (User user : queried.subList(0, 3)) {
+                assertEquals(sharded.shardOf(user.getId()), 0);
+            }
+            expectThrows(HibernateException.class, () -> sharded.findByQueryAndNamedParams(User.class, "select u from User u where u.name like :name order by u.name desc", params));
+
+            // the aggregates of a query are reduced across the shards
+            assertEquals(sharded.countByQueryAndNamedParams(Long.class, "select count(u) from User u where u.name like :name", params).longValue(), 6L);
+            assertEquals(sharded.countByQueryAndNamedParams(Long.class, "select max(u.id) from User u where u.name like :name", params), all.get(5).getId());
+            assertEquals(sharded.countByQueryAndNamedParams(Long.class, "select min(u.id) from User u where u.name like :name", params), all.get(0).getId());
+            expectThrows(HibernateException.class, () -> sharded.countByQueryAndNamedParams(Double.class, "select avg(u.id) from User u where u.name like :name", params));
+
+            // the projections have no identifier to paginate by
+            List<String> properties = Collections.singletonList("name");
+            assertEquals(sharded.findProjectionByCriteria(User.class, String.class, properties, null).size(), 6);
+            expectThrows(HibernateException.class, () -> sharded.findProjectionByCriteria(User.class, String.class, properties, 0, 3, null));
+
+            sharded.deleteById(User.class, users.get(0).getId());
+            assertNull(sharded.findById(User.class, users.get(0).getId()));
+            assertEquals(sharded.countAll(User.class), 5L);
+        } finally {
+            executor.shutdown();
+            factories.forEach(InMemoryDatabase::close);
+        }
+    }
+
+    @Test
+    public void hedgingTest() throws InterruptedException {
+        SessionFactory hedgeFactory = InMemoryDatabase.newSessionFactory("decoratorhedge");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            InMemoryDatabase.transactionalProvider(hedgeFactory).save(new User("HEDGE"));
+            HibernatePersistenceProvider stalled = new ForwardingHibernatePersistenceProvider(InMemoryDatabase.currentSessionProvider(sessionFactory)) {
+                @Override
+                protected <R> R execute(Operation operation, Function<? super HibernatePersistenceProvider, R> call) {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.execute(operation, call);
+                }
+            };
+            HedgingHibernatePersistenceProvider hedging = new HedgingHibernatePersistenceProvider(stalled, InMemoryDatabase.currentSessionProvider(hedgeFactory), scheduler, executor);
+            hedging.setBudget(1);
+            hedging.setDelayBounds(0, 10, TimeUnit.MILLISECONDS);
+            List<Criterion> criterions = Collections.singletonList(Restrictions.eq("name", "HEDGE"));
+
+            // the hedge would not see the writes of a read-write transaction
+            Transaction transaction = sessionFactory.getCurrentSession().beginTransaction();
+            try {
+                assertEquals(hedging.countByCriteria(User.class, Long.class, criterions), Long.valueOf(0));
+                assertEquals(hedging.getReads(), 0L);
+            } finally {
+                transaction.rollback();
+            }
+
+            transaction = beginReadOnly(sessionFactory);
+            try {
+                assertEquals(hedging.countByCriteria(User.class, Long.class, criterions), Long.valueOf(1));
+                assertEquals(hedging.findProjectionByCriteria(User.class, String.class, Collections.singletonList("name"), criterions), Collections.singletonList("HEDGE"));
+                assertEquals(hedging.getHedges(), 2L);
+                assertEquals(hedging.getHedgeWins(), 2L);
+
+                // the entities of the hedge session would be detached, so they are read from the primary only
+                assertTrue(hedging.findByCriteria(User.class, criterions).isEmpty());
+                assertEquals(hedging.getReads(), 2L);
+
+                hedging.setBudget(0);
+                assertEquals(hedging.countByCriteria(User.class, Long.class, criterions), Long.valueOf(0));
+                assertEquals(hedging.getReads(), 3L);
+                assertEquals(hedging.getHedges(), 2L);
+            } finally {
+                transaction.rollback();
+            }
+        } finally {
+            scheduler.shutdown();
+            executor.shutdown();
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+            InMemoryDatabase.close(hedgeFactory);
+        }
+    }
+
+    @Test
+    public void hedgingCancelsTheLosingStatementTest() throws InterruptedException {
+        SessionFactory primaryFactory = InMemoryDatabase.newSessionFactory("decoratorhedgeprimary",
+                Collections.singletonMap("hibernate.connection.provider_class", CancellableConnectionProvider.class.getName()));
+        SessionFactory hedgeFactory = InMemoryDatabase.newSessionFactory("decoratorhedgecancel");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            InMemoryDatabase.transactionalProvider(hedgeFactory).save(new User("HEDGE"));
+            HedgingHibernatePersistenceProvider hedging = new HedgingHibernatePersistenceProvider(InMemoryDatabase.currentSessionProvider(primaryFactory), InMemoryDatabase.currentSessionProvider(hedgeFactory), scheduler, executor);
+            hedging.setBudget(1);
+            hedging.setDelayBounds(0, 10, TimeUnit.MILLISECONDS);
+            Transaction transaction = beginReadOnly(primaryFactory);
+            try {
+                // the primary statement blocks in the driver until the winning hedge cancels it
+                CancellableConnectionProvider.blockNextQuery();
+                assertEquals(hedging.countByCriteria(User.class, Long.class, Collections.singletonList(Restrictions.eq("name", "HEDGE"))), Long.valueOf(1));
+                assertEquals(CancellableConnectionProvider.getCancelled(), 1);
+                assertEquals(hedging.getHedgeWins(), 1L);
+            } finally {
+                transaction.rollback();
+            }
+        } finally {
+            scheduler.shutdown();
+            executor.shutdown();
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+            InMemoryDatabase.close(hedgeFactory);
+            InMemoryDatabase.close(primaryFactory);
+        }
+    }
+
+    @Test
+    public void hedgingDelayTest() throws InterruptedException {
+        User user = persistenceProvider.save(new User("DELAY"));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            HibernatePersistenceProvider primary = InMemoryDatabase.currentSessionProvider(sessionFactory);
+            HedgingHibernatePersistenceProvider hedging = new HedgingHibernatePersistenceProvider(primary, primary, scheduler, executor);
+            hedging.setBudget(0);
+            hedging.setDelayBounds(0, 1, TimeUnit.SECONDS);
+            Transaction transaction = beginReadOnly(sessionFactory);
+            try {
+                // the delay is the maximum one until enough primary reads were measured
+                for (int i = 0; i < 99; i++) {
+                    assertEquals(hedging.countByCriteria(User.class, Long.class, Collections.singletonList(Restrictions.idEq(user.getId()))), Long.valueOf(1));
+                }
+                assertEquals(hedging.getDelay(TimeUnit.NANOSECONDS), TimeUnit.SECONDS.toNanos(1));
+                hedging.countAll(User.class);
+                assertTrue(hedging.getDelay(TimeUnit.NANOSECONDS) < TimeUnit.SECONDS.toNanos(1));
+                assertEquals(hedging.getReads(), 100L);
+                assertEquals(hedging.getHedges(), 0L);
+            } finally {
+                transaction.rollback();
+            }
+        } finally {
+            scheduler.shutdown();
+            executor.shutdown();
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Transaction beginReadOnly(SessionFactory factory) {
+        Session session = factory.getCurrentSession();
+        Transaction transaction = session.beginTransaction();
+        session.setDefaultReadOnly(true);
+        return transaction;
+    }
+
+    private static SlowQuery slowQuery(SlowQueryLog log, String operation) {
+        return log.getWorst().stream().filter(q -> q.getOperation().equals(operation)).findFirst().get();
+    }
+
+    /**
+     * Connection provider whose next query, once armed, blocks in the JDBC statement until the statement is cancelled.
+     */
+    public static class CancellableConnectionProvider extends DriverManagerConnectionProviderImpl {
+
+        private static final AtomicBoolean BLOCKING = new AtomicBoolean();
+        private static final AtomicInteger CANCELLED = new AtomicInteger();
+
+        static void blockNextQuery() {
+            CANCELLED.set(0);
+            BLOCKING.set(true);
+        }
+
+        static int getCancelled() {
+            return CANCELLED.get();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                Object result = invoke(connection, method, args);
+                return method.getName().equals("prepareStatement") ? cancellable((PreparedStatement) result) : result;
+            });
+        }
+
+        @Override
+        public void closeConnection(Connection connection) throws SQLException {
+            super.closeConnection(connection.unwrap(Connection.class));
+        }
+
+        private static PreparedStatement cancellable(PreparedStatement statement) {
+            CountDownLatch cancelled = new CountDownLatch(1);
+            return (PreparedStatement) Proxy.newProxyInstance(CancellableConnectionProvider.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                if (method.getName().equals("cancel")) {
+                    CANCELLED.incrementAndGet();
+                    cancelled.countDown();
+                    return null;
+                }
+                if (method.getName().equals("executeQuery") && BLOCKING.compareAndSet(true, false) && cancelled.await(10, TimeUnit.SECONDS)) {
+                    throw new SQLException("Statement cancelled", "HY008");
+                }
+                return invoke(statement, method, args);
+            });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * %%
+ * Copyright (C) 2015 - 2016 Thiago Gutenberg Carvalho da Costa.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.demo;
+
+import br.com.thiaguten.persistence.spi.provider.hibernate.AbstractHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.ForwardingHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.HibernatePersistenceProvider;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.context.internal.ThreadLocalSessionContext;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * In-memory HSQLDB databases of {@link User}s, outside of any Spring context, for the tests of the provider decorators.
+ */
+public final class InMemoryDatabase {
+
+    private InMemoryDatabase() {
+    }
+
+    /**
+     * Build a session factory over a new in-memory database whose sessions are bound to the current thread.
+     *
+     * @param name the name of the database
+     * @return the session factory, which the caller must close with {@link #close(SessionFactory)}
+     */
+    public static SessionFactory newSessionFactory(String name) {
+        return newSessionFactory(name, Collections.emptyMap());
+    }
+
+    /**
+     * Build a session factory over a new in-memory database, with more configuration properties.
+     *
+     * @param name the name of the database
+     * @param properties the configuration properties added to or overriding the default ones
+     * @return the session factory, which the caller must close with {@link #close(SessionFactory)}
+     */
+    public static SessionFactory newSessionFactory(String name, Map<String, String> properties) {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(User.class)
+                .setProperty("hibernate.connection.driver_class", "org.hsqldb.jdbcDriver")
+                .setProperty("hibernate.connection.url", "jdbc:hsqldb:mem:" + name + "db;shutdown=true")
+                .setProperty("hibernate.connection.username", "SA")
+                .setProperty("hibernate.connection.password", "SA")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.HSQLDialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.id.new_generator_mappings", "true")
+                .setProperty("hibernate.current_session_context_class", "thread");
+        properties.forEach(configuration::setProperty);
+        return configuration.buildSessionFactory();
+    }
+
+    /**
+     * Close a session factory, unless it is already closed, and the session still bound to the current thread, if any.
+     *
+     * @param factory the session factory
+     */
+    public static void close(SessionFactory factory) {
+        Session session = ThreadLocalSessionContext.unbind(factory);
+        if (session != null && session.isOpen()) {
+            session.close();
+        }
+        if (!factory.isClosed()) {
+            factory.close();
+        }
+    }
+
+    /**
+     * Get a provider working in the current session of the thread, whose transactions are demarcated by the caller.
+     *
+     * @param factory the session factory
+     * @return the provider
+     */
+    public static HibernatePersistenceProvider currentSessionProvider(SessionFactory factory) {
+        return new AbstractHibernatePersistenceProvider() {
+            @Override
+            public Session getSession() {
+                return factory.getCurrentSession();
+            }
+        };
+    }
+
+    /**
+     * Get a provider running every operation in a transaction of its own, unless the current session of the thread
+     * already is in a transaction, as a provider behind declarative transactions does.
+     *
+     * @param factory the session factory
+     * @return the provider
+     */
+    public static HibernatePersistenceProvider transactionalProvider(SessionFactory factory) {
+        return new ForwardingHibernatePersistenceProvider(currentSessionProvider(factory)) {
+            @Override
+            protected <R> R execute(Operation operation, Function<? super HibernatePersistenceProvider, R> call) {
+                Transaction transaction = factory.getCurrentSession().getTransaction();
+                if (transaction.isActive()) {
+                    return super.execute(operation, call);
+                }
+                transaction.begin();
+                try {
+                    R result = super.execute(operation, call);
+                    transaction.commit();
+                    return result;
+                } catch (RuntimeException | Error e) {
+                    if (transaction.isActive()) {
+                        transaction.rollback();
+                    }
+                    throw e;
+                }
+            }
+        };
+    }
+}
@@ -21,10 +21,15 @@ package br.com.thiaguten.persistence.demo;
 import br.com.thiaguten.persistence.core.Persistable;
 import br.com.thiaguten.persistence.core.Versionable;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 
 @Entity
 @Table(name = "USER")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 public class User implements Persistable<Long>, Versionable { // Versionable is optional
 
 	private static final long serialVersionUID = 1555012463948780977L;
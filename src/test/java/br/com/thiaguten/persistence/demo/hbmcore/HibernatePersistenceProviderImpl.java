@@ -19,19 +19,31 @@
 package br.com.thiaguten.persistence.demo.hbmcore;
 
 import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.demo.User;
+import br.com.thiaguten.persistence.spi.provider.hibernate.Keyset;
+import br.com.thiaguten.persistence.spi.provider.hibernate.KeysetPage;
+import br.com.thiaguten.persistence.spi.provider.hibernate.PreparedQuery;
 import br.com.thiaguten.persistence.spi.provider.hibernate.AbstractHibernatePersistenceProvider;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.transform.ResultTransformer;
+import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
 @Service("hibernatePersistenceProvider")
@@ -42,6 +54,7 @@ public class HibernatePersistenceProviderImpl extends AbstractHibernatePersisten
     @Autowired
     public HibernatePersistenceProviderImpl(SessionFactory sessionFactory) {
         this.sessionFactory = sessionFactory;
+        setCacheableEntityClasses(Collections.singleton(User.class));
     }
 
     @Override
@@ -79,11 +92,109 @@ public class HibernatePersistenceProviderImpl extends AbstractHibernatePersisten
         super.deleteByEntityOrId(entityClazz, entity, id);
     }
 
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(Collection<T> entities) {
+        return super.saveAll(entities);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(Collection<T> entities) {
+        return super.updateAll(entities);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz, Collection<T> entities) {
+        super.deleteAll(entityClazz, entities);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> int updateFields(Class<T> entityClazz, ID id, Map<String, ?> values) {
+        return super.updateFields(entityClazz, id, values);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> int updateFields(Class<T> entityClazz, ID id, Object version, Map<String, ?> values) {
+        return super.updateFields(entityClazz, id, version, values);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> int updateByCriteria(Class<T> entityClazz, List<Criterion> criterions, Map<String, ?> values) {
+        return super.updateByCriteria(entityClazz, criterions, values);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> int deleteByIds(Class<T> entityClazz, Collection<ID> ids) {
+        return super.deleteByIds(entityClazz, ids);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> int deleteAllInBatch(Class<T> entityClazz, Collection<T> entities) {
+        return super.deleteAllInBatch(entityClazz, entities);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> int deleteByCriteria(Class<T> entityClazz, List<Criterion> criterions) {
+        return super.deleteByCriteria(entityClazz, criterions);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <R> R withStatelessSession(Function<StatelessSession, R> work) {
+        return super.withStatelessSession(work);
+    }
+
+    @Override
+    public <R> R readOnly(Supplier<R> work) {
+        return super.readOnly(work);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> void bulkInsert(Collection<T> entities) {
+        super.bulkInsert(entities);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> void bulkUpdate(Collection<T> entities) {
+        super.bulkUpdate(entities);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public <ID extends Serializable, T extends Persistable<ID>> void bulkDelete(Collection<T> entities) {
+        super.bulkDelete(entities);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> long bulkScroll(Class<T> entityClazz, List<Criterion> criterions, Consumer<? super T> consumer) {
+        return super.bulkScroll(entityClazz, criterions, consumer);
+    }
+
     @Override
     public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz, ID id) {
         return super.findById(entityClazz, id);
     }
 
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> List<T> findByIds(Class<T> entityClazz, Collection<ID> ids) {
+        return super.findByIds(entityClazz, ids);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findMapByIds(Class<T> entityClazz, Collection<ID> ids) {
+        return super.findMapByIds(entityClazz, ids);
+    }
+
     @Override
     public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(Class<T> entityClazz) {
         return super.findAll(entityClazz);
@@ -109,6 +220,46 @@ public class HibernatePersistenceProviderImpl extends AbstractHibernatePersisten
         return super.findByQueryAndNamedParams(entityClazz, query, params);
     }
 
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareQuery(Class<T> entityClazz, boolean cacheable, String query) {
+        return super.prepareQuery(entityClazz, cacheable, query);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamedQuery(Class<T> entityClazz, boolean cacheable, String queryName) {
+        return super.prepareNamedQuery(entityClazz, cacheable, queryName);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> List<T> findByPreparedQuery(PreparedQuery<T> preparedQuery, Object... params) {
+        return super.findByPreparedQuery(preparedQuery, params);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(Class<T> entityClazz) {
+        return super.streamAll(entityClazz);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByCriteria(Class<T> entityClazz, List<Criterion> criterions) {
+        return super.streamByCriteria(entityClazz, criterions);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(Class<T> entityClazz, String queryName, Object... params) {
+        return super.streamByNamedQuery(entityClazz, queryName, params);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(Class<T> entityClazz, String query, Object... params) {
+        return super.streamByQuery(entityClazz, query, params);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(Class<T> entityClazz, String query, Map<String, ?> params) {
+        return super.streamByQueryAndNamedParams(entityClazz, query, params);
+    }
+
     @Override
     public <ID extends Serializable, T extends Persistable<ID>> long countAll(Class<T> entityClazz) {
         return super.countAll(entityClazz);
@@ -139,6 +290,16 @@ public class HibernatePersistenceProviderImpl extends AbstractHibernatePersisten
         return super.findByCriteria(entityClazz, cacheable, firstResult, maxResults, criterions);
     }
 
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findByKeyset(Class<T> entityClazz, Keyset keyset, int maxResults, List<Criterion> criterions) {
+        return super.findByKeyset(entityClazz, keyset, maxResults, criterions);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> KeysetPage<T> findAfterId(Class<T> entityClazz, ID lastId, int maxResults, List<Criterion> criterions) {
+        return super.findAfterId(entityClazz, lastId, maxResults, criterions);
+    }
+
     @Override
     public <ID extends Serializable, T extends Persistable<ID>> T findUniqueResultByCriteria(Class<T> entityClazz, List<Criterion> criterions) {
         return super.findUniqueResultByCriteria(entityClazz, criterions);
@@ -158,4 +319,39 @@ public class HibernatePersistenceProviderImpl extends AbstractHibernatePersisten
     public <ID extends Serializable, T extends Persistable<ID>, N extends Number> N countByCriteria(Class<T> entityClazz, Class<N> resultClazz, ResultTransformer resultTransformer, List<Criterion> criterions) {
         return super.countByCriteria(entityClazz, resultClazz, resultTransformer, criterions);
     }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByCriteria(Class<T> entityClazz, Class<D> dtoClazz, List<String> properties, List<Criterion> criterions) {
+        return super.findProjectionByCriteria(entityClazz, dtoClazz, properties, criterions);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByCriteria(Class<T> entityClazz, Class<D> dtoClazz, List<String> properties, int firstResult, int maxResults, List<Criterion> criterions) {
+        return super.findProjectionByCriteria(entityClazz, dtoClazz, properties, firstResult, maxResults, criterions);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByQuery(Class<T> entityClazz, Class<D> dtoClazz, String query, Map<String, ?> params) {
+        return super.findProjectionByQuery(entityClazz, dtoClazz, query, params);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>, D> List<D> findProjectionByNamedQuery(Class<T> entityClazz, Class<D> dtoClazz, String queryName, Map<String, ?> params) {
+        return super.findProjectionByNamedQuery(entityClazz, dtoClazz, queryName, params);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Publisher<T> publishAll(Class<T> entityClazz) {
+        return super.publishAll(entityClazz);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Publisher<T> publishByQueryAndNamedParams(Class<T> entityClazz, String query, Map<String, ?> params) {
+        return super.publishByQueryAndNamedParams(entityClazz, query, params);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Publisher<T> publishByCriteria(Class<T> entityClazz, List<Criterion> criterions) {
+        return super.publishByCriteria(entityClazz, criterions);
+    }
 }
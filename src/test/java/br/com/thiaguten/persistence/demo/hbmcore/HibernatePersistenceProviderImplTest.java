@@ -20,16 +20,60 @@ package br.com.thiaguten.persistence.demo.hbmcore;
 
 import br.com.thiaguten.persistence.demo.User;
 import br.com.thiaguten.persistence.demo.UserDAO;
+import br.com.thiaguten.persistence.demo.UserSummary;
+import br.com.thiaguten.persistence.spi.provider.hibernate.AbstractHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.AsyncHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.InstrumentedHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.Keyset;
+import br.com.thiaguten.persistence.spi.provider.hibernate.KeysetPage;
+import br.com.thiaguten.persistence.spi.provider.hibernate.LruCache;
+import br.com.thiaguten.persistence.spi.provider.hibernate.PreparedQuery;
+import br.com.thiaguten.persistence.spi.provider.hibernate.HibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.StatementBudgetExceededException;
+import br.com.thiaguten.persistence.spi.provider.hibernate.StatementBudgetHibernatePersistenceProvider;
+import br.com.thiaguten.persistence.spi.provider.hibernate.StatementCountingInspector;
+import br.com.thiaguten.persistence.spi.provider.hibernate.UpdateExpression;
+import br.com.thiaguten.persistence.spi.provider.hibernate.metrics.OperationMetrics;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.MatchMode;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.hibernate.stat.Statistics;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.testng.AbstractTransactionalTestNGSpringContextTests;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 
 import static org.testng.Assert.*;
 
@@ -42,6 +86,10 @@ public class HibernatePersistenceProviderImplTest extends AbstractTransactionalT
     @Qualifier("userDAO")
     private UserDAO userDAO;
 
+    @Autowired
+    @Qualifier("hibernatePersistenceProvider")
+    private HibernatePersistenceProvider persistenceProvider;
+
     @BeforeClass
     public static void init() {
         log.info("*********************");
@@ -91,4 +139,602 @@ public class HibernatePersistenceProviderImplTest extends AbstractTransactionalT
         assertNull(userDeleted);
     }
 
+    @Test
+    public void batchCrudTest() {
+        List<Criterion> criterions = Collections.singletonList(Restrictions.like("name", "BATCH%"));
+
+        // create
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            users.add(new User("BATCH" + i));
+        }
+        List<User> usersSaved = persistenceProvider.saveAll(users);
+        log.info("Created: " + usersSaved.size());
+        assertEquals(usersSaved.size(), users.size());
+        assertEquals(usersSaved.get(0).getName(), "BATCH0");
+        assertEquals(persistenceProvider.countByCriteria(User.class, Long.class, criterions), Long.valueOf(users.size()));
+
+        // read
+        List<Long> ids = new ArrayList<>();
+        for (int i = usersSaved.size() - 1; i >= 0; i--) {
+            ids.add(usersSaved.get(i).getId());
+        }
+        List<User> usersFound = persistenceProvider.findByIds(User.class, ids);
+        log.info("Read: " + usersFound.size());
+        assertEquals(usersFound.size(), ids.size());
+        assertEquals(usersFound.get(0).getId(), ids.get(0));
+        assertEquals(persistenceProvider.findMapByIds(User.class, ids).keySet(), new LinkedHashSet<>(ids));
+
+        // delete
+        persistenceProvider.deleteAll(User.class, usersSaved);
+        log.info("Deleted: " + usersSaved.size());
+        assertEquals(persistenceProvider.countByCriteria(User.class, Long.class, criterions), Long.valueOf(0));
+    }
+
+    @Test
+    public void streamTest() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            users.add(new User("STREAM" + i));
+        }
+        persistenceProvider.saveAll(users);
+
+        try (Stream<User> stream = persistenceProvider.streamByQuery(User.class, "from User u where u.name like ?", "STREAM%")) {
+            assertEquals(stream.filter(u -> u.getName().startsWith("STREAM")).count(), users.size());
+        }
+
+        try (Stream<User> stream = persistenceProvider.streamAll(User.class)) {
+            assertTrue(stream.anyMatch(u -> "STREAM0".equals(u.getName())));
+        }
+    }
+
+    @Test
+    public void streamScalarTest() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            users.add(new User("SCALAR" + i));
+        }
+        persistenceProvider.saveAll(users);
+
+        try (Stream<?> stream = persistenceProvider.streamByQuery(User.class, "select u.name from User u where u.name like ? order by u.name", "SCALAR%")) {
+            assertEquals(stream.filter(name -> ((String) name).startsWith("SCALAR")).count(), users.size());
+        }
+
+        Session session = persistenceProvider.getSession();
+        try (Stream<?> stream = persistenceProvider.streamByQuery(User.class, "select u, u.name from User u where u.name like ?", "SCALAR%")) {
+            stream.forEach(row -> {
+                Object[] columns = (Object[]) row;
+                assertEquals(((User) columns[0]).getName(), columns[1]);
+                assertFalse(session.contains(columns[0]));
+            });
+        }
+    }
+
+    @Test
+    public void keysetTest() {
+        List<Criterion> criterions = Collections.singletonList(Restrictions.like("name", "KEYSET%"));
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            users.add(new User("KEYSET" + i));
+        }
+        persistenceProvider.saveAll(users);
+
+        // seek by identifier
+        List<User> usersFound = new ArrayList<>();
+        KeysetPage<User> page = persistenceProvider.findAfterId(User.class, null, 10, criterions);
+        usersFound.addAll(page.getContent());
+        while (page.hasNext()) {
+            page = persistenceProvider.findByKeyset(User.class, page.getNext(), 10, criterions);
+            usersFound.addAll(page.getContent());
+        }
+        assertEquals(usersFound.size(), users.size());
+        for (int i = 1; i < usersFound.size(); i++) {
+            assertTrue(usersFound.get(i - 1).getId() < usersFound.get(i).getId());
+        }
+
+        // seek by composite key
+        page = persistenceProvider.findByKeyset(User.class, Keyset.of("name", "id"), 20, criterions);
+        assertEquals(page.getContent().size(), 20);
+        assertTrue(page.hasNext());
+        page = persistenceProvider.findByKeyset(User.class, page.getNext(), 20, criterions);
+        assertEquals(page.getContent().size(), users.size() - 20);
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    public void bulkTest() {
+        List<Criterion> criterions = Collections.singletonList(Restrictions.like("name", "BULK%"));
+
+        // insert
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            users.add(new User("BULK" + i));
+        }
+        persistenceProvider.bulkInsert(users);
+        assertNotNull(users.get(0).getId());
+
+        // scroll
+        List<User> usersFound = new ArrayList<>();
+        long count = persistenceProvider.bulkScroll(User.class, criterions, usersFound::add);
+        assertEquals(count, users.size());
+        assertEquals(usersFound.size(), users.size());
+
+        // delete
+        persistenceProvider.bulkDelete(usersFound);
+        assertEquals(persistenceProvider.countByCriteria(User.class, Long.class, criterions), Long.valueOf(0));
+    }
+
+    @Test
+    public void setBasedDeleteTest() {
+        List<Criterion> criterions = Collections.singletonList(Restrictions.like("name", "SETDELETE%"));
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            users.add(new User("SETDELETE" + i));
+        }
+        List<User> usersSaved = persistenceProvider.saveAll(users);
+
+        // delete by identifiers
+        List<Long> ids = new ArrayList<>();
+        for (User user : usersSaved.subList(0, 10)) {
+            ids.add(user.getId());
+        }
+        assertEquals(persistenceProvider.deleteByIds(User.class, ids), 10);
+        assertNull(persistenceProvider.findById(User.class, ids.get(0)));
+
+        // delete checking versions, a repeated entity is deleted once
+        List<User> usersToDelete = new ArrayList<>(usersSaved.subList(10, 20));
+        usersToDelete.add(usersSaved.get(10));
+        assertEquals(persistenceProvider.deleteAllInBatch(User.class, usersToDelete), 10);
+
+        // delete by criteria, which must have a HQL rendering
+        expectThrows(IllegalArgumentException.class, () -> persistenceProvider.deleteByCriteria(User.class, Collections.singletonList(Restrictions.sqlRestriction("1 = 1"))));
+        assertEquals(persistenceProvider.deleteByCriteria(User.class, criterions), 10);
+        assertEquals(persistenceProvider.countByCriteria(User.class, Long.class, criterions), Long.valueOf(0));
+    }
+
+    @Test
+    public void setBasedUpdateTest() {
+        User user = persistenceProvider.saveAll(Collections.singletonList(new User("SETUPDATE"))).get(0);
+
+        // update checking version
+        assertEquals(persistenceProvider.updateFields(User.class, user.getId(), user.getVersion(), Collections.singletonMap("name", "SETUPDATED")), 1);
+        User userUpdated = persistenceProvider.findById(User.class, user.getId());
+        assertEquals(userUpdated.getName(), "SETUPDATED");
+        assertEquals(userUpdated.getVersion(), Long.valueOf(user.getVersion() + 1));
+        expectThrows(StaleStateException.class, () -> persistenceProvider.updateFields(User.class, user.getId(), user.getVersion(), Collections.singletonMap("name", "STALE")));
+
+        // update by criteria
+        List<Criterion> criterions = Collections.singletonList(Restrictions.eq("name", "SETUPDATED"));
+        assertEquals(persistenceProvider.updateByCriteria(User.class, criterions, Collections.singletonMap("name", "SETUPDATE")), 1);
+        assertEquals(persistenceProvider.findById(User.class, user.getId()).getName(), "SETUPDATE");
+        expectThrows(IllegalArgumentException.class, () -> persistenceProvider.updateByCriteria(User.class, Collections.singletonList(Restrictions.sqlRestriction("1 = 1")), Collections.singletonMap("name", "UNSHAPED")));
+
+        // update by criteria with an expression
+        Long version = persistenceProvider.findById(User.class, user.getId()).getVersion();
+        List<Criterion> updatedCriterions = Collections.singletonList(Restrictions.eq("name", "SETUPDATE"));
+        assertEquals(persistenceProvider.updateByCriteria(User.class, updatedCriterions, Collections.singletonMap("version", UpdateExpression.add("version", 10))), 1);
+        assertEquals(persistenceProvider.findById(User.class, user.getId()).getVersion(), Long.valueOf(version + 10));
+    }
+
+    @Test
+    public void preparedQueryTest() {
+        persistenceProvider.saveAll(Collections.singletonList(new User("PREPARED")));
+
+        PreparedQuery<User> preparedQuery = persistenceProvider.prepareQuery(User.class, false, "from User u where u.name = ?");
+        assertEquals(preparedQuery.getParameterCount(), 1);
+        assertSame(persistenceProvider.prepareQuery(User.class, false, "from User u where u.name = ?"), preparedQuery);
+
+        for (int i = 0; i < 3; i++) {
+            List<User> users = persistenceProvider.findByPreparedQuery(preparedQuery, "PREPARED");
+            assertEquals(users.size(), 1);
+            assertEquals(users.get(0).getName(), "PREPARED");
+        }
+        expectThrows(IllegalArgumentException.class, () -> persistenceProvider.findByPreparedQuery(preparedQuery));
+    }
+
+    @Test
+    public void criteriaShapeTest() {
+        persistenceProvider.saveAll(Arrays.asList(new User("SHAPE ONE"), new User("SHAPE TWO"), new User("OTHER")));
+
+        for (String name : Arrays.asList("shape one", "shape two")) {
+            List<Criterion> criterions = Collections.singletonList(Restrictions.ilike("name", name, MatchMode.EXACT));
+            User user = persistenceProvider.findUniqueResultByCriteria(User.class, criterions);
+            assertNotNull(user);
+            assertEquals(user.getName(), name.toUpperCase());
+        }
+
+        List<Criterion> criterions = Arrays.asList(
+                Restrictions.like("name", "SHAPE", MatchMode.START),
+                Restrictions.in("name", Arrays.asList("SHAPE ONE", "OTHER")),
+                Restrictions.isNotNull("version"));
+        assertEquals(persistenceProvider.findByCriteria(User.class, criterions).size(), 1);
+        assertEquals(persistenceProvider.countByCriteria(User.class, Long.class, criterions).longValue(), 1L);
+
+        List<Criterion> disjunction = Collections.singletonList(
+                Restrictions.or(Restrictions.eq("name", "SHAPE ONE"), Restrictions.eq("name", "OTHER")));
+        assertEquals(persistenceProvider.findByCriteria(User.class, disjunction).size(), 2);
+        assertEquals(persistenceProvider.countByCriteria(User.class, Long.class, disjunction).longValue(), 2L);
+
+        // the same shape with other values hits the shape cache
+        LruCache<List<Object>, String> shapeCache = ((AbstractHibernatePersistenceProvider) AopTestUtils.getTargetObject(persistenceProvider)).getCriteriaShapeCache();
+        long hits = shapeCache.getHitCount();
+        persistenceProvider.findByCriteria(User.class, Collections.singletonList(Restrictions.eq("name", "SHAPE ONE")));
+        persistenceProvider.findByCriteria(User.class, Collections.singletonList(Restrictions.eq("name", "SHAPE TWO")));
+        assertTrue(shapeCache.getHitCount() > hits);
+
+        // criterions without a shape go through the criteria api
+        List<Criterion> sqlRestriction = Collections.singletonList(Restrictions.sqlRestriction("{alias}.NAME in ('SHAPE ONE', 'OTHER')"));
+        assertEquals(persistenceProvider.findByCriteria(User.class, sqlRestriction).size(), 2);
+        assertEquals(persistenceProvider.countByCriteria(User.class, Long.class, sqlRestriction).longValue(), 2L);
+    }
+
+    @Test
+    public void secondLevelCacheTest() {
+        Statistics statistics = persistenceProvider.getSession().getSessionFactory().getStatistics();
+
+        // query cache, before any write of the transaction invalidates the user table
+        persistenceProvider.findAll(User.class);
+        long queryCacheHits = statistics.getQueryCacheHitCount();
+        persistenceProvider.findAll(User.class);
+        assertEquals(statistics.getQueryCacheHitCount(), queryCacheHits + 1);
+
+        // entity cache
+        User user = persistenceProvider.saveAll(Collections.singletonList(new User("CACHED"))).get(0);
+        persistenceProvider.findById(User.class, user.getId());
+        persistenceProvider.getSession().clear();
+        long secondLevelCacheHits = statistics.getSecondLevelCacheHitCount();
+        User cached = persistenceProvider.findById(User.class, user.getId());
+        assertEquals(statistics.getSecondLevelCacheHitCount(), secondLevelCacheHits + 1);
+        assertEquals(cached.getName(), "CACHED");
+    }
+
+    @Test
+    public void resultCacheTest() {
+        AbstractHibernatePersistenceProvider target = AopTestUtils.getTargetObject(persistenceProvider);
+        target.setResultCache(1000, 60, TimeUnit.SECONDS);
+        try {
+            Statistics statistics = persistenceProvider.getSession().getSessionFactory().getStatistics();
+            String query = "select count(u) from User u where u.name = :name";
+            Map<String, Object> params = Collections.singletonMap("name", "RESULT");
+
+            long executions = statistics.getQueryExecutionCount();
+            assertEquals(persistenceProvider.countByQueryAndNamedParams(Long.class, query, params).longValue(), 0L);
+            assertEquals(persistenceProvider.countByQueryAndNamedParams(Long.class, query, params).longValue(), 0L);
+            assertEquals(statistics.getQueryExecutionCount(), executions + 1);
+
+            // a write rolled back invalidates the cached results all the same
+            expectThrows(RuntimeException.class, () -> persistenceProvider.save(new User(null)));
+            executions = statistics.getQueryExecutionCount();
+            assertEquals(persistenceProvider.countByQueryAndNamedParams(Long.class, query, params).longValue(), 0L);
+            assertEquals(statistics.getQueryExecutionCount(), executions + 1);
+
+            // entity results are cached by identifier and loaded again on a hit, unless the query is not cacheable
+            User saved = persistenceProvider.save(new User("RESULT ENTITY"));
+            String entityQuery = "from User u where u.name = ?";
+            executions = statistics.getQueryExecutionCount();
+            assertEquals(persistenceProvider.findByQuery(User.class, false, entityQuery, "RESULT ENTITY").size(), 1);
+            assertEquals(persistenceProvider.findByQuery(User.class, false, entityQuery, "RESULT ENTITY").size(), 1);
+            assertEquals(statistics.getQueryExecutionCount(), executions + 2);
+            assertEquals(persistenceProvider.findByQuery(User.class, true, entityQuery, "RESULT ENTITY").get(0).getId(), saved.getId());
+            List<User> cached = persistenceProvider.findByQuery(User.class, true, entityQuery, "RESULT ENTITY");
+            assertEquals(statistics.getQueryExecutionCount(), executions + 3);
+            assertEquals(cached.size(), 1);
+            assertEquals(cached.get(0).getId(), saved.getId());
+            assertEquals(cached.get(0).getName(), "RESULT ENTITY");
+
+            // a write of the entity class invalidates its cached results
+            persistenceProvider.saveAll(Collections.singletonList(new User("RESULT")));
+            executions = statistics.getQueryExecutionCount();
+            assertEquals(persistenceProvider.countByQueryAndNamedParams(Long.class, query, params).longValue(), 1L);
+            assertEquals(statistics.getQueryExecutionCount(), executions + 1);
+        } finally {
+            target.setResultCache(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void readOnlyTest() {
+        User user = persistenceProvider.saveAll(Collections.singletonList(new User("READONLY"))).get(0);
+        persistenceProvider.getSession().clear();
+
+        User loaded = persistenceProvider.readOnly(() -> persistenceProvider.findById(User.class, user.getId()));
+        assertTrue(persistenceProvider.getSession().isReadOnly(loaded));
+
+        // read-only entities are not dirty checked, so the change is never flushed
+        loaded.setName("CHANGED");
+        persistenceProvider.getSession().flush();
+        persistenceProvider.getSession().clear();
+        Map<String, Object> params = Collections.singletonMap("name", "CHANGED");
+        assertEquals(persistenceProvider.countByQueryAndNamedParams(
+                Long.class, "select count(u) from User u where u.name = :name", params).longValue(), 0L);
+
+        // provider-wide read-only finders
+        AbstractHibernatePersistenceProvider target = AopTestUtils.getTargetObject(persistenceProvider);
+        target.setReadOnly(true);
+        try {
+            User found = persistenceProvider.findById(User.class, user.getId());
+            assertTrue(persistenceProvider.getSession().isReadOnly(found));
+            List<User> byCriteria = persistenceProvider.findByCriteria(User.class, Collections.singletonList(Restrictions.eq("name", "READONLY")));
+            assertTrue(persistenceProvider.getSession().isReadOnly(byCriteria.get(0)));
+            found.setName("CHANGED AGAIN");
+            persistenceProvider.getSession().flush();
+        } finally {
+            target.setReadOnly(false);
+        }
+        persistenceProvider.getSession().clear();
+        assertEquals(persistenceProvider.findById(User.class, user.getId()).getName(), "READONLY");
+    }
+
+    @Test
+    public void readOnlyManagedEntityTest() {
+        User user = persistenceProvider.saveAll(Collections.singletonList(new User("READONLY MANAGED"))).get(0);
+        persistenceProvider.getSession().clear();
+        User managed = persistenceProvider.findById(User.class, user.getId());
+        managed.setName("MANAGED CHANGED");
+
+        // the read-only finders do not flip an entity the session already manages
+        AbstractHibernatePersistenceProvider target = AopTestUtils.getTargetObject(persistenceProvider);
+        target.setReadOnly(true);
+        try {
+            User found = persistenceProvider.findById(User.class, user.getId());
+            assertSame(found, managed);
+            assertFalse(persistenceProvider.getSession().isReadOnly(found));
+            List<User> foundByIds = persistenceProvider.findByIds(User.class, Collections.singletonList(user.getId()));
+            assertSame(foundByIds.get(0), managed);
+            assertFalse(persistenceProvider.getSession().isReadOnly(foundByIds.get(0)));
+        } finally {
+            target.setReadOnly(false);
+        }
+
+        // the pending change is still flushed
+        persistenceProvider.getSession().flush();
+        persistenceProvider.getSession().clear();
+        assertEquals(persistenceProvider.findById(User.class, user.getId()).getName(), "MANAGED CHANGED");
+    }
+
+    @Test
+    public void projectionTest() {
+        User user = persistenceProvider.saveAll(Collections.singletonList(new User("PROJECTION"))).get(0);
+        persistenceProvider.getSession().flush();
+        persistenceProvider.getSession().clear();
+
+        List<UserSummary> byCriteria = persistenceProvider.findProjectionByCriteria(User.class, UserSummary.class,
+                Arrays.asList("id", "name"), Collections.singletonList(Restrictions.eq("name", "PROJECTION")));
+        assertEquals(byCriteria.size(), 1);
+        assertEquals(byCriteria.get(0).getId(), user.getId());
+        assertEquals(byCriteria.get(0).getName(), "PROJECTION");
+
+        List<UserSummary> byQuery = persistenceProvider.findProjectionByQuery(User.class, UserSummary.class,
+                "select u.id, u.name from User u where u.name = :name", Collections.singletonMap("name", "PROJECTION"));
+        assertEquals(byQuery.size(), 1);
+        assertEquals(byQuery.get(0).getId(), user.getId());
+
+        // a single property is read as its own type
+        List<String> names = persistenceProvider.findProjectionByCriteria(User.class, String.class,
+                Collections.singletonList("name"), Collections.singletonList(Restrictions.eq("name", "PROJECTION")));
+        assertEquals(names, Collections.singletonList("PROJECTION"));
+
+        // nothing was loaded into the persistence context
+        assertEquals(persistenceProvider.getSession().getStatistics().getEntityCount(), 0);
+    }
+
+    @Test
+    public void asyncTest() {
+        ExecutorService executor = AsyncHibernatePersistenceProvider.newExecutor(2, 4, false);
+        try {
+            AsyncHibernatePersistenceProvider async = new AsyncHibernatePersistenceProvider(persistenceProvider, executor);
+            long count = persistenceProvider.countAll(User.class);
+
+            // independent lookups run in parallel, each in its own session
+            CompletableFuture<Long> asyncCount = async.countAll(User.class);
+            CompletableFuture<List<User>> asyncUsers = async.findByQueryAndNamedParams(User.class,
+                    "select u from User u where u.name = :name", Collections.singletonMap("name", "ASYNC"));
+            CompletableFuture<String> thread = async.supply(p -> Thread.currentThread().getName());
+
+            assertEquals(asyncCount.join().longValue(), count);
+            assertTrue(asyncUsers.join().isEmpty());
+            assertTrue(thread.join().startsWith("async-persistence-"));
+
+            // built from the session factory, every task runs in a session and a transaction of its own
+            SessionFactory sessionFactory = persistenceProvider.getSession().getSessionFactory();
+            AsyncHibernatePersistenceProvider perTask = new AsyncHibernatePersistenceProvider(sessionFactory, session -> new AbstractHibernatePersistenceProvider() {
+                @Override
+                public Session getSession() {
+                    return session;
+                }
+            }, executor);
+            assertEquals(perTask.countAll(User.class).join().longValue(), count);
+            CompletableFuture<Session> taskSession = perTask.supply(p -> {
+                assertEquals(p.getSession().getTransaction().getStatus(), TransactionStatus.ACTIVE);
+                return p.getSession();
+            });
+            assertNotSame(taskSession.join(), persistenceProvider.getSession());
+            assertFalse(taskSession.join().isOpen());
+        } finally {
+            executor.shutdown();
+        }
+
+        // beyond its queue the executor rejects the work instead of running it on the caller
+        ExecutorService saturated = AsyncHibernatePersistenceProvider.newExecutor(1, 1, false);
+        CompletableFuture<String> gate = new CompletableFuture<>();
+        try {
+            AsyncHibernatePersistenceProvider async = new AsyncHibernatePersistenceProvider(persistenceProvider, saturated);
+            CompletableFuture<String> running = async.supply(p -> gate.join());
+            CompletableFuture<String> queued = async.supply(p -> gate.join());
+            CompletableFuture<String> rejected = async.supply(p -> Thread.currentThread().getName());
+
+            assertTrue(rejected.isCompletedExceptionally());
+            CompletionException e = expectThrows(CompletionException.class, rejected::join);
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+
+            gate.complete("RELEASED");
+            assertEquals(running.join(), "RELEASED");
+            assertEquals(queued.join(), "RELEASED");
+        } finally {
+            gate.complete(null);
+            saturated.shutdown();
+        }
+    }
+
+    @Test
+    public void publisherTest() {
+        long count = persistenceProvider.countAll(User.class);
+
+        // one row per request until the cursor is exhausted
+        List<User> users = new ArrayList<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        persistenceProvider.publishAll(User.class).subscribe(new Subscriber<User>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(User user) {
+                users.add(user);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.set(true);
+            }
+        });
+        assertTrue(completed.get());
+        assertEquals(users.size(), count);
+
+        // cancelling after the first row releases the cursor without completing
+        List<User> firstUser = new ArrayList<>();
+        AtomicBoolean cancelledCompleted = new AtomicBoolean();
+        persistenceProvider.publishByCriteria(User.class, null).subscribe(new Subscriber<User>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(1);
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(User user) {
+                firstUser.add(user);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                cancelledCompleted.set(true);
+            }
+        });
+        assertEquals(firstUser.size(), Math.min(1, count));
+        assertEquals(cancelledCompleted.get(), count == 0);
+
+        // a failing onComplete goes to the caller of request and is never followed by onError
+        AtomicBoolean errored = new AtomicBoolean();
+        IllegalStateException e = expectThrows(IllegalStateException.class, () -> persistenceProvider.publishAll(User.class).subscribe(new Subscriber<User>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(User user) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                errored.set(true);
+            }
+
+            @Override
+            public void onComplete() {
+                throw new IllegalStateException("COMPLETE");
+            }
+        }));
+        assertEquals(e.getMessage(), "COMPLETE");
+        assertFalse(errored.get());
+    }
+
+    @Test
+    public void instrumentedTest() throws Exception {
+        InstrumentedHibernatePersistenceProvider instrumented = new InstrumentedHibernatePersistenceProvider(persistenceProvider);
+        User user = instrumented.save(new User("INSTRUMENTED"));
+        assertEquals(instrumented.findById(User.class, user.getId()).getName(), "INSTRUMENTED");
+        assertEquals(instrumented.findByCriteria(User.class,
+                Collections.singletonList(Restrictions.eq("name", "INSTRUMENTED"))).size(), 1);
+
+        OperationMetrics findById = instrumented.getMetrics("findById", User.class);
+        assertEquals(findById.getCalls(), 1L);
+        assertEquals(findById.getErrors(), 0L);
+        assertEquals(findById.getRows(), 1L);
+        assertTrue(findById.getLatency().getValueAtPercentile(99, TimeUnit.NANOSECONDS) > 0);
+        assertEquals(instrumented.getMetrics("save", User.class).getCalls(), 1L);
+        assertTrue(instrumented.getStatistics().containsKey("statements.prepared"));
+
+        ObjectName name = instrumented.registerMBean("hibernate-core-test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+            assertEquals(operations.length, 3);
+        } finally {
+            instrumented.unregisterMBean();
+        }
+    }
+
+    @Test
+    public void statementBudgetTest() {
+        persistenceProvider.save(new User("BUDGET"));
+        List<Criterion> criterions = Collections.singletonList(Restrictions.eq("name", "BUDGET"));
+        assertTrue(StatementCountingInspector.isInstalled());
+        persistenceProvider.getSession().flush();
+        StatementCountingInspector.Count count = StatementCountingInspector.start();
+        assertEquals(persistenceProvider.findByCriteria(User.class, false, -1, -1, criterions).size(), 1);
+        count.assertEquals(1);
+        expectThrows(AssertionError.class, () -> count.assertAtMost(0));
+
+        StatementBudgetHibernatePersistenceProvider budget = new StatementBudgetHibernatePersistenceProvider(persistenceProvider, 1, Integer.MAX_VALUE);
+        budget.setFailing(true);
+        assertEquals(budget.findByCriteria(User.class, false, -1, -1, criterions).size(), 1);
+        budget.setCallBudget(0);
+        StatementBudgetExceededException e = expectThrows(StatementBudgetExceededException.class, () -> budget.findByCriteria(User.class, false, -1, -1, criterions));
+        assertEquals(e.getOperation(), "findByCriteria");
+        assertEquals(e.getEntityClazz(), User.class);
+        assertEquals(e.getStatements(), 1L);
+        assertFalse(e.isTransaction());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void statementBudgetInDelegateTransactionTest() {
+        // the transaction is begun by the proxy of the provider, inside the decorator
+        StatementBudgetHibernatePersistenceProvider budget = new StatementBudgetHibernatePersistenceProvider(persistenceProvider, Integer.MAX_VALUE, 0);
+        budget.setFailing(true);
+        RuntimeException e = expectThrows(RuntimeException.class, () -> budget.save(new User("BUDGET TRANSACTION")));
+        Throwable cause = e;
+        while (cause != null && !(cause instanceof StatementBudgetExceededException)) {
+            cause = cause.getCause();
+        }
+        assertNotNull(cause);
+        StatementBudgetExceededException exceeded = (StatementBudgetExceededException) cause;
+        assertTrue(exceeded.isTransaction());
+        assertEquals(exceeded.getOperation(), "save");
+        assertEquals(exceeded.getEntityClazz(), User.class);
+
+        // checked before the commit, so the transaction rolled back
+        List<Criterion> criterions = Collections.singletonList(Restrictions.eq("name", "BUDGET TRANSACTION"));
+        assertTrue(persistenceProvider.findByCriteria(User.class, criterions).isEmpty());
+    }
+
 }